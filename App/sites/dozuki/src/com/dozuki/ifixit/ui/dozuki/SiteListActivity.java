@@ -16,6 +16,7 @@ import com.dozuki.ifixit.R;
 import com.dozuki.ifixit.model.dozuki.Site;
 import com.dozuki.ifixit.model.user.LoginEvent;
 import com.dozuki.ifixit.ui.BaseActivity;
+import com.dozuki.ifixit.util.SiteMatcher;
 import com.dozuki.ifixit.util.api.ApiCall;
 import com.dozuki.ifixit.util.api.ApiEvent;
 import com.dozuki.ifixit.util.api.Api;
@@ -33,6 +34,8 @@ public class SiteListActivity extends BaseActivity
    private Button mSiteListButton;
    private SiteListDialogFragment mSiteListDialog;
    private ArrayList<Site> mSiteList;
+   // Built from mSiteList by the first search.
+   private SiteMatcher mSiteMatcher;
 
    @Override
    public void onCreate(Bundle savedInstanceState) {
@@ -109,6 +112,7 @@ public class SiteListActivity extends BaseActivity
    public void onSites(ApiEvent.Sites event) {
       if (!event.hasError()) {
          mSiteList = event.getResult();
+         mSiteMatcher = null;
          if (mSiteListDialog != null) {
             mSiteListDialog.setSites(mSiteList, true);
          }
@@ -144,16 +148,15 @@ public class SiteListActivity extends BaseActivity
    }
 
    private void search(String query) {
-      String lowerQuery = query.toLowerCase();
-      ArrayList<Site> matchedSites = new ArrayList<Site>();
+      if (mSiteList == null) {
+         return;
+      }
 
-      for (Site site : mSiteList) {
-         if (site.search(lowerQuery)) {
-            matchedSites.add(site);
-         }
+      if (mSiteMatcher == null) {
+         mSiteMatcher = new SiteMatcher(mSiteList);
       }
 
-      mSiteListDialog.setSites(matchedSites, true);
+      mSiteListDialog.setSites(new ArrayList<Site>(mSiteMatcher.match(query)), true);
    }
 
    @Override
@@ -16,6 +16,7 @@ import android.os.Bundle;
 import android.os.StatFs;
 import android.os.StrictMode;
 import android.preference.PreferenceManager;
+import android.support.v4.net.ConnectivityManagerCompat;
 import android.util.Log;
 
 import com.dozuki.ifixit.model.auth.Authenticator;
@@ -24,6 +25,8 @@ import com.dozuki.ifixit.model.dozuki.SiteChangedEvent;
 import com.dozuki.ifixit.model.user.LoginEvent;
 import com.dozuki.ifixit.model.user.User;
 import com.dozuki.ifixit.util.ImageSizes;
+import com.dozuki.ifixit.util.TieredImageCache;
+import com.dozuki.ifixit.util.TopicIndex;
 import com.dozuki.ifixit.util.api.Api;
 import com.dozuki.ifixit.util.api.ApiCall;
 import com.dozuki.ifixit.util.api.ApiContentProvider;
@@ -74,6 +77,7 @@ public class App extends Application {
    private static final String FIRST_TIME_GALLERY_USER =
     "FIRST_TIME_GALLERY_USER";
    private static final String LAST_SYNC_TIME = "LAST_SYNC_TIME";
+   private static final String VERIFIED_MEDIA_TIME = "VERIFIED_MEDIA_TIME";
    public static final long NEVER_SYNCED_VALUE = -1;
    private static final String TAG = "App";
 
@@ -93,6 +97,11 @@ public class App extends Application {
     */
    private static OkHttpClient sClient;
 
+   /**
+    * Picasso's memory cache.
+    */
+   private static TieredImageCache sImageCache;
+
    /**
     * Currently logged in user or null if user is not logged in.
     */
@@ -154,10 +163,15 @@ public class App extends Application {
       sApp = this;
       setSite(getDefaultSite());
 
+      // Read the topic autocomplete index in the background so it's ready when needed.
+      TopicIndex.load(null);
+
       // Build our custom Picasso instance with the OkHttp3 Downloader,
       // and set a singleton of it with Picasso so it's used everywhere
+      sImageCache = new TieredImageCache(getApplicationContext());
       Picasso picasso = new Picasso.Builder(getApplicationContext())
        .downloader(new OkHttp3Downloader(getClient()))
+       .memoryCache(sImageCache)
        .build();
 
       if (BuildConfig.DEBUG) {
@@ -224,6 +238,19 @@ public class App extends Application {
       return sApp;
    }
 
+   public static TieredImageCache getImageCache() {
+      return sImageCache;
+   }
+
+   @Override
+   public void onTrimMemory(int level) {
+      super.onTrimMemory(level);
+
+      if (BuildConfig.DEBUG && sImageCache != null) {
+         sImageCache.logStats();
+      }
+   }
+
    public static OkHttpClient getClient() {
       if (sClient == null) {
          File cache = App.get().getCacheDir();
@@ -576,6 +603,27 @@ public class App extends Application {
       return LAST_SYNC_TIME + "_" + site.mSiteid + "_" + user.getUserid();
    }
 
+   /**
+    * Returns the time since which offline media are only stored once their download
+    * is verified. Media modified before it may have been left incomplete by older
+    * versions.
+    */
+   public long getVerifiedMediaTime() {
+      SharedPreferences preferenceFile = getSharedPreferences(PREFERENCE_FILE,
+       MODE_PRIVATE | MODE_MULTI_PROCESS);
+      long verifiedMediaTime = preferenceFile.getLong(VERIFIED_MEDIA_TIME, 0);
+
+      if (verifiedMediaTime == 0) {
+         verifiedMediaTime = System.currentTimeMillis();
+
+         Editor editor = preferenceFile.edit();
+         editor.putLong(VERIFIED_MEDIA_TIME, verifiedMediaTime);
+         editor.commit();
+      }
+
+      return verifiedMediaTime;
+   }
+
    public boolean isScreenLarge() {
       final int screenSize = getResources().getConfiguration().screenLayout &
        Configuration.SCREENLAYOUT_SIZE_MASK;
@@ -590,6 +638,15 @@ public class App extends Application {
       return netInfo != null && netInfo.isConnected();
    }
 
+   /**
+    * Returns true if the user may pay for the data sent over the active connection.
+    */
+   public boolean isConnectionMetered() {
+      ConnectivityManager cm = (ConnectivityManager)getSystemService(Context.CONNECTIVITY_SERVICE);
+
+      return ConnectivityManagerCompat.isActiveNetworkMetered(cm);
+   }
+
    public File getCacheDirPath() {
       return new File(getApplicationContext().getExternalCacheDir(), App.get().getCacheDirName());
    }
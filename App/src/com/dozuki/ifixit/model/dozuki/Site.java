@@ -38,6 +38,10 @@ public class Site implements Serializable {
    public String[] hasSubject = {"Repair", "Installation", "Replacement", "Disassembly"};
    public String[] noSubject = {"Technique", "How-to", "Maintenance", "Teardown"};
 
+   // Built by the first search() so typing a query doesn't redo them for every site.
+   private transient String mSearchTitle;
+   private transient EditDistance.Pattern mNamePattern;
+
    public ArrayList<GuideType> mGuideTypes;
    private boolean mBarcodeScanner = false;
    public boolean mHasTitlePictures = false;
@@ -47,7 +51,12 @@ public class Site implements Serializable {
    }
 
    public boolean search(String query) {
-      if (mTitle.toLowerCase().contains(query)) {
+      if (mSearchTitle == null) {
+         mSearchTitle = mTitle.toLowerCase();
+         mNamePattern = new EditDistance.Pattern(mName);
+      }
+
+      if (mSearchTitle.contains(query)) {
          // Query is somewhere in title or name.
          return true;
       }
@@ -57,7 +66,8 @@ public class Site implements Serializable {
        * arbitrary but makes sense because we want more room for error the
        * longer the string and less room for error the shorter the string.
        */
-      return EditDistance.editDistance(mName, query) <= (mName.length() / 2);
+      int maxDistance = mName.length() / 2;
+      return mNamePattern.editDistance(query, maxDistance) <= maxDistance;
    }
 
    public String getOpenIdLoginUrl() {
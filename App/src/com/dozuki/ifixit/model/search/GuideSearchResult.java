@@ -28,6 +28,10 @@ public class GuideSearchResult implements SearchResult, Serializable, View.OnCli
       mGuideInfo = guideInfo;
    }
 
+   public GuideInfo getGuideInfo() {
+      return mGuideInfo;
+   }
+
    @Override
    public View buildView(View v, LayoutInflater inflater, ViewGroup container) {
       final Context context = container.getContext();
@@ -75,6 +79,11 @@ public class GuideSearchResult implements SearchResult, Serializable, View.OnCli
       return "guide";
    }
 
+   @Override
+   public String getTitle() {
+      return mGuideInfo.mTitle;
+   }
+
    @Override
    public boolean equals(Object o) {
       if (this == o) return true;
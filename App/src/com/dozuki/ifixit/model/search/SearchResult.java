@@ -8,4 +8,5 @@ public interface SearchResult {
    public View buildView(View v, LayoutInflater inflater, ViewGroup container);
    public int getLayout();
    public String getType();
+   public String getTitle();
 }
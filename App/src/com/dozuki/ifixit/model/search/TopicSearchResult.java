@@ -60,6 +60,11 @@ public class TopicSearchResult implements SearchResult, Serializable, View.OnCli
       return "device";
    }
 
+   @Override
+   public String getTitle() {
+      return mDisplayTitle != null ? mDisplayTitle : mTitle;
+   }
+
    @Override
    public void onClick(View view) {
       Intent intent = TopicViewActivity.viewTopic(view.getContext(), mTitle);
@@ -6,11 +6,18 @@ import java.util.ArrayList;
 public class TopicNode implements Serializable {
    private static final long serialVersionUID = 1L;
    protected static final String ROOT_NAME = "ROOT";
+   private static final int NO_TREE_INDEX = -1;
 
    private String mName;
    private String mDisplayName;
    private ArrayList<TopicNode> mChildren;
 
+   // Nodes from a TopicTree look up their children in it when they're first needed.
+   private int mTreeIndex = NO_TREE_INDEX;
+   private String mTreeVersion;
+   private boolean mLeaf;
+   private transient TopicTree mTree;
+
    public TopicNode() {
       this(ROOT_NAME);
    }
@@ -20,6 +27,15 @@ public class TopicNode implements Serializable {
       mDisplayName = name;
    }
 
+   TopicNode(TopicTree tree, int index, String name, String displayName, boolean leaf) {
+      mName = name;
+      mDisplayName = displayName;
+      mTree = tree;
+      mTreeIndex = index;
+      mTreeVersion = tree.getVersion();
+      mLeaf = leaf;
+   }
+
    public String getName() {
       return mName;
    }
@@ -32,16 +48,67 @@ public class TopicNode implements Serializable {
       mDisplayName = displayName;
    }
 
+   /**
+    * Returns the children from the current tree. The node is looked up by name if the
+    * tree changed since the node was created, e.g. because it was refreshed or the node
+    * was restored after the process was killed.
+    */
    public ArrayList<TopicNode> getChildren() {
+      if (mTreeIndex == NO_TREE_INDEX || mLeaf) {
+         return mChildren;
+      }
+
+      TopicTree tree = TopicTree.get();
+
+      if (tree == null && mChildren == null) {
+         tree = mTree != null ? mTree : TopicTree.getOrRead();
+      }
+
+      if (tree != null && !tree.getVersion().equals(mTreeVersion)) {
+         moveTo(tree);
+      }
+
+      if (mChildren == null) {
+         mChildren = tree == null ? new ArrayList<TopicNode>() :
+          tree.getChildren(mTreeIndex);
+      }
+
       return mChildren;
    }
 
+   /**
+    * Points the node at its place in the tree. Topics that were removed from it are
+    * left without children.
+    */
+   private void moveTo(TopicTree tree) {
+      int index = tree.indexOf(mName);
+
+      mTree = tree;
+      mTreeVersion = tree.getVersion();
+
+      if (index == NO_TREE_INDEX) {
+         mChildren = new ArrayList<TopicNode>();
+      } else {
+         mTreeIndex = index;
+         mChildren = null;
+      }
+   }
+
+   /**
+    * Returns true if getChildren() would have to read the tree from disk first, e.g.
+    * because the node was restored after the process was killed.
+    */
+   public boolean needsTree() {
+      return mChildren == null && mTreeIndex != NO_TREE_INDEX && !mLeaf &&
+       mTree == null && TopicTree.get() == null;
+   }
+
    public void setChildren(ArrayList<TopicNode> children) {
       mChildren = children;
    }
 
    public boolean isLeaf() {
-      return mChildren == null;
+      return mTreeIndex != NO_TREE_INDEX ? mLeaf : mChildren == null;
    }
 
    public boolean isRoot() {
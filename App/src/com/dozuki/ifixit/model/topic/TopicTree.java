@@ -0,0 +1,512 @@
+package com.dozuki.ifixit.model.topic;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.dozuki.ifixit.App;
+import com.dozuki.ifixit.util.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The category hierarchy of a site stored as flat arrays. Every node has the index of
+ * its parent and indexes into one table of names so each name is stored once. Nodes
+ * are in the order of the API response so a parent always comes before its children.
+ *
+ * TopicNodes are only created for the nodes that are displayed. Their children are
+ * looked up here when needed.
+ *
+ * The tree is saved in the app's files directory so the categories can be shown
+ * before they are downloaded again, and it's only saved again once it changed.
+ */
+public class TopicTree {
+   private static final String TAG = "TopicTree";
+   private static final String FILE_PREFIX = "topic_tree_";
+   private static final String TMP_SUFFIX = ".tmp";
+   private static final int VERSION = 1;
+   // Matches the freshness of the categories endpoint.
+   private static final long REFRESH_INTERVAL_MS = 60 * 60 * 1000;
+   private static final int NO_PARENT = -1;
+   // A display name that is the same as the name.
+   private static final int SAME_AS_NAME = -1;
+
+   public static final int ROOT = 0;
+
+   /**
+    * Receives the tree on the main thread.
+    */
+   public interface Listener {
+      /**
+       * @param tree the current site's tree or null if it wasn't saved yet
+       */
+      void onTopicTreeLoaded(TopicTree tree);
+   }
+
+   private static volatile TopicTree sTree;
+   private static final Handler sHandler = new Handler(Looper.getMainLooper());
+   private static final ExecutorService sExecutor =
+    Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable runnable) {
+         return new Thread(new Runnable() {
+            @Override
+            public void run() {
+               Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+               runnable.run();
+            }
+         }, "TopicTree");
+      }
+   });
+
+   private final String[] mStrings;
+   private final int[] mParents;
+   private final int[] mNames;
+   private final int[] mDisplayNames;
+   private final boolean[] mLeaves;
+   // The children of node i are mChildren[mChildStarts[i], mChildStarts[i + 1]).
+   private final int[] mChildStarts;
+   private final int[] mChildren;
+   private final String mVersion;
+
+   // Set once the tree belongs to a site.
+   private volatile String mSiteName;
+   private volatile long mRefreshedTime;
+
+   private TopicTree(String[] strings, int[] parents, int[] names, int[] displayNames,
+    boolean[] leaves) {
+      mStrings = strings;
+      mParents = parents;
+      mNames = names;
+      mDisplayNames = displayNames;
+      mLeaves = leaves;
+
+      int count = parents.length;
+      mChildStarts = new int[count + 1];
+      mChildren = new int[Math.max(count - 1, 0)];
+
+      for (int i = 0; i < count; i++) {
+         if (parents[i] != NO_PARENT) {
+            mChildStarts[parents[i] + 1]++;
+         }
+      }
+
+      for (int i = 0; i < count; i++) {
+         mChildStarts[i + 1] += mChildStarts[i];
+      }
+
+      // Children are added in node order so they keep the order of the response.
+      int[] next = Arrays.copyOf(mChildStarts, count);
+
+      for (int i = 0; i < count; i++) {
+         if (parents[i] != NO_PARENT) {
+            mChildren[next[parents[i]]++] = i;
+         }
+      }
+
+      mVersion = digest();
+   }
+
+   /**
+    * Returns the SHA-1 of the tree as it's saved. Unlike a hash code it's safe to
+    * assume two trees are the same if it's the same.
+    */
+   private String digest() {
+      try {
+         MessageDigest digest = MessageDigest.getInstance("SHA-1");
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          new DigestOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+               // Only the digest is needed.
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+               // Only the digest is needed.
+            }
+         }, digest)));
+
+         writeTo(out);
+         out.flush();
+
+         return Utils.toHex(digest.digest());
+      } catch (NoSuchAlgorithmException e) {
+         // Every Android device is required to provide SHA-1.
+         throw new RuntimeException(e);
+      } catch (IOException e) {
+         // Nothing is actually written.
+         throw new RuntimeException(e);
+      }
+   }
+
+   /**
+    * Builds a tree one node at a time. Nodes must be added after their parent.
+    */
+   public static class Builder {
+      private final Map<String, Integer> mStringIndexes = new HashMap<String, Integer>();
+      private final List<String> mStrings = new ArrayList<String>();
+      private int[] mParents = new int[64];
+      private int[] mNames = new int[64];
+      private int[] mDisplayNames = new int[64];
+      private boolean[] mLeaves = new boolean[64];
+      private int mCount;
+
+      public Builder() {
+         int root = add(NO_PARENT);
+
+         setName(root, TopicNode.ROOT_NAME);
+         setHasChildren(root);
+      }
+
+      /**
+       * Adds a leaf without a name and returns its index.
+       */
+      public int add(int parent) {
+         if (mCount == mParents.length) {
+            int capacity = mCount * 2;
+
+            mParents = Arrays.copyOf(mParents, capacity);
+            mNames = Arrays.copyOf(mNames, capacity);
+            mDisplayNames = Arrays.copyOf(mDisplayNames, capacity);
+            mLeaves = Arrays.copyOf(mLeaves, capacity);
+         }
+
+         mParents[mCount] = parent;
+         mNames[mCount] = intern("");
+         mDisplayNames[mCount] = SAME_AS_NAME;
+         mLeaves[mCount] = true;
+
+         return mCount++;
+      }
+
+      public void setName(int node, String name) {
+         mNames[node] = intern(name);
+      }
+
+      public void setDisplayName(int node, String displayName) {
+         mDisplayNames[node] = intern(displayName);
+      }
+
+      public void setHasChildren(int node) {
+         mLeaves[node] = false;
+      }
+
+      public TopicTree build() {
+         int[] displayNames = Arrays.copyOf(mDisplayNames, mCount);
+
+         for (int i = 0; i < mCount; i++) {
+            if (displayNames[i] == mNames[i]) {
+               displayNames[i] = SAME_AS_NAME;
+            }
+         }
+
+         return new TopicTree(mStrings.toArray(new String[mStrings.size()]),
+          Arrays.copyOf(mParents, mCount), Arrays.copyOf(mNames, mCount), displayNames,
+          Arrays.copyOf(mLeaves, mCount));
+      }
+
+      private int intern(String string) {
+         Integer index = mStringIndexes.get(string);
+
+         if (index == null) {
+            index = mStrings.size();
+            mStrings.add(string);
+            mStringIndexes.put(string, index);
+         }
+
+         return index;
+      }
+   }
+
+   public TopicNode getRoot() {
+      return getNode(ROOT);
+   }
+
+   /**
+    * Returns new TopicNodes for the children of the node.
+    */
+   public ArrayList<TopicNode> getChildren(int node) {
+      ArrayList<TopicNode> children =
+       new ArrayList<TopicNode>(mChildStarts[node + 1] - mChildStarts[node]);
+
+      for (int i = mChildStarts[node]; i < mChildStarts[node + 1]; i++) {
+         children.add(getNode(mChildren[i]));
+      }
+
+      return children;
+   }
+
+   /**
+    * Returns the index of the node with the name or -1 if there isn't one.
+    */
+   public int indexOf(String name) {
+      for (int i = 0; i < mNames.length; i++) {
+         if (mStrings[mNames[i]].equals(name)) {
+            return i;
+         }
+      }
+
+      return -1;
+   }
+
+   /**
+    * Changes whenever the hierarchy does. Node indexes are only valid within a version.
+    */
+   public String getVersion() {
+      return mVersion;
+   }
+
+   public int getCount() {
+      return mParents.length;
+   }
+
+   /**
+    * Returns true if the categories should be downloaded again.
+    */
+   public boolean isStale() {
+      return System.currentTimeMillis() - mRefreshedTime > REFRESH_INTERVAL_MS;
+   }
+
+   private TopicNode getNode(int node) {
+      String name = mStrings[mNames[node]];
+      String displayName = mDisplayNames[node] == SAME_AS_NAME ? name :
+       mStrings[mDisplayNames[node]];
+
+      return new TopicNode(this, node, name, displayName, mLeaves[node]);
+   }
+
+   /**
+    * Returns the current site's tree if it's loaded.
+    */
+   public static TopicTree get() {
+      TopicTree tree = sTree;
+
+      return tree != null && getSiteName().equals(tree.mSiteName) ? tree : null;
+   }
+
+   /**
+    * Returns the current site's tree, reading it from disk on this thread if it isn't
+    * loaded. Only for TopicNodes that were restored after the process was killed.
+    */
+   static TopicTree getOrRead() {
+      TopicTree tree = get();
+
+      return tree != null ? tree : getOrRead(getSiteName());
+   }
+
+   /**
+    * Calls the listener with the current site's tree, reading it from disk in the
+    * background if it isn't loaded yet.
+    */
+   public static void load(final Listener listener) {
+      TopicTree tree = get();
+
+      if (tree != null) {
+         listener.onTopicTreeLoaded(tree);
+         return;
+      }
+
+      final String siteName = getSiteName();
+
+      sExecutor.execute(new Runnable() {
+         @Override
+         public void run() {
+            final TopicTree loaded = getOrRead(siteName);
+
+            sHandler.post(new Runnable() {
+               @Override
+               public void run() {
+                  listener.onTopicTreeLoaded(loaded);
+               }
+            });
+         }
+      });
+   }
+
+   /**
+    * Makes a freshly downloaded tree the current site's tree and saves it in the
+    * background. If it's the same as the saved one, the saved one is kept and only
+    * marked as refreshed. Returns the current tree.
+    */
+   public static TopicTree update(TopicTree tree) {
+      final String siteName = getSiteName();
+      final TopicTree current = get();
+      final long now = System.currentTimeMillis();
+
+      if (current != null && current.mVersion.equals(tree.mVersion)) {
+         current.mRefreshedTime = now;
+
+         sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+               getFile(siteName).setLastModified(now);
+            }
+         });
+
+         return current;
+      }
+
+      final TopicTree updated = tree;
+      updated.mSiteName = siteName;
+      updated.mRefreshedTime = now;
+      sTree = updated;
+
+      sExecutor.execute(new Runnable() {
+         @Override
+         public void run() {
+            updated.write(getFile(siteName));
+         }
+      });
+
+      return updated;
+   }
+
+   private static synchronized TopicTree getOrRead(String siteName) {
+      TopicTree tree = sTree;
+
+      if (tree != null && siteName.equals(tree.mSiteName)) {
+         return tree;
+      }
+
+      long start = System.currentTimeMillis();
+      tree = read(getFile(siteName));
+
+      if (tree != null) {
+         tree.mSiteName = siteName;
+         sTree = tree;
+
+         if (App.inDebug()) {
+            Log.i(TAG, "Read " + tree.getCount() + " categories in " +
+             (System.currentTimeMillis() - start) + "ms");
+         }
+      }
+
+      return tree;
+   }
+
+   private static String getSiteName() {
+      return App.get().getSite().mName;
+   }
+
+   private static File getFile(String siteName) {
+      return new File(App.get().getFilesDir(), FILE_PREFIX + siteName);
+   }
+
+   private static TopicTree read(File file) {
+      DataInputStream in = null;
+
+      try {
+         in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+         if (in.readInt() != VERSION) {
+            return null;
+         }
+
+         String[] strings = new String[in.readInt()];
+
+         for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+         }
+
+         int count = in.readInt();
+         int[] parents = new int[count];
+         int[] names = new int[count];
+         int[] displayNames = new int[count];
+         boolean[] leaves = new boolean[count];
+
+         for (int i = 0; i < count; i++) {
+            parents[i] = in.readInt();
+            names[i] = in.readInt();
+            displayNames[i] = in.readInt();
+            leaves[i] = in.readBoolean();
+         }
+
+         TopicTree tree = new TopicTree(strings, parents, names, displayNames, leaves);
+         tree.mRefreshedTime = file.lastModified();
+
+         return tree;
+      } catch (FileNotFoundException e) {
+         return null;
+      } catch (IOException e) {
+         Log.e(TAG, "Failed to read category tree", e);
+         return null;
+      } finally {
+         closeQuietly(in);
+      }
+   }
+
+   private void write(File file) {
+      File tmpFile = new File(file.getPath() + TMP_SUFFIX);
+      DataOutputStream out = null;
+
+      try {
+         out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+
+         writeTo(out);
+         out.close();
+         out = null;
+
+         if (!tmpFile.renameTo(file)) {
+            Log.e(TAG, "Failed to rename " + tmpFile);
+         }
+      } catch (IOException e) {
+         Log.e(TAG, "Failed to write category tree", e);
+      } finally {
+         closeQuietly(out);
+         tmpFile.delete();
+      }
+   }
+
+   private void writeTo(DataOutputStream out) throws IOException {
+      out.writeInt(VERSION);
+      out.writeInt(mStrings.length);
+
+      for (String string : mStrings) {
+         out.writeUTF(string);
+      }
+
+      out.writeInt(mParents.length);
+
+      for (int i = 0; i < mParents.length; i++) {
+         out.writeInt(mParents[i]);
+         out.writeInt(mNames[i]);
+         out.writeInt(mDisplayNames[i]);
+         out.writeBoolean(mLeaves[i]);
+      }
+   }
+
+   private static void closeQuietly(Closeable closeable) {
+      if (closeable == null) {
+         return;
+      }
+
+      try {
+         closeable.close();
+      } catch (IOException ignored) {
+         // Nothing to do.
+      }
+   }
+}
@@ -23,7 +23,6 @@ import com.dozuki.ifixit.ui.auth.LoginFragment;
 import com.dozuki.ifixit.util.ViewServer;
 import com.dozuki.ifixit.util.api.Api;
 import com.dozuki.ifixit.util.api.ApiEvent;
-import com.squareup.otto.DeadEvent;
 import com.squareup.otto.Subscribe;
 
 /**
@@ -89,20 +88,6 @@ public abstract class BaseActivity extends AppCompatActivity {
          openLoginDialogIfLoggedOut();
       }
 
-      @SuppressWarnings("unused")
-      @Subscribe
-      public void onApiCall(ApiEvent.ActivityProxy activityProxy) {
-         if (activityProxy.getActivityid() == mActivityid) {
-            // Send the real event off to the real handler.
-            App.getBus().post(activityProxy.getApiEvent());
-         } else {
-            // Send the event back to Api so it can retry it for the
-            // intended Activity.
-            App.getBus().post(new DeadEvent(App.getBus(),
-             activityProxy.getApiEvent()));
-         }
-      }
-
       @SuppressWarnings("unused")
       @Subscribe
       public void onSiteChanged(SiteChangedEvent event) {
@@ -177,7 +162,7 @@ public abstract class BaseActivity extends AppCompatActivity {
          ViewServer.get(this).addWindow(this);
       }
 
-      Api.retryDeadEvents(this);
+      Api.getEventRouter().register(mActivityid);
    }
 
    /**
@@ -251,7 +236,7 @@ public abstract class BaseActivity extends AppCompatActivity {
        * Activity's onPause method to be called which unregisters the Activity
        * as well as returning to an already running Activity via the back button.
        */
-      Api.retryDeadEvents(this);
+      Api.getEventRouter().register(mActivityid);
       if (mPendingGoogleSigninResult != null) {
          App.getBus().post(mPendingGoogleSigninResult);
          mPendingGoogleSigninResult = null;
@@ -262,6 +247,13 @@ public abstract class BaseActivity extends AppCompatActivity {
    public void onDestroy() {
       super.onDestroy();
 
+      // The activityid survives configuration changes so only cancel the calls if
+      // nothing is going to receive their results.
+      if (isFinishing()) {
+         Api.cancelCalls(mActivityid);
+         Api.getEventRouter().remove(mActivityid);
+      }
+
       if (App.inDebug()) {
          ViewServer.get(this).removeWindow(this);
       }
@@ -273,6 +265,7 @@ public abstract class BaseActivity extends AppCompatActivity {
 
       App.getBus().unregister(this);
       App.getBus().unregister(mBaseActivityListener);
+      Api.getEventRouter().unregister(mActivityid);
    }
 
    public void setDrawerContent(int layoutid) {
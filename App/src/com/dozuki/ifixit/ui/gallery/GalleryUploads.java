@@ -0,0 +1,93 @@
+package com.dozuki.ifixit.ui.gallery;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.dozuki.ifixit.App;
+import com.dozuki.ifixit.util.ImageUploadPreparer;
+import com.dozuki.ifixit.util.api.ProgressRequestBody;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks the uploads started from the gallery by gallery key. Kept with the app
+ * rather than a fragment so an upload doesn't hold on to the fragment that started
+ * it and the fragment that is showing the gallery when it's made can show its
+ * progress. Only used on the main thread.
+ */
+class GalleryUploads {
+   interface Listener {
+      public void onProgress(String key, int percent);
+   }
+
+   private static final Handler sHandler = new Handler(Looper.getMainLooper());
+   // Percentage uploaded by gallery key for the uploads in progress.
+   private static final Map<String, Integer> sProgress = new HashMap<String, Integer>();
+   private static final Map<String, File> sFiles = new HashMap<String, File>();
+   private static final List<Listener> sListeners = new ArrayList<Listener>();
+
+   /**
+    * Returns the listener to pass to the upload of the file for the gallery key.
+    */
+   public static ProgressRequestBody.Listener start(final String key, File upload) {
+      sFiles.put(key, upload);
+
+      return new ProgressRequestBody.Listener() {
+         @Override
+         public void onProgress(final int percent) {
+            sHandler.post(new Runnable() {
+               @Override
+               public void run() {
+                  if (!sFiles.containsKey(key)) {
+                     // Finished before this was posted.
+                     return;
+                  }
+
+                  sProgress.put(key, percent);
+
+                  for (Listener listener : new ArrayList<Listener>(sListeners)) {
+                     listener.onProgress(key, percent);
+                  }
+               }
+            });
+         }
+      };
+   }
+
+   /**
+    * Returns the percentage uploaded or null if the image isn't being uploaded.
+    */
+   public static Integer getProgress(String key) {
+      return sProgress.get(key);
+   }
+
+   /**
+    * Forgets the upload and deletes its file if it was prepared for it. Failed
+    * uploads are kept because they can be tried again from the error dialog.
+    */
+   public static void finish(String key, boolean success) {
+      sProgress.remove(key);
+
+      if (!success) {
+         return;
+      }
+
+      File upload = sFiles.remove(key);
+
+      if (upload != null) {
+         ImageUploadPreparer.deletePrepared(App.get(), upload);
+      }
+   }
+
+   public static void addListener(Listener listener) {
+      sListeners.add(listener);
+   }
+
+   public static void removeListener(Listener listener) {
+      sListeners.remove(listener);
+   }
+}
@@ -9,9 +9,8 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
@@ -47,14 +46,12 @@ import com.dozuki.ifixit.ui.BaseFragment;
 import com.dozuki.ifixit.ui.guide.view.FullImageViewActivity;
 import com.dozuki.ifixit.util.CaptureHelper;
 import com.dozuki.ifixit.util.ImageSizes;
+import com.dozuki.ifixit.util.ImageUploadPreparer;
 import com.dozuki.ifixit.util.api.Api;
 import com.dozuki.ifixit.util.api.ApiCall;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 
 public abstract class MediaFragment extends BaseFragment
@@ -84,6 +81,14 @@ public abstract class MediaFragment extends BaseFragment
    private boolean mShowingDelete = false;
    private boolean mSelectForReturn;
    private TextView mNoMediaView;
+   private final GalleryUploads.Listener mUploadListener = new GalleryUploads.Listener() {
+      @Override
+      public void onProgress(String key, int percent) {
+         if (mGridView != null) {
+            mGalleryAdapter.updateProgress(key, percent);
+         }
+      }
+   };
 
    protected abstract void retrieveUserMedia();
 
@@ -169,6 +174,25 @@ public abstract class MediaFragment extends BaseFragment
       }
    }
 
+   @Override
+   public void onResume() {
+      super.onResume();
+
+      GalleryUploads.addListener(mUploadListener);
+
+      if (mGridView != null) {
+         // Shows the progress made while paused.
+         mGalleryAdapter.notifyDataSetChanged();
+      }
+   }
+
+   @Override
+   public void onPause() {
+      GalleryUploads.removeListener(mUploadListener);
+
+      super.onPause();
+   }
+
    @Override
    public void onActivityResult(int requestCode, int resultCode, Intent data) {
       if (resultCode == Activity.RESULT_OK) {
@@ -189,10 +213,10 @@ public abstract class MediaFragment extends BaseFragment
                String path = getPath(selectedImage);
 
                if (selectedImage.toString().startsWith(GOOGLE_PHOTOS_URI) && (path == null || path.length() == 0)) {
-                  // Try downloading the image from google photos if it's there.
-                  Uri uri = this.downloadFileFromExternalSource(selectedImage);
-
-                  path = uri.getPath();
+                  // Google Photos downloads the image when it's read. It's added to
+                  // the gallery once it's prepared.
+                  prepareAndUpload(selectedImage, null);
+                  continue;
                }
 
                if (!this.isImageValid(path)) {
@@ -200,7 +224,7 @@ public abstract class MediaFragment extends BaseFragment
                }
 
                String key = mGalleryAdapter.addFile(path);
-               Api.call(getActivity(), ApiCall.uploadImage(path, key));
+               prepareAndUpload(Uri.fromFile(new File(path)), key);
             }
 
          } else if (requestCode == CaptureHelper.CAMERA_REQUEST_CODE) {
@@ -210,7 +234,7 @@ public abstract class MediaFragment extends BaseFragment
             }
 
             String key = mGalleryAdapter.addFile(mCameraTempFileName);
-            Api.call(getActivity(), ApiCall.uploadImage(mCameraTempFileName, key));
+            prepareAndUpload(Uri.fromFile(new File(mCameraTempFileName)), key);
          }
       }
    }
@@ -363,39 +387,48 @@ public abstract class MediaFragment extends BaseFragment
       return result;
    }
 
-   private Uri downloadFileFromExternalSource(Uri source) {
-      Uri result = null;
-      FileOutputStream fos = null;
+   /**
+    * Shrinks the image off the main thread and uploads it. Images that can't be
+    * prepared are uploaded as they are. Images without a key aren't on the device yet
+    * so they are added to the gallery once they're prepared. The upload is made even
+    * if the fragment is recreated in the meantime because the result is delivered to
+    * the new one.
+    */
+   private void prepareAndUpload(final Uri source, final String key) {
+      final Activity activity = getActivity();
+      final ImageUploadPreparer preparer = new ImageUploadPreparer(activity);
+
+      new AsyncTask<Void, Void, File>() {
+         @Override
+         protected File doInBackground(Void... params) {
+            return preparer.prepare(source);
+         }
 
-      try {
-         InputStream is = getActivity().getContentResolver().openInputStream(source);
-         if (is != null) {
-            File f = CaptureHelper.createImageFile(getActivity());
+         @Override
+         protected void onPostExecute(File upload) {
+            String uploadKey = key;
 
-            Bitmap bmp = BitmapFactory.decodeStream(is);
-            fos = new FileOutputStream(f);
-            bmp.compress(Bitmap.CompressFormat.JPEG, 100, fos);
+            if (upload == null && key == null) {
+               if (isAdded()) {
+                  Toast.makeText(activity, R.string.google_photos_download_error,
+                   Toast.LENGTH_LONG).show();
+               }
 
-            result = Uri.fromFile(f);
-         }
-      } catch (FileNotFoundException e) {
-         Toast.makeText(getActivity(), R.string.google_photos_download_error,
-          Toast.LENGTH_LONG).show();
+               return;
+            } else if (upload == null) {
+               upload = new File(key);
+            } else if (uploadKey == null) {
+               if (!isAdded() || !isImageValid(upload.getPath())) {
+                  return;
+               }
 
-         e.printStackTrace();
-      } catch (IOException e) {
-         e.printStackTrace();
-      } finally {
-         try {
-            if (fos != null) {
-               fos.close();
+               uploadKey = mGalleryAdapter.addFile(upload.getPath());
             }
-         } catch (IOException e) {
-            e.printStackTrace();
-         }
-      }
 
-      return result;
+            Api.call(activity, ApiCall.uploadImage(uploadKey, upload, uploadKey,
+             GalleryUploads.start(uploadKey, upload)));
+         }
+      }.execute();
    }
 
    private String getPath(Uri uri) {
@@ -509,6 +542,19 @@ public abstract class MediaFragment extends BaseFragment
          return path;
       }
 
+      /**
+       * Updates the visible cell of the upload without rebinding the others.
+       */
+      public void updateProgress(String key, int percent) {
+         for (int i = 0; i < mGridView.getChildCount(); i++) {
+            MediaViewItem itemView = (MediaViewItem) mGridView.getChildAt(i);
+
+            if (key.equals(itemView.getTag())) {
+               itemView.setUploadProgress(percent);
+            }
+         }
+      }
+
       public void invalidatedView() {
          mGridView.invalidateViews();
       }
@@ -542,6 +588,8 @@ public abstract class MediaFragment extends BaseFragment
          itemView.setImage(image);
          itemView.setTag(image.getPath());
          itemView.setSelected(image.isSelected());
+         itemView.setUploadProgress(image.isLocal() ?
+          GalleryUploads.getProgress(image.getPath()) : null);
 
          return itemView;
       }
@@ -12,6 +12,7 @@ import android.view.View;
 import android.widget.ImageView;
 import android.widget.ProgressBar;
 import android.widget.RelativeLayout;
+import android.widget.TextView;
 
 import com.dozuki.ifixit.R;
 import com.dozuki.ifixit.model.gallery.GalleryImage;
@@ -28,6 +29,7 @@ public class MediaViewItem extends RelativeLayout {
    private RelativeLayout mSelectImage;
    private GalleryFallbackImage mImageView;
    private RelativeLayout mLoadingBar;
+   private TextView mUploadProgress;
    private int mTargetWidth;
    private int mTargetHeight;
    private com.squareup.picasso.Picasso mPicasso;
@@ -43,6 +45,7 @@ public class MediaViewItem extends RelativeLayout {
       mImageView = (GalleryFallbackImage) findViewById(R.id.media_image);
       mSelectImage = ((RelativeLayout) findViewById(R.id.selected_image));
       mLoadingBar = (RelativeLayout) findViewById(R.id.gallery_cell_progress_bar);
+      mUploadProgress = (TextView) findViewById(R.id.gallery_cell_upload_progress);
 
       mSelectImage.setVisibility(View.INVISIBLE);
       mLoadingBar.setVisibility(View.GONE);
@@ -101,6 +104,18 @@ public class MediaViewItem extends RelativeLayout {
        .into((Target) mImageView);
    }
 
+   /**
+    * Shows how much of the image was uploaded or nothing if percent is null.
+    */
+   public void setUploadProgress(Integer percent) {
+      if (percent == null) {
+         mUploadProgress.setVisibility(GONE);
+      } else {
+         mUploadProgress.setText(mContext.getString(R.string.upload_progress, percent));
+         mUploadProgress.setVisibility(VISIBLE);
+      }
+   }
+
    public void setSelected(boolean selected) {
       mSelectImage.setVisibility(selected ? View.VISIBLE : View.INVISIBLE);
    }
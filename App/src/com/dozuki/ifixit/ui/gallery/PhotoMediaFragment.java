@@ -43,6 +43,8 @@ public class PhotoMediaFragment extends MediaFragment {
 
    @Subscribe
    public void onUploadImage(ApiEvent.UploadImage event) {
+      GalleryUploads.finish(event.getExtraInfo(), !event.hasError());
+
       if (!event.hasError()) {
          Image image = event.getResult();
          String key = event.getExtraInfo();
@@ -18,27 +18,25 @@ import com.dozuki.ifixit.App;
 import com.dozuki.ifixit.R;
 import com.dozuki.ifixit.model.guide.Guide;
 import com.dozuki.ifixit.ui.BaseDialogFragment;
+import com.dozuki.ifixit.util.TopicIndex;
 import com.dozuki.ifixit.util.api.Api;
 import com.dozuki.ifixit.util.api.ApiCall;
 import com.dozuki.ifixit.util.api.ApiEvent;
 import com.dozuki.ifixit.views.HelperTextInputLayout;
 import com.squareup.otto.Subscribe;
 
-import java.util.ArrayList;
 import java.util.regex.Pattern;
 
 public class NewGuideDialogFragment extends BaseDialogFragment {
    private static final String INVALID_DEVICE_NAME_PATTERN = "[^#<>\\[\\]\\|\\{\\},\\+\\?&\\/\\\\\\%:;]+";
 
    private static final String GUIDE_KEY = "GUIDE_KEY";
-   private static final String TOPIC_LIST_KEY = "TOPIC_LIST_KEY";
    private static String mTopicName;
    private Guide mGuide;
    private AppCompatSpinner mType;
    private TextInputEditText mSubject;
    private AppCompatAutoCompleteTextView mTopic;
-   private ArrayList<String> mTopics;
-   private ArrayAdapter<String> mAdapter;
+   private TopicNameAdapter mAdapter;
    private HelperTextInputLayout mSubjectWrapper;
 
    public static NewGuideDialogFragment newInstance(Guide guide) {
@@ -58,7 +56,6 @@ public class NewGuideDialogFragment extends BaseDialogFragment {
    public Dialog onCreateDialog(Bundle savedInstanceState) {
       if (savedInstanceState != null) {
          mGuide = (Guide) savedInstanceState.getSerializable(GUIDE_KEY);
-         mTopics = (ArrayList<String>) savedInstanceState.getSerializable(TOPIC_LIST_KEY);
       } else {
          mGuide = (Guide) getArguments().getSerializable(GUIDE_KEY);
       }
@@ -129,11 +126,9 @@ public class NewGuideDialogFragment extends BaseDialogFragment {
          mTopic.setText(topic);
       }
 
-      if (mTopics != null) {
-         setTopicArrayAdapter();
-      } else {
-         Api.call(getActivity(), ApiCall.allTopics());
-      }
+      mAdapter = new TopicNameAdapter(getActivity());
+      mTopic.setAdapter(mAdapter);
+      loadTopicIndex();
 
       mSubjectWrapper = (HelperTextInputLayout) v.findViewById(R.id.subject_field_wrapper);
       mSubject = (TextInputEditText) v.findViewById(R.id.subject_field);
@@ -205,24 +200,36 @@ public class NewGuideDialogFragment extends BaseDialogFragment {
       }
 
       outState.putSerializable(GUIDE_KEY, mGuide);
-      outState.putStringArrayList(TOPIC_LIST_KEY, mTopics);
    }
 
    @Subscribe
    public void onTopicList(ApiEvent.TopicList event) {
       if (!event.hasError()) {
-         mTopics = new ArrayList<String>(event.getResult());
-
-         setTopicArrayAdapter();
+         TopicIndex.update(event.getResult(), new TopicIndex.Listener() {
+            @Override
+            public void onTopicIndexLoaded(TopicIndex index) {
+               mAdapter.setIndex(index);
+            }
+         });
       } else {
          Api.getErrorDialog(getActivity(), event).show();
       }
    }
 
-   private void setTopicArrayAdapter() {
-      mAdapter = new ArrayAdapter<String>(getActivity(), R.layout.topic_name_autocomplete_dropdown_item,
-       mTopics);
+   /**
+    * Suggests topics from the site's index and downloads the topic list if the index
+    * is missing or out of date.
+    */
+   private void loadTopicIndex() {
+      TopicIndex.load(new TopicIndex.Listener() {
+         @Override
+         public void onTopicIndexLoaded(TopicIndex index) {
+            mAdapter.setIndex(index);
 
-      mTopic.setAdapter(mAdapter);
+            if ((index == null || index.isStale()) && getActivity() != null) {
+               Api.call(getActivity(), ApiCall.allTopics());
+            }
+         }
+      });
    }
 }
@@ -36,6 +36,7 @@ import com.dozuki.ifixit.model.guide.GuideStep;
 import com.dozuki.ifixit.model.guide.StepLine;
 import com.dozuki.ifixit.ui.BaseMenuDrawerActivity;
 import com.dozuki.ifixit.ui.guide.view.GuideViewActivity;
+import com.dozuki.ifixit.util.ImageUploadPreparer;
 import com.dozuki.ifixit.util.JSONHelper;
 import com.dozuki.ifixit.util.api.Api;
 import com.dozuki.ifixit.util.api.ApiCall;
@@ -608,6 +609,10 @@ public class StepEditActivity extends BaseMenuDrawerActivity implements OnClickL
       if (!event.hasError()) {
          Image newThumb = event.getResult();
 
+         // The photo itself is kept. Failed uploads keep their prepared file so
+         // they can be tried again.
+         ImageUploadPreparer.deletePrepared(this, event.mApiCall.getUploadFile());
+
          // Find the temporarily stored image object to update the filename to
          // the image path and imageid.
          if (newThumb != null) {
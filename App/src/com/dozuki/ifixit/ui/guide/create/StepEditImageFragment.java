@@ -7,6 +7,7 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Environment;
 import android.provider.MediaStore;
@@ -29,6 +30,7 @@ import com.dozuki.ifixit.ui.BaseFragment;
 import com.dozuki.ifixit.ui.gallery.GalleryActivity;
 import com.dozuki.ifixit.ui.guide.ThumbnailView;
 import com.dozuki.ifixit.util.CaptureHelper;
+import com.dozuki.ifixit.util.ImageUploadPreparer;
 import com.dozuki.ifixit.util.api.Api;
 import com.dozuki.ifixit.util.api.ApiCall;
 import com.squareup.otto.Bus;
@@ -272,12 +274,33 @@ public class StepEditImageFragment extends BaseFragment {
                guide.getStep(pagePosition).addImage(newThumb);
                activity.refreshView(pagePosition);
 
-               Api.call(activity, ApiCall.uploadImageToStep(mCurrentPhotoPath));
+               prepareAndUpload(activity, mCurrentPhotoPath);
             }
             break;
       }
    }
 
+   /**
+    * Shrinks the photo off the main thread and uploads it. Photos that can't be
+    * prepared are uploaded as they are.
+    */
+   private void prepareAndUpload(final Activity activity, final String path) {
+      final ImageUploadPreparer preparer = new ImageUploadPreparer(activity);
+
+      new AsyncTask<Void, Void, File>() {
+         @Override
+         protected File doInBackground(Void... params) {
+            return preparer.prepare(Uri.fromFile(new File(path)));
+         }
+
+         @Override
+         protected void onPostExecute(File upload) {
+            Api.call(activity, ApiCall.uploadImageToStep(path,
+             upload != null ? upload : new File(path)));
+         }
+      }.execute();
+   }
+
    @Override
    public void onSaveInstanceState(Bundle savedInstanceState) {
       super.onSaveInstanceState(savedInstanceState);
@@ -0,0 +1,99 @@
+package com.dozuki.ifixit.ui.guide.create;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import com.dozuki.ifixit.R;
+import com.dozuki.ifixit.util.TopicIndex;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Suggests topic names for an AutoCompleteTextView from the site's TopicIndex.
+ */
+public class TopicNameAdapter extends BaseAdapter implements Filterable {
+   private static final int MAX_SUGGESTIONS = 20;
+
+   private final LayoutInflater mInflater;
+   private volatile TopicIndex mIndex;
+   private List<String> mSuggestions = Collections.emptyList();
+
+   private final Filter mFilter = new Filter() {
+      @Override
+      protected FilterResults performFiltering(CharSequence constraint) {
+         TopicIndex index = mIndex;
+         List<String> suggestions = index == null || constraint == null ?
+          Collections.<String>emptyList() : index.find(constraint.toString(), MAX_SUGGESTIONS);
+         FilterResults results = new FilterResults();
+
+         results.values = suggestions;
+         results.count = suggestions.size();
+
+         return results;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      protected void publishResults(CharSequence constraint, FilterResults results) {
+         mSuggestions = (List<String>)results.values;
+
+         if (results.count > 0) {
+            notifyDataSetChanged();
+         } else {
+            notifyDataSetInvalidated();
+         }
+      }
+   };
+
+   public TopicNameAdapter(Context context) {
+      mInflater = LayoutInflater.from(context);
+   }
+
+   /**
+    * Suggestions are empty until the index is set.
+    */
+   public void setIndex(TopicIndex index) {
+      mIndex = index;
+   }
+
+   @Override
+   public int getCount() {
+      return mSuggestions.size();
+   }
+
+   @Override
+   public String getItem(int position) {
+      return mSuggestions.get(position);
+   }
+
+   @Override
+   public long getItemId(int position) {
+      return position;
+   }
+
+   @Override
+   public View getView(int position, View convertView, ViewGroup parent) {
+      TextView view = (TextView)convertView;
+
+      if (view == null) {
+         view = (TextView)mInflater.inflate(R.layout.topic_name_autocomplete_dropdown_item,
+          parent, false);
+      }
+
+      view.setText(getItem(position));
+
+      return view;
+   }
+
+   @Override
+   public Filter getFilter() {
+      return mFilter;
+   }
+}
@@ -25,24 +25,23 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.inputmethod.InputMethodManager;
-import android.widget.ArrayAdapter;
 import android.widget.AutoCompleteTextView;
 import android.widget.TextView;
 
 import com.dozuki.ifixit.R;
 import com.dozuki.ifixit.model.guide.wizard.TopicNamePage;
 import com.dozuki.ifixit.ui.BaseFragment;
+import com.dozuki.ifixit.ui.guide.create.TopicNameAdapter;
+import com.dozuki.ifixit.util.TopicIndex;
 import com.dozuki.ifixit.util.api.Api;
 import com.dozuki.ifixit.util.api.ApiCall;
 import com.dozuki.ifixit.util.api.ApiEvent;
 import com.squareup.otto.Subscribe;
 
-import java.util.ArrayList;
 import java.util.regex.Pattern;
 
 public class TopicNameFragment extends BaseFragment {
    private static final String ARG_KEY = "key";
-   public static final String TOPIC_LIST_KEY = "TOPIC_LIST_KEY";
 
    private static final String INVALID_DEVICE_NAME_PATTERN = "[^#<>\\[\\]\\|\\{\\},\\+\\?&\\/\\\\\\%:;]+";
 
@@ -51,8 +50,7 @@ public class TopicNameFragment extends BaseFragment {
    private String mKey;
    private TopicNamePage mPage;
    private AutoCompleteTextView mTopicNameView;
-   private ArrayAdapter<String> mAdapter;
-   private ArrayList<String> mTopics;
+   private TopicNameAdapter mAdapter;
 
    public static TopicNameFragment create(String key) {
       Bundle args = new Bundle();
@@ -76,9 +74,6 @@ public class TopicNameFragment extends BaseFragment {
    @Override
    public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
 
-      if (savedInstanceState != null) {
-         mTopics = savedInstanceState.getStringArrayList(TOPIC_LIST_KEY);
-      }
       mPage = (TopicNamePage) mCallbacks.onGetPage(mKey);
 
       View rootView = inflater.inflate(R.layout.guide_create_intro_topic_name, container, false);
@@ -91,11 +86,9 @@ public class TopicNameFragment extends BaseFragment {
 
       mTopicNameView = (AutoCompleteTextView) rootView.findViewById(R.id.topic_name);
 
-      if (mTopics != null) {
-         setTopicArrayAdapter();
-      } else {
-         Api.call(getActivity(), ApiCall.allTopics());
-      }
+      mAdapter = new TopicNameAdapter(getActivity());
+      mTopicNameView.setAdapter(mAdapter);
+      loadTopicIndex();
 
       mTopicNameView.setHint(mPage.getHint());
       mTopicNameView.setText(mPage.getData().getString(TopicNamePage.TOPIC_DATA_KEY));
@@ -140,13 +133,6 @@ public class TopicNameFragment extends BaseFragment {
       mCallbacks = null;
    }
 
-   @Override
-   public void onSaveInstanceState(Bundle outState) {
-      super.onSaveInstanceState(outState);
-
-      outState.putStringArrayList(TOPIC_LIST_KEY, mTopics);
-   }
-
    @Override
    public void setMenuVisibility(boolean menuVisible) {
       super.setMenuVisibility(menuVisible);
@@ -162,19 +148,32 @@ public class TopicNameFragment extends BaseFragment {
       }
    }
 
-   private void setTopicArrayAdapter() {
-      mAdapter = new ArrayAdapter<String>((Activity) mCallbacks, R.layout.topic_name_autocomplete_dropdown_item,
-       mTopics);
+   /**
+    * Suggests topics from the site's index and downloads the topic list if the index
+    * is missing or out of date.
+    */
+   private void loadTopicIndex() {
+      TopicIndex.load(new TopicIndex.Listener() {
+         @Override
+         public void onTopicIndexLoaded(TopicIndex index) {
+            mAdapter.setIndex(index);
 
-      mTopicNameView.setAdapter(mAdapter);
+            if ((index == null || index.isStale()) && getActivity() != null) {
+               Api.call(getActivity(), ApiCall.allTopics());
+            }
+         }
+      });
    }
 
    @Subscribe
    public void onTopicList(ApiEvent.TopicList event) {
       if (!event.hasError()) {
-         mTopics = new ArrayList<String>(event.getResult());
-
-         setTopicArrayAdapter();
+         TopicIndex.update(event.getResult(), new TopicIndex.Listener() {
+            @Override
+            public void onTopicIndexLoaded(TopicIndex index) {
+               mAdapter.setIndex(index);
+            }
+         });
       } else {
          Api.getErrorDialog(getActivity(), event).show();
       }
@@ -2,6 +2,7 @@ package com.dozuki.ifixit.ui.guide.view;
 
 import android.content.Context;
 import android.text.Html;
+import android.text.Spanned;
 import android.text.method.LinkMovementMethod;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -12,6 +13,7 @@ import android.widget.TextView;
 
 import com.dozuki.ifixit.R;
 import com.dozuki.ifixit.model.guide.StepLine;
+import com.dozuki.ifixit.util.HtmlRenderer;
 import com.dozuki.ifixit.util.Utils;
 import com.dozuki.ifixit.util.WikiHtmlTagHandler;
 
@@ -34,8 +36,13 @@ public class GuideStepLineView extends LinearLayout {
       setPadding(LINE_INDENT * line.getLevel(), MARGIN, 0, MARGIN);
 
       TextView stepText = (TextView) findViewById(R.id.step_text);
-      stepText.setText(Utils.correctLinkPaths(
-       Html.fromHtml(line.getTextRendered(), null, new WikiHtmlTagHandler())));
+      final String text = line.getTextRendered();
+      stepText.setText(HtmlRenderer.renderNow(stepText, text, new HtmlRenderer.Renderer() {
+         @Override
+         public Spanned render(Html.ImageGetter imageGetter) {
+            return Utils.correctLinkPaths(Html.fromHtml(text, null, new WikiHtmlTagHandler()));
+         }
+      }));
       stepText.setMovementMethod(LinkMovementMethod.getInstance());
 
       ImageView bullet = (ImageView)findViewById(R.id.bullet);
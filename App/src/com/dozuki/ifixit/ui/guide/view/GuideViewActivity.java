@@ -62,6 +62,7 @@ public class GuideViewActivity extends BaseMenuDrawerActivity implements
    private boolean mFavoriting = false;
    private boolean mIsOfflineGuide;
    private Toast mToast;
+   private StepImagePrefetcher mStepImagePrefetcher;
 
    /////////////////////////////////////////////////////
    // LIFECYCLE
@@ -139,6 +140,15 @@ public class GuideViewActivity extends BaseMenuDrawerActivity implements
       fetchGuideFromApi(mGuideid);
    }
 
+   @Override
+   public void onDestroy() {
+      super.onDestroy();
+
+      if (mStepImagePrefetcher != null) {
+         mStepImagePrefetcher.cancel();
+      }
+   }
+
    @Override
    public void onSaveInstanceState(Bundle state) {
       super.onSaveInstanceState(state);
@@ -279,7 +289,7 @@ public class GuideViewActivity extends BaseMenuDrawerActivity implements
             // Set guide to null to force a refresh of the guide object.
             mGuide = null;
             supportInvalidateOptionsMenu();
-            fetchGuideFromApi(mGuideid);
+            fetchGuideFromApi(mGuideid, true);
             return true;
          case R.id.comments:
             ArrayList<Comment> comments;
@@ -347,6 +357,9 @@ public class GuideViewActivity extends BaseMenuDrawerActivity implements
             Guide guide = event.getResult();
             mCurrentPage = calculateInitialPage(guide);
             setGuide(guide, mCurrentPage);
+         } else if (event.mRevalidated && !mIsOfflineGuide) {
+            // The guide changed since the cached copy we are displaying was stored.
+            setGuide(event.getResult(), mCurrentPage);
          }
       } else {
          Api.getErrorDialog(this, event).show();
@@ -438,6 +451,13 @@ public class GuideViewActivity extends BaseMenuDrawerActivity implements
       mAdapter = new GuideViewAdapter(getSupportFragmentManager(), mGuide,
        mIsOfflineGuide);
 
+      if (mStepImagePrefetcher != null) {
+         mStepImagePrefetcher.cancel();
+      }
+      mStepImagePrefetcher = new StepImagePrefetcher(this, mGuide,
+       mAdapter.getStepOffset(), mIsOfflineGuide);
+      mStepImagePrefetcher.onPageSelected(currentPage);
+
       mPager.setAdapter(mAdapter);
       mPager.setVisibility(View.VISIBLE);
       mPager.setCurrentItem(currentPage);
@@ -453,8 +473,18 @@ public class GuideViewActivity extends BaseMenuDrawerActivity implements
    }
 
    private void fetchGuideFromApi(int guideid) {
+      fetchGuideFromApi(guideid, false);
+   }
+
+   private void fetchGuideFromApi(int guideid, boolean reload) {
+      ApiCall apiCall = ApiCall.guide(guideid);
+
+      if (reload) {
+         apiCall.bypassCache();
+      }
+
       showLoading(R.id.loading_container);
-      Api.call(this, ApiCall.guide(guideid));
+      Api.call(this, apiCall);
    }
 
    /**
@@ -515,6 +545,8 @@ public class GuideViewActivity extends BaseMenuDrawerActivity implements
    public void onPageSelected(int currentPage) {
       mCurrentPage = currentPage;
 
+      mStepImagePrefetcher.onPageSelected(currentPage);
+
       updateCommentCounts();
       App.sendScreenView(mAdapter.getFragmentScreenLabel(currentPage));
    }
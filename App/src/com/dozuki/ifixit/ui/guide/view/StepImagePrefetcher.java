@@ -0,0 +1,136 @@
+package com.dozuki.ifixit.ui.guide.view;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.util.DisplayMetrics;
+
+import com.dozuki.ifixit.App;
+import com.dozuki.ifixit.model.Image;
+import com.dozuki.ifixit.model.guide.Guide;
+import com.dozuki.ifixit.model.guide.GuideStep;
+import com.dozuki.ifixit.util.ImageSizes;
+import com.dozuki.ifixit.util.PicassoUtils;
+import com.dozuki.ifixit.util.TieredImageCache;
+import com.squareup.picasso.Picasso;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes the main images of the steps around the current page into Picasso's memory
+ * cache so swiping to them doesn't show a placeholder while the image loads.
+ *
+ * The requests are identical to the ones ThumbnailView makes so they share the
+ * memory cache key. Prefetched images take up at most half of the memory cache tier
+ * they are kept in and nothing is prefetched while the system is low on memory.
+ */
+class StepImagePrefetcher {
+   private static final int NEXT_STEPS = 3;
+   private static final int PREVIOUS_STEPS = 1;
+   private static final int MAX_CACHE_FRACTION = 2;
+
+   private final Context mContext;
+   private final Picasso mPicasso;
+   private final Guide mGuide;
+   private final int mStepOffset;
+   private final boolean mIsOfflineGuide;
+
+   public StepImagePrefetcher(Context context, Guide guide, int stepOffset,
+    boolean isOfflineGuide) {
+      mContext = context;
+      mPicasso = Picasso.with(context);
+      mGuide = guide;
+      mStepOffset = stepOffset;
+      mIsOfflineGuide = isOfflineGuide;
+   }
+
+   /**
+    * Prefetches the images of the steps around the given pager position.
+    */
+   public void onPageSelected(int page) {
+      if (isLowOnMemory()) {
+         return;
+      }
+
+      int currentStep = page - mStepOffset;
+      List<String> urls = new ArrayList<String>();
+
+      // Closest steps first with the next ones before the previous ones.
+      for (int distance = 1; distance <= NEXT_STEPS; distance++) {
+         addStepImage(urls, currentStep + distance);
+
+         if (distance <= PREVIOUS_STEPS) {
+            addStepImage(urls, currentStep - distance);
+         }
+      }
+
+      if (urls.isEmpty()) {
+         return;
+      }
+
+      // Offline images are keyed by their URL too. All of the images have the
+      // same size so they share a tier.
+      TieredImageCache.Tier tier = App.getImageCache().getTier(urls.get(0));
+      int maxImages = getMaxImages(tier);
+
+      // Picasso skips images that are already in the memory cache or being loaded.
+      for (String url : urls.subList(0, Math.min(maxImages, urls.size()))) {
+         PicassoUtils.displayImage(mPicasso, url, mIsOfflineGuide)
+          .tag(this)
+          .fetch();
+      }
+   }
+
+   /**
+    * Cancels prefetches that haven't finished.
+    */
+   public void cancel() {
+      mPicasso.cancelTag(this);
+   }
+
+   private void addStepImage(List<String> urls, int stepNumber) {
+      if (stepNumber < 0 || stepNumber >= mGuide.getNumSteps()) {
+         return;
+      }
+
+      GuideStep step = mGuide.getStep(stepNumber);
+      ArrayList<Image> images = step.getImages();
+
+      if (images == null || images.isEmpty()) {
+         return;
+      }
+
+      Image image = images.get(0);
+
+      if (image.isLocal() || image.getPath() == null) {
+         return;
+      }
+
+      // ThumbnailView displays the first image with this URL.
+      urls.add(image.getPath() + ImageSizes.stepMain);
+   }
+
+   /**
+    * Returns how many images fit in half of the tier so prefetching doesn't evict
+    * the images on screen. Step images are assumed to be about as large as a 4:3
+    * ARGB_8888 image that spans the screen.
+    */
+   private int getMaxImages(TieredImageCache.Tier tier) {
+      DisplayMetrics metrics = mContext.getResources().getDisplayMetrics();
+      int longSide = Math.max(metrics.widthPixels, metrics.heightPixels);
+      long imageBytes = (long)longSide * (longSide * 3 / 4) * 4;
+      long maxBytes = App.getImageCache().maxSize(tier);
+
+      return (int)Math.min(NEXT_STEPS + PREVIOUS_STEPS,
+       maxBytes / MAX_CACHE_FRACTION / imageBytes);
+   }
+
+   private boolean isLowOnMemory() {
+      ActivityManager activityManager =
+       (ActivityManager)mContext.getSystemService(Context.ACTIVITY_SERVICE);
+      ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+      activityManager.getMemoryInfo(memoryInfo);
+
+      return memoryInfo.lowMemory;
+   }
+}
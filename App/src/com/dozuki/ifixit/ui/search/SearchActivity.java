@@ -4,6 +4,7 @@ import android.app.SearchManager;
 import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.provider.SearchRecentSuggestions;
@@ -27,13 +28,20 @@ import android.widget.TextView;
 
 import com.dozuki.ifixit.App;
 import com.dozuki.ifixit.R;
+import com.dozuki.ifixit.model.dozuki.Site;
+import com.dozuki.ifixit.model.guide.GuideInfo;
+import com.dozuki.ifixit.model.search.GuideSearchResult;
 import com.dozuki.ifixit.model.search.SearchResult;
 import com.dozuki.ifixit.model.search.SearchResults;
+import com.dozuki.ifixit.model.user.User;
 import com.dozuki.ifixit.ui.BaseActivity;
 import com.dozuki.ifixit.ui.EndlessRecyclerViewScrollListener;
 import com.dozuki.ifixit.util.api.Api;
 import com.dozuki.ifixit.util.api.ApiCall;
+import com.dozuki.ifixit.util.api.ApiDatabase;
+import com.dozuki.ifixit.util.api.ApiError;
 import com.dozuki.ifixit.util.api.ApiEvent;
+import com.dozuki.ifixit.util.api.GuidePrefetcher;
 import com.squareup.otto.Subscribe;
 
 import java.io.UnsupportedEncodingException;
@@ -51,7 +59,23 @@ public class SearchActivity extends BaseActivity implements SearchView.OnQueryTe
 
    private static final int LIMIT = 20;
    private static final String QUERY_KEY = "QUERY_KEY";
+   // Delay after the last keystroke before searching as the user types.
+   private static final long SEARCH_DELAY_MS = 300;
+
+   // Shared by all instances so looking up the same devices again is instant.
+   private static final SearchResultCache sResultCache = new SearchResultCache();
+
    private int mOffset = 0;
+   // The filter spinner position the current results were requested with.
+   private int mSearchPosition = ALL_POSITION;
+   // The latest search request or null if the latest page came from the cache.
+   // Results of earlier requests are ignored once this instance made one.
+   private ApiCall mSearchCall;
+   private boolean mSearched = false;
+   // True while the page at mOffset is requested from the API or the offline guides.
+   private boolean mLoadingPage = false;
+   // Search of the offline guides in place of mSearchCall while there's no connection.
+   private AsyncTask<Void, Void, SearchResults> mOfflineSearch;
 
    private String mQuery = "";
    private Spinner mSpinner;
@@ -120,17 +144,29 @@ public class SearchActivity extends BaseActivity implements SearchView.OnQueryTe
       mListView.setLayoutManager(mLayoutManager);
 
       mOffset = 0;
-      mListView.addOnScrollListener(new EndlessRecyclerViewScrollListener(mLayoutManager) {
+      mScrollListener = new EndlessRecyclerViewScrollListener(mLayoutManager) {
          @Override
          public void onLoadMore(int page, int totalItemsCount, RecyclerView view) {
+            // The list may be showing a refinement while the first page loads.
+            // Requesting the next page would cancel the one that's loading.
+            if (mLoadingPage) {
+               return;
+            }
+
             if (totalItemsCount >= LIMIT - 3) { // We have to offset by 3 because some responses should have 20 results, but they often have less
-               mOffset += LIMIT;
                Log.d("SearchFragment", "Loading more...");
 
-               String query = buildQuery(mQuery, mSpinner.getSelectedItemPosition());
-               query += "&limit=" + LIMIT + "&offset=" + mOffset;
+               requestPage(mQuery, mSearchPosition, mOffset + LIMIT);
+            }
+         }
+      };
+      mListView.addOnScrollListener(mScrollListener);
 
-               Api.call(SearchActivity.this, ApiCall.search(query));
+      mListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+         @Override
+         public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+            if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+               prefetchVisibleGuides();
             }
          }
       });
@@ -141,6 +177,13 @@ public class SearchActivity extends BaseActivity implements SearchView.OnQueryTe
       handleIntent(getIntent(), false);
    }
 
+   @Override
+   public void onDestroy() {
+      super.onDestroy();
+
+      cancelOfflineSearch();
+   }
+
    @Override
    public void onSaveInstanceState(Bundle state) {
       super.onSaveInstanceState(state);
@@ -171,19 +214,40 @@ public class SearchActivity extends BaseActivity implements SearchView.OnQueryTe
    @SuppressWarnings("unused")
    @Subscribe
    public void onSearchResults(ApiEvent.Search event) {
+      // A newer search superseded this one. Results of the instance before a
+      // configuration change are shown until this one searches itself.
+      if (mSearched && event.mApiCall != mSearchCall) {
+         return;
+      }
+
       if (!event.hasError()) {
          SearchResults results = event.getResult();
 
-         mResultsList.addAll(results.mResults);
-
-         mResults = results;
+         if (mSearched) {
+            sResultCache.put(mQuery, mSearchPosition, mOffset, results);
+         }
 
-         updateViewWithResults(mResultsList, mResults.mTotalResults);
+         showPage(results);
+      } else if (mSearched && event.getError().mType == ApiError.Type.CONNECTION &&
+       canSearchOffline(mSearchPosition)) {
+         // The connection dropped since the request was made.
+         mSearchCall = null;
+         searchOffline(mQuery, mOffset);
       } else {
+         mLoadingPage = false;
          Api.getErrorDialog(this, event).show();
       }
    }
 
+   private void showPage(SearchResults results) {
+      mLoadingPage = false;
+      mResultsList.addAll(results.mResults);
+
+      mResults = results;
+
+      updateViewWithResults(mResultsList, mResults.mTotalResults);
+   }
+
    @Override
    public boolean onPrepareOptionsMenu(Menu menu) {
       if (mFocusSearch) {
@@ -219,16 +283,129 @@ public class SearchActivity extends BaseActivity implements SearchView.OnQueryTe
       return query;
    }
 
-   private void handleSearch(String query) {
-      if (query.length() == 0) {
+   /**
+    * Starts over with the first page of results for the query. Results of a shorter
+    * query the user typed earlier are filtered and shown until the new ones arrive.
+    */
+   private void startSearch(String query, int position) {
+      if (query.trim().length() == 0) {
          focusSearch();
          return;
       }
 
+      mQuery = query;
       mResultsList.clear();
       mAdapter.clear();
+      mScrollListener.resetState();
+
+      if (sResultCache.get(query, position, 0) == null) {
+         showRefinement(query, position);
+      }
+
+      requestPage(query, position, 0);
+   }
+
+   /**
+    * Shows the results of mQuery again in place of the refinement of another query.
+    */
+   private void restoreResults() {
+      if (mLoadingPage && mResultsList.isEmpty()) {
+         List<SearchResult> refined = sResultCache.getRefinement(mQuery, mSearchPosition);
+
+         mAdapter.replaceAll(refined != null ? refined : mResultsList);
+      } else if (mResults != null) {
+         updateViewWithResults(mResultsList, mResults.mTotalResults);
+      } else {
+         mAdapter.replaceAll(mResultsList);
+      }
+   }
 
-      Api.call(this, ApiCall.search(query));
+   private void showRefinement(String query, int position) {
+      List<SearchResult> refined = sResultCache.getRefinement(query, position);
+
+      if (refined != null && !refined.isEmpty()) {
+         mEmptyText.setVisibility(View.GONE);
+         mAdapter.replaceAll(refined);
+      }
+   }
+
+   /**
+    * Shows a page of results from the cache or requests it. A previous request that
+    * hasn't started yet is canceled because its results would be ignored anyway.
+    */
+   private void requestPage(String query, int position, int offset) {
+      if (mSearchCall != null) {
+         Api.cancelCall(mSearchCall);
+      }
+
+      cancelOfflineSearch();
+
+      mSearched = true;
+      mSearchPosition = position;
+      mOffset = offset;
+      mLoadingPage = true;
+
+      SearchResults cached = sResultCache.get(query, position, offset);
+
+      if (cached != null) {
+         mSearchCall = null;
+         showPage(cached);
+         return;
+      }
+
+      if (!App.get().isConnected() && canSearchOffline(position)) {
+         mSearchCall = null;
+         searchOffline(query, offset);
+         return;
+      }
+
+      String apiQuery = buildQuery(query, position);
+
+      if (offset > 0) {
+         apiQuery += "&limit=" + LIMIT + "&offset=" + offset;
+      }
+
+      mSearchCall = ApiCall.search(apiQuery);
+      Api.call(this, mSearchCall);
+   }
+
+   /**
+    * Offline guides are stored per user and have no topics. Topic searches still get
+    * whatever API responses are stored.
+    */
+   private boolean canSearchOffline(int position) {
+      return position != TOPIC_POSITION && App.get().isUserLoggedIn();
+   }
+
+   /**
+    * Shows a page of the user's offline guides that match the query. Results aren't
+    * cached because they would hide the full results once the connection is back.
+    */
+   private void searchOffline(final String query, final int offset) {
+      final App app = App.get();
+      final Site site = app.getSite();
+      final User user = app.getUser();
+
+      mOfflineSearch = new AsyncTask<Void, Void, SearchResults>() {
+         @Override
+         protected SearchResults doInBackground(Void... params) {
+            return ApiDatabase.get(app).searchOfflineGuides(site, user, query, LIMIT, offset);
+         }
+
+         @Override
+         protected void onPostExecute(SearchResults results) {
+            mOfflineSearch = null;
+            showPage(results);
+         }
+      };
+      mOfflineSearch.execute();
+   }
+
+   private void cancelOfflineSearch() {
+      if (mOfflineSearch != null) {
+         mOfflineSearch.cancel(false);
+         mOfflineSearch = null;
+      }
    }
 
    private void updateViewWithResults(List<SearchResult> results, int numResults) {
@@ -241,6 +418,33 @@ public class SearchActivity extends BaseActivity implements SearchView.OnQueryTe
       }
 
       mAdapter.replaceAll(results);
+
+      // Wait for the new results to be laid out.
+      mListView.post(new Runnable() {
+         @Override
+         public void run() {
+            prefetchVisibleGuides();
+         }
+      });
+   }
+
+   /**
+    * Prefetches the guides at the top of the visible results.
+    */
+   private void prefetchVisibleGuides() {
+      int first = Math.max(mLayoutManager.findFirstVisibleItemPosition(), 0);
+      List<GuideInfo> guides = new ArrayList<GuideInfo>();
+
+      for (int i = first; i < mAdapter.getItemCount() &&
+       guides.size() < GuidePrefetcher.MAX_GUIDES; i++) {
+         SearchResult result = mAdapter.getItem(i);
+
+         if (result instanceof GuideSearchResult) {
+            guides.add(((GuideSearchResult)result).getGuideInfo());
+         }
+      }
+
+      GuidePrefetcher.prefetch(this, guides);
    }
 
    private void focusSearch() {
@@ -269,7 +473,7 @@ public class SearchActivity extends BaseActivity implements SearchView.OnQueryTe
       mQuery = query;
 
       if (sendQuery) {
-         handleSearch(buildQuery(mQuery, ALL_POSITION));
+         startSearch(mQuery, ALL_POSITION);
       } else {
          focusSearch();
       }
@@ -285,19 +489,27 @@ public class SearchActivity extends BaseActivity implements SearchView.OnQueryTe
       // Clear out any waiting Runnables, so we don't have old requests happening before the new ones
       mHandler.removeCallbacks(mRunnable);
 
+      if (query.trim().length() == 0) {
+         return false;
+      }
+
+      if (query.equals(mQuery)) {
+         // E.g. a character was typed and deleted again.
+         restoreResults();
+         return false;
+      }
+
+      // Filtering cached results is cheap enough to do on every keystroke.
+      showRefinement(query, mSpinner.getSelectedItemPosition());
+
       mRunnable = new Runnable() {
          @Override
          public void run() {
-            mQuery = query;
-
-            mResultsList.clear();
-            mAdapter.clear();
-
-            Api.call(SearchActivity.this, ApiCall.search(buildQuery(query, mSpinner.getSelectedItemPosition())));
+            startSearch(query, mSpinner.getSelectedItemPosition());
          }
       };
 
-      mHandler.postDelayed(mRunnable, 300);
+      mHandler.postDelayed(mRunnable, SEARCH_DELAY_MS);
 
       return false;
    }
@@ -331,9 +543,7 @@ public class SearchActivity extends BaseActivity implements SearchView.OnQueryTe
       public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
          if (userSelect) {
             userSelect = false;
-            mResultsList.clear();
-            mAdapter.clear();
-            Api.call(SearchActivity.this, ApiCall.search(buildQuery(mQuery, position)));
+            startSearch(mQuery, position);
          }
       }
 
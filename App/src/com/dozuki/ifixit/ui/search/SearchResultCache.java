@@ -0,0 +1,131 @@
+package com.dozuki.ifixit.ui.search;
+
+import android.util.LruCache;
+
+import com.dozuki.ifixit.App;
+import com.dozuki.ifixit.model.search.SearchResult;
+import com.dozuki.ifixit.model.search.SearchResults;
+import com.dozuki.ifixit.model.user.LoginEvent;
+import com.dozuki.ifixit.model.user.User;
+import com.squareup.otto.Subscribe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Recent pages of search results keyed by the user, the query, the filter spinner
+ * position and the offset so going back to an earlier query doesn't wait on the
+ * network and refining a query can show matching results right away. Pages are only
+ * kept for a few minutes and are dropped when a user logs in or out because results
+ * of private sites depend on the user.
+ *
+ * Only used on the main thread.
+ */
+class SearchResultCache {
+   private static final int MAX_PAGES = 64;
+   private static final long MAX_AGE_MS = 5 * 60 * 1000;
+
+   private static class Page {
+      public final SearchResults mResults;
+      public final long mStoredTime;
+
+      public Page(SearchResults results) {
+         mResults = results;
+         mStoredTime = System.currentTimeMillis();
+      }
+   }
+
+   private final LruCache<String, Page> mPages = new LruCache<String, Page>(MAX_PAGES);
+
+   public SearchResultCache() {
+      // Never unregistered because the cache lives as long as the process.
+      App.getBus().register(new Object() {
+         @Subscribe
+         public void onLogin(LoginEvent.Login event) {
+            mPages.evictAll();
+         }
+
+         @Subscribe
+         public void onLogout(LoginEvent.Logout event) {
+            mPages.evictAll();
+         }
+      });
+   }
+
+   public SearchResults get(String query, int position, int offset) {
+      String key = getKey(query, position, offset);
+      Page page = mPages.get(key);
+
+      if (page == null) {
+         return null;
+      }
+
+      long age = System.currentTimeMillis() - page.mStoredTime;
+
+      if (age < 0 || age > MAX_AGE_MS) {
+         mPages.remove(key);
+         return null;
+      }
+
+      return page.mResults;
+   }
+
+   public void put(String query, int position, int offset, SearchResults results) {
+      mPages.put(getKey(query, position, offset), new Page(results));
+   }
+
+   /**
+    * Returns the results of the longest cached query the given query starts with
+    * whose titles contain every word of the given query, or null if no shorter query
+    * is cached. Only the first page is considered. The results are a stand-in until
+    * the query's own results arrive because the server matches more than titles.
+    */
+   public List<SearchResult> getRefinement(String query, int position) {
+      String[] words = query.trim().toLowerCase(Locale.US).split("\\s+");
+
+      for (int length = query.length() - 1; length > 0; length--) {
+         SearchResults prefixResults = get(query.substring(0, length), position, 0);
+
+         if (prefixResults == null) {
+            continue;
+         }
+
+         List<SearchResult> refined = new ArrayList<SearchResult>();
+
+         for (SearchResult result : prefixResults.mResults) {
+            if (containsAll(result.getTitle(), words)) {
+               refined.add(result);
+            }
+         }
+
+         return refined;
+      }
+
+      return null;
+   }
+
+   private static boolean containsAll(String title, String[] words) {
+      if (title == null) {
+         return false;
+      }
+
+      title = title.toLowerCase(Locale.US);
+
+      for (String word : words) {
+         if (!title.contains(word)) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   private static String getKey(String query, int position, int offset) {
+      User user = App.get().getUser();
+      String userid = user == null ? "" : String.valueOf(user.getUserid());
+
+      return App.get().getSite().mName + "\n" + userid + "\n" + position + "\n" + offset +
+       "\n" + query;
+   }
+}
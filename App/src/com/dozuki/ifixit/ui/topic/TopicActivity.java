@@ -14,6 +14,7 @@ import android.widget.FrameLayout;
 
 import com.dozuki.ifixit.R;
 import com.dozuki.ifixit.model.topic.TopicNode;
+import com.dozuki.ifixit.model.topic.TopicTree;
 import com.dozuki.ifixit.ui.BaseMenuDrawerActivity;
 import com.dozuki.ifixit.ui.LoadingFragment;
 import com.dozuki.ifixit.util.api.Api;
@@ -36,6 +37,7 @@ public class TopicActivity extends BaseMenuDrawerActivity
    private boolean mDualPane;
    private boolean mHideTopicList;
    private boolean mTopicListVisible;
+   private boolean mDestroyed;
 
    @Override
    public void onCreate(Bundle savedInstanceState) {
@@ -67,7 +69,10 @@ public class TopicActivity extends BaseMenuDrawerActivity
 
       if (mRootTopic == null) {
          showLoading(R.id.loading_container);
-         Api.call(this, ApiCall.categories());
+         loadCategories();
+      } else if (TopicTree.get() == null) {
+         showLoading(R.id.loading_container);
+         loadRestoredTree();
       }
 
       if (!mTopicListVisible && !mHideTopicList) {
@@ -102,6 +107,7 @@ public class TopicActivity extends BaseMenuDrawerActivity
 
    @Override
    public void onDestroy() {
+      mDestroyed = true;
       getSupportFragmentManager().removeOnBackStackChangedListener(this);
       super.onDestroy();
    }
@@ -116,15 +122,86 @@ public class TopicActivity extends BaseMenuDrawerActivity
       return super.onOptionsItemSelected(item);
    }
 
+   /**
+    * Shows the categories saved last time right away and downloads them again in the
+    * background if they're out of date. Waits for the download if none were saved.
+    */
+   private void loadCategories() {
+      TopicTree.load(new TopicTree.Listener() {
+         @Override
+         public void onTopicTreeLoaded(TopicTree tree) {
+            if (mDestroyed) {
+               return;
+            }
+
+            if (tree == null) {
+               Api.call(TopicActivity.this, ApiCall.categories());
+               return;
+            }
+
+            hideLoading();
+            showRootTopic(tree);
+
+            if (tree.isStale()) {
+               Api.call(TopicActivity.this,
+                ApiCall.categories().setPriority(ApiCall.Priority.BACKGROUND));
+            }
+         }
+      });
+   }
+
+   /**
+    * Reads the tree in the background after the process was killed so the restored
+    * topic lists don't read it on the main thread to look up their children.
+    */
+   private void loadRestoredTree() {
+      TopicTree.load(new TopicTree.Listener() {
+         @Override
+         public void onTopicTreeLoaded(TopicTree tree) {
+            if (mDestroyed) {
+               return;
+            }
+
+            hideLoading();
+
+            TopicListFragment list = getTopicListFragment();
+
+            if (list != null) {
+               list.onTopicTreeLoaded();
+            }
+         }
+      });
+   }
+
+   private TopicListFragment getTopicListFragment() {
+      Fragment list = getSupportFragmentManager().findFragmentById(R.id.topic_list_fragment);
+
+      return list instanceof TopicListFragment ? (TopicListFragment)list : null;
+   }
+
+   private void showRootTopic(TopicTree tree) {
+      if (mRootTopic == null) {
+         mRootTopic = tree.getRoot();
+         onTopicSelected(mRootTopic);
+      }
+   }
+
    @Subscribe
    public void onCategories(ApiEvent.Categories event) {
       hideLoading();
       if (!event.hasError()) {
-         if (mRootTopic == null) {
-            mRootTopic = event.getResult();
-            onTopicSelected(mRootTopic);
+         TopicTree previous = TopicTree.get();
+         TopicTree tree = TopicTree.update(event.getResult());
+         TopicListFragment list = getTopicListFragment();
+
+         showRootTopic(tree);
+
+         // Topics that are already displayed find their children in the new tree by
+         // name. Ones in the back stack do so once they're shown again.
+         if (previous != null && tree != previous && list != null) {
+            list.onTopicTreeChanged();
          }
-      } else {
+      } else if (mRootTopic == null) {
          Api.getErrorDialog(this, event).show();
       }
    }
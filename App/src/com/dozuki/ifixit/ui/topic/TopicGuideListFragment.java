@@ -12,9 +12,11 @@ import com.dozuki.ifixit.R;
 import com.dozuki.ifixit.model.guide.Guide;
 import com.dozuki.ifixit.model.guide.GuideInfo;
 import com.dozuki.ifixit.model.topic.TopicLeaf;
+import com.dozuki.ifixit.ui.BaseActivity;
 import com.dozuki.ifixit.ui.BaseFragment;
 import com.dozuki.ifixit.ui.EndlessRecyclerViewScrollListener;
 import com.dozuki.ifixit.ui.GuideListRecyclerAdapter;
+import com.dozuki.ifixit.util.api.GuidePrefetcher;
 
 import java.util.ArrayList;
 
@@ -73,6 +75,9 @@ public class TopicGuideListFragment extends BaseFragment {
       mRecycleAdapter = new GuideListRecyclerAdapter(guides, false);
       mRecycleView.setAdapter(mRecycleAdapter);
 
+      // The list doesn't scroll on its own so the first guides are the visible ones.
+      GuidePrefetcher.prefetch((BaseActivity)getActivity(), guides);
+
       return view;
    }
 
@@ -18,8 +18,8 @@ import com.dozuki.ifixit.R;
 import com.dozuki.ifixit.model.topic.TopicLeaf;
 import com.dozuki.ifixit.ui.BaseFragment;
 import com.dozuki.ifixit.ui.guide.view.FullImageViewActivity;
+import com.dozuki.ifixit.util.HtmlRenderer;
 import com.dozuki.ifixit.util.ImageSizes;
-import com.dozuki.ifixit.util.PicassoImageGetter;
 import com.dozuki.ifixit.util.UrlImageGetter;
 import com.dozuki.ifixit.util.Utils;
 import com.dozuki.ifixit.util.WikiHtmlTagHandler;
@@ -84,7 +84,12 @@ public class TopicInfoFragment extends BaseFragment {
 
       mContent = ((TextView) v.findViewById(R.id.topic_info_content));
       mContent.setMovementMethod(LinkMovementMethod.getInstance());
-      mContent.setText(getStyledContent());
+      HtmlRenderer.render(mContent, mTopic.getContentsRendered(), new HtmlRenderer.Renderer() {
+         @Override
+         public Spanned render(Html.ImageGetter imageGetter) {
+            return mTopic.getContentSpanned(imageGetter);
+         }
+      });
       return v;
    }
 
@@ -94,9 +99,4 @@ public class TopicInfoFragment extends BaseFragment {
 
       outState.putSerializable(TOPIC_KEY, mTopic);
    }
-
-   private Spanned getStyledContent() {
-      PicassoImageGetter imgGetter = new PicassoImageGetter(mContent, getResources());
-      return mTopic.getContentSpanned(imgGetter);
-   }
 }
@@ -57,11 +57,32 @@ public class TopicListFragment extends BaseFragment
       mListView = (SectionListView)view.findViewById(R.id.topicList);
       mListView.getListView().setOnItemClickListener(this);
 
-      setTopic(mTopic);
+      // TopicActivity calls onTopicTreeLoaded() once the tree is read.
+      if (!mTopic.needsTree()) {
+         setTopic(mTopic);
+      }
 
       return view;
    }
 
+   /**
+    * Sets up the list if it waited on the tree.
+    */
+   public void onTopicTreeLoaded() {
+      if (mListView != null && mTopicAdapter == null) {
+         setTopic(mTopic);
+      }
+   }
+
+   /**
+    * Shows the children from a refreshed tree.
+    */
+   public void onTopicTreeChanged() {
+      if (mListView != null) {
+         setTopic(mTopic);
+      }
+   }
+
    @Override
    public void onStart() {
       super.onStart();
@@ -178,9 +178,15 @@ public class TopicViewActivity extends BaseActivity {
       hideLoading();
       if (!event.hasError()) {
          mTopic = event.getResult();
-         mPageAdapter = new TopicPageAdapter(getSupportFragmentManager(), this, mTopic);
-         mPager.setAdapter(mPageAdapter);
-         mTabs.setupWithViewPager(mPager);
+
+         if (event.mRevalidated && mPageAdapter != null) {
+            // The topic changed since the cached copy we are displaying was stored.
+            mPageAdapter.setTopic(mTopic);
+         } else {
+            mPageAdapter = new TopicPageAdapter(getSupportFragmentManager(), this, mTopic);
+            mPager.setAdapter(mPageAdapter);
+            mTabs.setupWithViewPager(mPager);
+         }
 
          loadTopicImage();
       } else {
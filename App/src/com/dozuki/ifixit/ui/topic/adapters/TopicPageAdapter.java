@@ -45,6 +45,21 @@ public class TopicPageAdapter extends FragmentStatePagerAdapter {
       mPageLabelMap = new HashMap<Integer, String>();
    }
 
+   /**
+    * Replaces the topic of all pages e.g. when a newer copy arrives. The pages are
+    * recreated in place so the selected tab stays where it is.
+    */
+   public void setTopic(TopicLeaf topic) {
+      mTopic = topic;
+      notifyDataSetChanged();
+   }
+
+   @Override
+   public int getItemPosition(Object object) {
+      // Every page shows the topic so none of them can be kept.
+      return POSITION_NONE;
+   }
+
    @Override
    public int getCount() {
       int base = 2;
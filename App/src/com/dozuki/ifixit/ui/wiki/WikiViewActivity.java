@@ -20,7 +20,7 @@ import com.dozuki.ifixit.R;
 import com.dozuki.ifixit.model.Wiki;
 import com.dozuki.ifixit.ui.BaseMenuDrawerActivity;
 import com.dozuki.ifixit.ui.guide.view.GuideViewActivity;
-import com.dozuki.ifixit.util.PicassoImageGetter;
+import com.dozuki.ifixit.util.HtmlRenderer;
 import com.dozuki.ifixit.util.UrlImageGetter;
 import com.dozuki.ifixit.util.Utils;
 import com.dozuki.ifixit.util.WikiHtmlTagHandler;
@@ -74,11 +74,14 @@ public class WikiViewActivity extends BaseMenuDrawerActivity {
 
       TextView wikiText = (TextView)findViewById(R.id.wiki_content);
       wikiTitle.setText(mWiki.displayTitle);
-      Html.ImageGetter imgGetter = new PicassoImageGetter(wikiText, getResources());
+      final Wiki displayedWiki = mWiki;
 
-      Spanned htmlParsed = mWiki.getContentSpanned(imgGetter);
-
-      wikiText.setText(htmlParsed);
+      HtmlRenderer.render(wikiText, mWiki.contentsRendered, new HtmlRenderer.Renderer() {
+         @Override
+         public Spanned render(Html.ImageGetter imageGetter) {
+            return displayedWiki.getContentSpanned(imageGetter);
+         }
+      });
       wikiText.setMovementMethod(LinkMovementMethod.getInstance());
    }
 
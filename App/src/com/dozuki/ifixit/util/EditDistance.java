@@ -37,7 +37,141 @@ public class EditDistance {
       return d[m][n];
    }
 
+   /**
+    * Returns the edit distance of the two Strings or max + 1 if it's greater than max.
+    */
+   public static int editDistance(String s, String t, int max) {
+      return new Pattern(s).editDistance(t, max);
+   }
+
    public static int min(int a, int b ,int c) {
       return Math.min(Math.min(a, b), c);
    }
+
+   /**
+    * A String that is compared to many others. Patterns of up to 64 chars use Myers'
+    * bit-parallel algorithm, which handles a whole column of the distance matrix per
+    * char of the other String in a few long operations and allocates nothing.
+    *
+    * Myers, "A fast bit-vector algorithm for approximate string matching based on
+    * dynamic programming", 1999. Hyyrö's variant for the distance of whole strings.
+    */
+   public static class Pattern {
+      private static final int MAX_BIT_PARALLEL_LENGTH = 64;
+      private static final int ASCII = 128;
+
+      private final String mPattern;
+      // Bit i is set in the mask of char c if the pattern has c at position i.
+      private final long[] mAsciiMasks;
+      private final char[] mOtherChars;
+      private final long[] mOtherMasks;
+
+      public Pattern(String pattern) {
+         mPattern = pattern;
+
+         if (pattern.length() > MAX_BIT_PARALLEL_LENGTH) {
+            mAsciiMasks = null;
+            mOtherChars = null;
+            mOtherMasks = null;
+            return;
+         }
+
+         mAsciiMasks = new long[ASCII];
+         int otherCount = 0;
+
+         for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+
+            if (c < ASCII) {
+               mAsciiMasks[c] |= 1L << i;
+            } else {
+               otherCount++;
+            }
+         }
+
+         mOtherChars = new char[otherCount];
+         mOtherMasks = new long[otherCount];
+         otherCount = 0;
+
+         for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+
+            if (c >= ASCII) {
+               mOtherChars[otherCount] = c;
+               mOtherMasks[otherCount++] = 1L << i;
+            }
+         }
+      }
+
+      public int length() {
+         return mPattern.length();
+      }
+
+      /**
+       * Returns the edit distance to the text or max + 1 if it's greater than max.
+       * Stops as soon as the rest of the text can't bring the distance down to max.
+       */
+      public int editDistance(CharSequence text, int max) {
+         int m = mPattern.length();
+         int n = text.length();
+
+         if (Math.abs(m - n) > max) {
+            return max + 1;
+         } else if (m == 0) {
+            return n;
+         } else if (mAsciiMasks == null) {
+            return Math.min(EditDistance.editDistance(mPattern, text.toString()), max + 1);
+         }
+
+         long highBit = 1L << (m - 1);
+         // Vertical deltas of the current column, +1 and -1. The first column is 0..m.
+         long plusVertical = m == MAX_BIT_PARALLEL_LENGTH ? -1L : (1L << m) - 1;
+         long minusVertical = 0;
+         int distance = m;
+
+         for (int j = 0; j < n; j++) {
+            long equal = getMask(text.charAt(j));
+            long xVertical = equal | minusVertical;
+            long xHorizontal = (((equal & plusVertical) + plusVertical) ^ plusVertical) |
+             equal;
+            long plusHorizontal = minusVertical | ~(xHorizontal | plusVertical);
+            long minusHorizontal = plusVertical & xHorizontal;
+
+            if ((plusHorizontal & highBit) != 0) {
+               distance++;
+            } else if ((minusHorizontal & highBit) != 0) {
+               distance--;
+            }
+
+            // Each remaining char lowers the distance by at most one.
+            if (distance - (n - j - 1) > max) {
+               return max + 1;
+            }
+
+            // The first row is 0..n so every horizontal delta entering it is +1.
+            plusHorizontal = (plusHorizontal << 1) | 1;
+            minusHorizontal <<= 1;
+            plusVertical = minusHorizontal | ~(xVertical | plusHorizontal);
+            minusVertical = plusHorizontal & xVertical;
+         }
+
+         return distance <= max ? distance : max + 1;
+      }
+
+      private long getMask(char c) {
+         if (c < ASCII) {
+            return mAsciiMasks[c];
+         }
+
+         long mask = 0;
+
+         for (int i = 0; i < mOtherChars.length; i++) {
+            if (mOtherChars[i] == c) {
+               mask |= mOtherMasks[i];
+            }
+         }
+
+         return mask;
+      }
+   }
 }
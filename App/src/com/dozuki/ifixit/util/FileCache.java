@@ -4,72 +4,603 @@ import android.util.Log;
 
 import com.dozuki.ifixit.App;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Scanner;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * Quick and dirty file cache.
+ * Size bounded disk cache for API responses.
+ *
+ * Entries are stored in their own directory under the app's cache directory and are
+ * named by the SHA-1 of their key so distinct keys never share a file. A journal
+ * records every write, removal, and read so the LRU order and total size can be
+ * restored on startup without listing the directory. Once the cache grows past
+ * MAX_SIZE the least recently used entries are evicted.
+ *
+ * Each entry file starts with "name: value" metadata lines followed by an empty line
+ * and then the value itself.
  */
 public class FileCache {
+   private static final String TAG = "FileCache";
+   private static final String CACHE_DIR_NAME = "api_responses";
+   private static final long MAX_SIZE = 20 * 1024 * 1024; // 20 MB
+
+   private static final String JOURNAL_FILE = "journal";
+   private static final String JOURNAL_FILE_TMP = "journal.tmp";
+   private static final String JOURNAL_MAGIC = "com.dozuki.ifixit.util.FileCache";
+   private static final String JOURNAL_VERSION = "2";
+   private static final String CLEAN = "CLEAN";
+   private static final String REMOVE = "REMOVE";
+   private static final String READ = "READ";
+   private static final String TMP_SUFFIX = ".tmp";
+
+   /**
+    * Rebuild the journal once it has this many lines that no longer affect the state.
+    */
+   private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+   private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+   private static FileCache sFileCache;
+
+   private final File mDirectory;
+   private final long mMaxSize;
+
+   /**
+    * Maps file names to entry sizes in access order so iteration starts with the
+    * least recently used entry.
+    */
+   private final LinkedHashMap<String, Long> mEntries =
+    new LinkedHashMap<String, Long>(0, 0.75f, true);
+   private long mSize;
+   private int mRedundantOpCount;
+   private Writer mJournalWriter;
+
+   /**
+    * A cached value along with its metadata and the time it was stored.
+    */
+   public static class Entry {
+      public final String mValue;
+      public final Map<String, String> mMetadata;
+      public final long mStoredTime;
+
+      public Entry(String value, Map<String, String> metadata, long storedTime) {
+         mValue = value;
+         mMetadata = metadata;
+         mStoredTime = storedTime;
+      }
+
+      /**
+       * Returns the metadata stored with the entry under the given name or null.
+       */
+      public String getMetadata(String name) {
+         return mMetadata.get(name);
+      }
+
+      /**
+       * Milliseconds since this entry was stored.
+       */
+      public long getAge() {
+         return Math.max(0, System.currentTimeMillis() - mStoredTime);
+      }
+   }
+
    public static String get(String key) {
-      File file = getFile(key);
+      Entry entry = getEntry(key);
+
+      return entry == null ? null : entry.mValue;
+   }
+
+   public static Entry getEntry(String key) {
+      return getInstance().read(key);
+   }
+
+   /**
+    * Returns only the metadata of the entry or null if there isn't one. This avoids
+    * reading the value when it might not be needed.
+    */
+   public static Map<String, String> getMetadata(String key) {
+      return getInstance().readMetadata(key);
+   }
+
+   public static void set(String key, String value) {
+      set(key, value, null);
+   }
+
+   public static void set(String key, String value, Map<String, String> metadata) {
+      getInstance().write(key, value, metadata);
+   }
+
+   /**
+    * Marks the entry as just stored without rewriting it e.g. because the server
+    * confirmed that it is still valid.
+    */
+   public static void touch(String key) {
+      getInstance().refresh(key);
+   }
+
+   /**
+    * Drops the entry e.g. because a change on the server made it stale.
+    */
+   public static void remove(String key) {
+      getInstance().delete(key);
+   }
+
+   private static synchronized FileCache getInstance() {
+      if (sFileCache == null) {
+         sFileCache = new FileCache(new File(App.get().getCacheDir(), CACHE_DIR_NAME),
+          MAX_SIZE);
+      }
+
+      return sFileCache;
+   }
+
+   private FileCache(File directory, long maxSize) {
+      mDirectory = directory;
+      mMaxSize = maxSize;
+
+      File journal = new File(mDirectory, JOURNAL_FILE);
+
+      if (journal.exists()) {
+         try {
+            if (readJournal(journal)) {
+               mJournalWriter = openJournalWriter(journal, true);
+            } else {
+               // Appending would continue the partial last line. The entry it
+               // described may have been written so drop any unindexed files.
+               deleteUnindexedFiles();
+               rebuildJournal();
+            }
+            return;
+         } catch (IOException e) {
+            Log.w(TAG, "Journal is corrupt, clearing cache", e);
+         }
+
+         clearDirectory();
+      } else {
+         // First run with a journal. Files written by the old cache live directly in
+         // the cache directory and would otherwise never be removed.
+         deleteLegacyFiles(mDirectory.getParentFile());
+      }
+
+      mDirectory.mkdirs();
+      mEntries.clear();
+      mSize = 0;
+
+      try {
+         rebuildJournal();
+      } catch (IOException e) {
+         Log.e(TAG, "Failed to create journal", e);
+      }
+   }
+
+   private synchronized Entry read(String key) {
+      String name = getFileName(key);
 
-      if (!file.exists()) {
+      if (!mEntries.containsKey(name)) {
          return null;
       }
 
-      FileInputStream in = null;
+      File file = new File(mDirectory, name);
+      BufferedReader in = null;
       try {
-         in = new FileInputStream(file);
-         // Read the entire file into a String.
-         Scanner scanner = new Scanner(in).useDelimiter("\\A");
-         return scanner.hasNext() ? scanner.next() : null;
+         in = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+         Map<String, String> metadata = readMetadataHeader(in, name);
+
+         // Read the rest of the file into a String.
+         StringBuilder value = new StringBuilder((int)file.length());
+         char[] buffer = new char[8192];
+         int read;
+         while ((read = in.read(buffer)) != -1) {
+            value.append(buffer, 0, read);
+         }
+
+         recordRead(name);
+
+         // The entry is renamed into place once fully written so its modification
+         // time is the time it was stored.
+         return new Entry(value.toString(), metadata, file.lastModified());
       } catch (IOException e) {
-         Log.e("FileCache", "Get", e);
+         Log.e(TAG, "Get", e);
+
+         // The file disappeared out from under us e.g. the system cleared the cache.
+         file.delete();
+         forgetEntry(name);
          return null;
       } finally {
          if (in != null) {
             try {
                in.close();
             } catch (IOException e) {
-               Log.e("FileCache", "Closing input", e);
+               Log.e(TAG, "Closing input", e);
             }
          }
       }
    }
 
-   public static void set(String key, String value) {
+   private synchronized Map<String, String> readMetadata(String key) {
+      String name = getFileName(key);
+
+      if (!mEntries.containsKey(name)) {
+         return null;
+      }
+
+      File file = new File(mDirectory, name);
+      BufferedReader in = null;
+      try {
+         in = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+         return readMetadataHeader(in, name);
+      } catch (IOException e) {
+         Log.e(TAG, "Get metadata", e);
+
+         file.delete();
+         forgetEntry(name);
+         return null;
+      } finally {
+         if (in != null) {
+            try {
+               in.close();
+            } catch (IOException e) {
+               Log.e(TAG, "Closing input", e);
+            }
+         }
+      }
+   }
+
+   /**
+    * Reads the metadata lines of an entry leaving the reader at the start of the value.
+    */
+   private static Map<String, String> readMetadataHeader(BufferedReader in, String name)
+    throws IOException {
+      Map<String, String> metadata = new HashMap<String, String>();
+      String line;
+
+      while ((line = in.readLine()) != null && line.length() > 0) {
+         int separator = line.indexOf(": ");
+         if (separator != -1) {
+            metadata.put(line.substring(0, separator), line.substring(separator + 2));
+         }
+      }
+
+      if (line == null) {
+         throw new IOException("Truncated entry " + name);
+      }
+
+      return metadata;
+   }
+
+   private synchronized void refresh(String key) {
+      String name = getFileName(key);
+
+      if (!mEntries.containsKey(name)) {
+         return;
+      }
+
+      if (new File(mDirectory, name).setLastModified(System.currentTimeMillis())) {
+         recordRead(name);
+      } else {
+         // Some file systems don't support setting the modification time.
+         Entry entry = read(key);
+         if (entry != null) {
+            write(key, entry.mValue, entry.mMetadata);
+         }
+      }
+   }
+
+   private synchronized void delete(String key) {
+      String name = getFileName(key);
+
+      if (mEntries.containsKey(name)) {
+         new File(mDirectory, name).delete();
+         forgetEntry(name);
+      }
+   }
+
+   private synchronized void write(String key, String value, Map<String, String> metadata) {
+      String name = getFileName(key);
+      File file = new File(mDirectory, name);
+      File tmpFile = new File(mDirectory, name + TMP_SUFFIX);
+      byte[] bytes = (getMetadataHeader(metadata) + value).getBytes(UTF_8);
+
       FileOutputStream out = null;
       try {
-         out = new FileOutputStream(getFile(key));
-         byte[] bytes = value.getBytes();
+         out = new FileOutputStream(tmpFile);
          out.write(bytes, 0, bytes.length);
+         out.close();
+         out = null;
+
+         // Readers only ever see complete entries.
+         if (!tmpFile.renameTo(file)) {
+            throw new IOException("Failed to rename " + tmpFile + " to " + file);
+         }
       } catch (IOException e) {
-         Log.e("FileCache", "Set", e);
+         Log.e(TAG, "Set", e);
+         tmpFile.delete();
+         return;
       } finally {
          if (out != null) {
             try {
                out.close();
             } catch (IOException e) {
-               Log.e("FileCache", "Closing output", e);
+               Log.e(TAG, "Closing output", e);
+            }
+         }
+      }
+
+      Long oldSize = mEntries.put(name, (long)bytes.length);
+      if (oldSize != null) {
+         mSize -= oldSize;
+         mRedundantOpCount++;
+      }
+      mSize += bytes.length;
+
+      appendJournal(CLEAN + " " + name + " " + bytes.length);
+      trimToSize();
+   }
+
+   /**
+    * Drops the entry from the in-memory index and records the removal.
+    */
+   private void forgetEntry(String name) {
+      Long size = mEntries.remove(name);
+
+      if (size != null) {
+         mSize -= size;
+         mRedundantOpCount += 2;
+         appendJournal(REMOVE + " " + name);
+      }
+   }
+
+   /**
+    * Records the access. Only the last access of an entry affects the state.
+    */
+   private void recordRead(String name) {
+      mRedundantOpCount++;
+      appendJournal(READ + " " + name);
+      compactJournalIfNeeded();
+   }
+
+   private void trimToSize() {
+      Iterator<Map.Entry<String, Long>> it = mEntries.entrySet().iterator();
+
+      while (mSize > mMaxSize && it.hasNext()) {
+         Map.Entry<String, Long> eldest = it.next();
+         String name = eldest.getKey();
+
+         new File(mDirectory, name).delete();
+         mSize -= eldest.getValue();
+         it.remove();
+
+         mRedundantOpCount += 2;
+         appendJournal(REMOVE + " " + name);
+      }
+
+      compactJournalIfNeeded();
+   }
+
+   private void compactJournalIfNeeded() {
+      if (mRedundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD &&
+       mRedundantOpCount >= mEntries.size()) {
+         try {
+            rebuildJournal();
+         } catch (IOException e) {
+            Log.e(TAG, "Failed to rebuild journal", e);
+         }
+      }
+   }
+
+   private static String getMetadataHeader(Map<String, String> metadata) {
+      StringBuilder header = new StringBuilder();
+
+      if (metadata != null) {
+         for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            if (entry.getValue() == null) {
+               continue;
+            }
+
+            // Line breaks would end the header early.
+            header.append(entry.getKey()).append(": ")
+             .append(entry.getValue().replaceAll("[\\r\\n]", "")).append("\n");
+         }
+      }
+
+      return header.append("\n").toString();
+   }
+
+   /**
+    * Reads the entries from the journal. Returns false if its last line was only
+    * partially written, which is expected if the app was killed mid-write. A line is
+    * only complete once its line break is written.
+    */
+   private boolean readJournal(File journal) throws IOException {
+      boolean endsWithLineBreak = endsWithLineBreak(journal);
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+       new FileInputStream(journal), UTF_8));
+
+      try {
+         if (!JOURNAL_MAGIC.equals(reader.readLine()) ||
+          !JOURNAL_VERSION.equals(reader.readLine())) {
+            throw new IOException("Unexpected journal header");
+         }
+
+         int lineCount = 0;
+         boolean complete = true;
+         String line = reader.readLine();
+
+         while (line != null) {
+            String nextLine = reader.readLine();
+
+            if (nextLine == null && !endsWithLineBreak) {
+               // e.g. a CLEAN line cut off in its size would parse with the wrong size.
+               Log.w(TAG, "Ignoring partial last journal line: " + line);
+               complete = false;
+            } else {
+               try {
+                  readJournalLine(line);
+               } catch (IOException e) {
+                  if (nextLine != null) {
+                     throw e;
+                  }
+
+                  Log.w(TAG, "Ignoring malformed last journal line: " + line);
+                  complete = false;
+               }
+            }
+
+            lineCount++;
+            line = nextLine;
+         }
+
+         mRedundantOpCount = lineCount - mEntries.size();
+
+         mSize = 0;
+         for (Long size : mEntries.values()) {
+            mSize += size;
+         }
+
+         return complete;
+      } finally {
+         reader.close();
+      }
+   }
+
+   private static boolean endsWithLineBreak(File journal) throws IOException {
+      RandomAccessFile file = new RandomAccessFile(journal, "r");
+
+      try {
+         if (file.length() == 0) {
+            return true;
+         }
+
+         file.seek(file.length() - 1);
+         return file.read() == '\n';
+      } finally {
+         file.close();
+      }
+   }
+
+   private void readJournalLine(String line) throws IOException {
+      String[] parts = line.split(" ");
+
+      if (parts.length == 3 && parts[0].equals(CLEAN)) {
+         try {
+            mEntries.put(parts[1], Long.parseLong(parts[2]));
+         } catch (NumberFormatException e) {
+            throw new IOException("Unexpected journal line: " + line);
+         }
+      } else if (parts.length == 2 && parts[0].equals(REMOVE)) {
+         mEntries.remove(parts[1]);
+      } else if (parts.length == 2 && parts[0].equals(READ)) {
+         // Updates the access order.
+         mEntries.get(parts[1]);
+      } else if (line.length() > 0) {
+         // readJournal() lets a malformed last line through.
+         throw new IOException("Unexpected journal line: " + line);
+      }
+   }
+
+   /**
+    * Writes a compact journal containing only the current entries and atomically
+    * replaces the existing one.
+    */
+   private void rebuildJournal() throws IOException {
+      if (mJournalWriter != null) {
+         mJournalWriter.close();
+      }
+
+      File journal = new File(mDirectory, JOURNAL_FILE);
+      File journalTmp = new File(mDirectory, JOURNAL_FILE_TMP);
+      Writer writer = openJournalWriter(journalTmp, false);
+
+      try {
+         writer.write(JOURNAL_MAGIC + "\n");
+         writer.write(JOURNAL_VERSION + "\n");
+
+         for (Map.Entry<String, Long> entry : mEntries.entrySet()) {
+            writer.write(CLEAN + " " + entry.getKey() + " " + entry.getValue() + "\n");
+         }
+      } finally {
+         writer.close();
+      }
+
+      if (!journalTmp.renameTo(journal)) {
+         throw new IOException("Failed to rename journal");
+      }
+
+      mJournalWriter = openJournalWriter(journal, true);
+      mRedundantOpCount = 0;
+   }
+
+   private void appendJournal(String line) {
+      if (mJournalWriter == null) {
+         return;
+      }
+
+      try {
+         mJournalWriter.write(line + "\n");
+         mJournalWriter.flush();
+      } catch (IOException e) {
+         Log.e(TAG, "Failed to write journal", e);
+      }
+   }
+
+   private static Writer openJournalWriter(File journal, boolean append) throws IOException {
+      return new BufferedWriter(new OutputStreamWriter(
+       new FileOutputStream(journal, append), UTF_8));
+   }
+
+   private void deleteUnindexedFiles() {
+      File[] files = mDirectory.listFiles();
+
+      if (files != null) {
+         for (File file : files) {
+            if (!mEntries.containsKey(file.getName()) &&
+             !file.getName().equals(JOURNAL_FILE)) {
+               file.delete();
             }
          }
       }
    }
 
-   private static File getFile(String key) {
-      return new File(getCacheDir(), String.valueOf(key.hashCode()));
+   private void clearDirectory() {
+      File[] files = mDirectory.listFiles();
+
+      if (files != null) {
+         for (File file : files) {
+            file.delete();
+         }
+      }
    }
 
-   private static File sCacheDir;
-   private static File getCacheDir() {
-      if (sCacheDir == null) {
-         sCacheDir = App.get().getCacheDir();
+   /**
+    * Deletes responses stored by the old cache which named files by key.hashCode().
+    */
+   private static void deleteLegacyFiles(File directory) {
+      File[] files = directory == null ? null : directory.listFiles();
+
+      if (files == null) {
+         return;
       }
 
-      return sCacheDir;
+      for (File file : files) {
+         if (file.isFile() && file.getName().matches("-?\\d+")) {
+            file.delete();
+         }
+      }
+   }
+
+   private static String getFileName(String key) {
+      return Utils.sha1(key);
    }
 }
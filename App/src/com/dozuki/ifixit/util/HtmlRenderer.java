@@ -0,0 +1,193 @@
+package com.dozuki.ifixit.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.text.Html;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.ImageSpan;
+import android.util.LruCache;
+import android.widget.TextView;
+
+import com.dozuki.ifixit.App;
+import com.dozuki.ifixit.R;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Converts HTML to Spanned text off the main thread and keeps recent results so
+ * displaying the same content again, e.g. after rotating or scrolling back, doesn't
+ * parse it again.
+ *
+ * Results are cached by the content, the width of the TextView and the site's theme.
+ * The cache only keeps the text and the sources of inline images so it never holds
+ * on to bitmaps. Every time the text is displayed its images are loaded by a new
+ * PicassoImageGetter for that TextView.
+ */
+public class HtmlRenderer {
+   private static final int MAX_ENTRIES = 32;
+
+   /**
+    * Builds Spanned text from HTML. Called on a background thread.
+    */
+   public interface Renderer {
+      Spanned render(Html.ImageGetter imageGetter);
+   }
+
+   /**
+    * Takes the place of an ImageSpan in cached text.
+    */
+   private static class ImageSource {
+      public final String mSource;
+
+      public ImageSource(String source) {
+         mSource = source;
+      }
+   }
+
+   private static final LruCache<String, Spanned> sCache =
+    new LruCache<String, Spanned>(MAX_ENTRIES);
+   private static final Handler sHandler = new Handler(Looper.getMainLooper());
+   private static final ExecutorService sExecutor =
+    Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable runnable) {
+         return new Thread(new Runnable() {
+            @Override
+            public void run() {
+               Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+               runnable.run();
+            }
+         }, "HtmlRenderer");
+      }
+   });
+
+   /**
+    * Sets the rendered HTML as the TextView's text. Cached results are set right away,
+    * otherwise the HTML is rendered in the background and set once it's done unless
+    * the TextView was given other content in the meantime. Must be called on the main
+    * thread.
+    */
+   public static void render(final TextView textView, String html, final Renderer renderer) {
+      final String key = getKey(textView, html);
+      Spanned cached = sCache.get(key);
+
+      textView.setTag(R.id.html_renderer_key, key);
+
+      if (cached != null) {
+         textView.setText(addImages(cached, textView));
+         return;
+      }
+
+      final PicassoImageGetter imageGetter = new PicassoImageGetter(textView,
+       textView.getResources());
+
+      sExecutor.execute(new Runnable() {
+         @Override
+         public void run() {
+            final Spanned spanned = renderer.render(imageGetter);
+            final Spanned cacheable = removeImages(spanned);
+
+            sHandler.post(new Runnable() {
+               @Override
+               public void run() {
+                  sCache.put(key, cacheable);
+
+                  if (key.equals(textView.getTag(R.id.html_renderer_key))) {
+                     textView.setText(spanned);
+                  }
+               }
+            });
+         }
+      });
+   }
+
+   /**
+    * Returns the rendered HTML from the cache or renders it right away. For short
+    * snippets where displaying the text late is worse than rendering it on the main
+    * thread. The HTML may not contain images.
+    */
+   public static Spanned renderNow(TextView textView, String html, Renderer renderer) {
+      String key = getKey(textView, html);
+      Spanned cached = sCache.get(key);
+
+      if (cached != null) {
+         return cached;
+      }
+
+      Spanned spanned = renderer.render(null);
+      sCache.put(key, spanned);
+
+      return spanned;
+   }
+
+   /**
+    * Returns the text with its ImageSpans replaced by their sources.
+    */
+   private static Spanned removeImages(Spanned spanned) {
+      ImageSpan[] images = spanned.getSpans(0, spanned.length(), ImageSpan.class);
+
+      if (images.length == 0) {
+         return spanned;
+      }
+
+      SpannableStringBuilder text = new SpannableStringBuilder(spanned);
+
+      for (ImageSpan image : images) {
+         int start = text.getSpanStart(image);
+         int end = text.getSpanEnd(image);
+         int flags = text.getSpanFlags(image);
+
+         text.removeSpan(image);
+         text.setSpan(new ImageSource(image.getSource()), start, end, flags);
+      }
+
+      return text;
+   }
+
+   /**
+    * Returns a copy of the cached text with images loaded for the TextView in place
+    * of the image sources. Images that are still cached by Picasso arrive quickly.
+    */
+   private static Spanned addImages(Spanned cached, TextView textView) {
+      ImageSource[] sources = cached.getSpans(0, cached.length(), ImageSource.class);
+
+      if (sources.length == 0) {
+         return cached;
+      }
+
+      PicassoImageGetter imageGetter = new PicassoImageGetter(textView,
+       textView.getResources());
+      SpannableStringBuilder text = new SpannableStringBuilder(cached);
+
+      for (ImageSource source : sources) {
+         int start = text.getSpanStart(source);
+         int end = text.getSpanEnd(source);
+         int flags = text.getSpanFlags(source);
+
+         text.removeSpan(source);
+         text.setSpan(new ImageSpan(imageGetter.getDrawable(source.mSource),
+          source.mSource), start, end, flags);
+      }
+
+      return text;
+   }
+
+   /**
+    * Returns the cache key for the HTML displayed in the TextView. The width is part of
+    * the key because inline images are sized to fit it.
+    */
+   private static String getKey(TextView textView, String html) {
+      int width = textView.getWidth();
+
+      if (width <= 0) {
+         width = textView.getResources().getDisplayMetrics().widthPixels;
+      }
+
+      return html.hashCode() + ":" + html.length() + ":" + width + ":" +
+       App.get().getSiteTheme();
+   }
+}
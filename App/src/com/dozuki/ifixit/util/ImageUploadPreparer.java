@@ -0,0 +1,336 @@
+package com.dozuki.ifixit.util;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.support.media.ExifInterface;
+import android.util.Log;
+
+import com.dozuki.ifixit.R;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Shrinks images to the largest size the site serves before they are uploaded.
+ * Images are decoded subsampled by the largest power of two that keeps them at
+ * least that big so a 48 MP photo never has to fit in the heap, scaled the rest of
+ * the way, turned upright according to their EXIF orientation and encoded as JPEG.
+ * The size and quality are resources so sites can override them.
+ *
+ * Does disk and bitmap work so it must not be used on the main thread.
+ */
+public class ImageUploadPreparer {
+   private static final String TAG = "ImageUploadPreparer";
+   private static final String UPLOADS_DIR = "uploads";
+   // Prepared images are left for the system to clear but not forever.
+   private static final long MAX_UPLOAD_AGE_MS = 24 * 60 * 60 * 1000;
+   private static final int MAX_SAMPLE_SIZE = 64;
+
+   private final Context mContext;
+   private final int mMaxSize;
+   private final int mQuality;
+
+   public ImageUploadPreparer(Context context) {
+      Resources res = context.getResources();
+
+      mContext = context.getApplicationContext();
+      mMaxSize = res.getInteger(R.integer.upload_image_max_size);
+      mQuality = res.getInteger(R.integer.upload_image_quality);
+   }
+
+   /**
+    * Returns the file to upload for the image at the file or content Uri or null if
+    * it can't be read. JPEGs that are already small enough and upright are uploaded
+    * as they are.
+    */
+   public File prepare(Uri source) {
+      deleteOldUploads();
+
+      BitmapFactory.Options bounds = new BitmapFactory.Options();
+      bounds.inJustDecodeBounds = true;
+
+      decodeBitmap(source, bounds);
+
+      if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+         return null;
+      }
+
+      int longestSide = Math.max(bounds.outWidth, bounds.outHeight);
+      Matrix orientation = getOrientation(source);
+      boolean isFile = ContentResolver.SCHEME_FILE.equals(source.getScheme());
+
+      if (isFile && longestSide <= mMaxSize && orientation.isIdentity() &&
+       "image/jpeg".equals(bounds.outMimeType)) {
+         return new File(source.getPath());
+      }
+
+      int sampleSize = 1;
+
+      while (longestSide / (sampleSize * 2) >= mMaxSize) {
+         sampleSize *= 2;
+      }
+
+      Bitmap bitmap = decodeSampled(source, sampleSize);
+
+      if (bitmap == null) {
+         return null;
+      }
+
+      try {
+         bitmap = transform(bitmap, orientation);
+         return write(bitmap);
+      } catch (OutOfMemoryError e) {
+         Log.e(TAG, "Not enough memory to prepare image", e);
+         return null;
+      } finally {
+         bitmap.recycle();
+      }
+   }
+
+   /**
+    * Decodes the image subsampled by at least the given size. Tries coarser samples
+    * if there isn't enough memory.
+    */
+   private Bitmap decodeSampled(Uri source, int sampleSize) {
+      BitmapFactory.Options options = new BitmapFactory.Options();
+
+      for (; sampleSize <= MAX_SAMPLE_SIZE; sampleSize *= 2) {
+         options.inSampleSize = sampleSize;
+
+         try {
+            Bitmap bitmap = decodeBitmap(source, options);
+
+            if (bitmap != null) {
+               return bitmap;
+            }
+         } catch (OutOfMemoryError e) {
+            Log.w(TAG, "Not enough memory to decode with sample size " + sampleSize);
+            continue;
+         }
+
+         // Not an image we can decode. A coarser sample won't change that.
+         break;
+      }
+
+      return null;
+   }
+
+   /**
+    * Scales the bitmap to fit mMaxSize and applies the orientation. Recycles the
+    * given bitmap if a new one is returned.
+    */
+   private Bitmap transform(Bitmap bitmap, Matrix orientation) {
+      float scale = Math.min(1f,
+       mMaxSize / (float)Math.max(bitmap.getWidth(), bitmap.getHeight()));
+      Matrix matrix = new Matrix();
+
+      matrix.setScale(scale, scale);
+      matrix.postConcat(orientation);
+
+      if (matrix.isIdentity()) {
+         return bitmap;
+      }
+
+      Bitmap transformed = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(),
+       bitmap.getHeight(), matrix, true);
+
+      if (transformed != bitmap) {
+         bitmap.recycle();
+      }
+
+      return transformed;
+   }
+
+   private File write(Bitmap bitmap) {
+      OutputStream out = null;
+
+      try {
+         File file = File.createTempFile("upload", ".jpg", getUploadsDir());
+         out = new BufferedOutputStream(new FileOutputStream(file));
+
+         if (!bitmap.compress(Bitmap.CompressFormat.JPEG, mQuality, out)) {
+            file.delete();
+            return null;
+         }
+
+         return file;
+      } catch (IOException e) {
+         Log.e(TAG, "Cannot write prepared image", e);
+         return null;
+      } finally {
+         closeQuietly(out);
+      }
+   }
+
+   /**
+    * Returns the transformation that turns the image upright.
+    */
+   private Matrix getOrientation(Uri source) {
+      Matrix matrix = new Matrix();
+
+      if (!ContentResolver.SCHEME_FILE.equals(source.getScheme())) {
+         // The media store reports the rotation of its images. Other providers
+         // e.g. documents and Google Photos don't so their EXIF is read instead.
+         Integer rotation = getProviderRotation(source);
+
+         if (rotation != null) {
+            matrix.setRotate(rotation);
+            return matrix;
+         }
+      }
+
+      switch (getExifOrientation(source)) {
+         case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+            matrix.setScale(-1, 1);
+            break;
+         case ExifInterface.ORIENTATION_ROTATE_180:
+            matrix.setRotate(180);
+            break;
+         case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+            matrix.setScale(1, -1);
+            break;
+         case ExifInterface.ORIENTATION_TRANSPOSE:
+            matrix.setRotate(90);
+            matrix.postScale(-1, 1);
+            break;
+         case ExifInterface.ORIENTATION_ROTATE_90:
+            matrix.setRotate(90);
+            break;
+         case ExifInterface.ORIENTATION_TRANSVERSE:
+            matrix.setRotate(-90);
+            matrix.postScale(-1, 1);
+            break;
+         case ExifInterface.ORIENTATION_ROTATE_270:
+            matrix.setRotate(-90);
+            break;
+      }
+
+      return matrix;
+   }
+
+   /**
+    * Returns the rotation the provider reports for the image or null if it doesn't.
+    */
+   private Integer getProviderRotation(Uri source) {
+      Cursor cursor = null;
+
+      try {
+         cursor = mContext.getContentResolver().query(source,
+          new String[] {MediaStore.Images.ImageColumns.ORIENTATION}, null, null, null);
+
+         if (cursor != null && cursor.moveToFirst()) {
+            int column = cursor.getColumnIndex(MediaStore.Images.ImageColumns.ORIENTATION);
+
+            if (column != -1 && !cursor.isNull(column)) {
+               return cursor.getInt(column);
+            }
+         }
+      } catch (RuntimeException e) {
+         // Not every provider has the column.
+         Log.w(TAG, "Cannot query orientation", e);
+      } finally {
+         if (cursor != null) {
+            cursor.close();
+         }
+      }
+
+      return null;
+   }
+
+   /**
+    * Reads the EXIF orientation from the image's stream so it works for content Uris
+    * that aren't files.
+    */
+   private int getExifOrientation(Uri source) {
+      InputStream in = null;
+
+      try {
+         in = mContext.getContentResolver().openInputStream(source);
+
+         if (in != null) {
+            return new ExifInterface(in).getAttributeInt(ExifInterface.TAG_ORIENTATION,
+             ExifInterface.ORIENTATION_NORMAL);
+         }
+      } catch (IOException e) {
+         Log.w(TAG, "Cannot read EXIF orientation", e);
+      } finally {
+         closeQuietly(in);
+      }
+
+      return ExifInterface.ORIENTATION_NORMAL;
+   }
+
+   private Bitmap decodeBitmap(Uri source, BitmapFactory.Options options) {
+      InputStream in = null;
+
+      try {
+         in = mContext.getContentResolver().openInputStream(source);
+
+         return in == null ? null : BitmapFactory.decodeStream(in, null, options);
+      } catch (IOException e) {
+         Log.w(TAG, "Cannot open image", e);
+         return null;
+      } finally {
+         closeQuietly(in);
+      }
+   }
+
+   /**
+    * Deletes the file if prepare() wrote it rather than returning the image itself.
+    */
+   public static void deletePrepared(Context context, File upload) {
+      File dir = new File(context.getCacheDir(), UPLOADS_DIR);
+
+      if (upload != null && dir.equals(upload.getParentFile()) && !upload.delete()) {
+         Log.w(TAG, "Cannot delete " + upload);
+      }
+   }
+
+   private File getUploadsDir() {
+      File dir = new File(mContext.getCacheDir(), UPLOADS_DIR);
+
+      if (!dir.isDirectory() && !dir.mkdirs()) {
+         Log.w(TAG, "Cannot create " + dir);
+      }
+
+      return dir;
+   }
+
+   private void deleteOldUploads() {
+      File[] uploads = getUploadsDir().listFiles();
+
+      if (uploads == null) {
+         return;
+      }
+
+      long now = System.currentTimeMillis();
+
+      for (File upload : uploads) {
+         if (now - upload.lastModified() > MAX_UPLOAD_AGE_MS) {
+            upload.delete();
+         }
+      }
+   }
+
+   private static void closeQuietly(Closeable closeable) {
+      if (closeable != null) {
+         try {
+            closeable.close();
+         } catch (IOException e) {
+            // Nothing left to do.
+         }
+      }
+   }
+}
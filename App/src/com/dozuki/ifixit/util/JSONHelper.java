@@ -26,67 +26,110 @@ import com.dozuki.ifixit.model.search.GuideSearchResult;
 import com.dozuki.ifixit.model.search.SearchResults;
 import com.dozuki.ifixit.model.search.TopicSearchResult;
 import com.dozuki.ifixit.model.topic.TopicLeaf;
-import com.dozuki.ifixit.model.topic.TopicNode;
+import com.dozuki.ifixit.model.topic.TopicTree;
 import com.dozuki.ifixit.model.user.User;
 import com.dozuki.ifixit.model.user.UserImage;
 import com.dozuki.ifixit.util.api.ApiError;
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 
 public class JSONHelper {
    private static final String TAG = "JSONHelper";
    private static final String INVALID_LOGIN_STRING = "Invalid login";
 
-   public static SearchResults parseSearchResults(String json) throws JSONException {
+   private static final Gson sGson = new GsonBuilder()
+    .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+    .create();
+   private static final JsonParser sJsonParser = new JsonParser();
+
+   /**
+    * Returns the Gson instance shared by all parsing. Every new Gson builds its
+    * adapters from scratch so use this one instead.
+    */
+   public static Gson getGson() {
+      return sGson;
+   }
 
+   public static SearchResults parseSearchResults(String json) throws JSONException {
       SearchResults search = new SearchResults();
-      JSONObject response = new JSONObject(json);
-
-      search.mLimit = response.getInt("limit");
-      search.mOffset = response.getInt("offset");
-      search.mTotalResults = response.getInt("totalResults");
-      search.mHasMoreResults = response.getBoolean("moreResults");
-      search.mQuery = response.getString("search");
-
-      if (response.has("results")) {
-         JSONArray resultsArr = response.getJSONArray("results");
-         int count = resultsArr.length();
-
-         for (int i = 0; i < count; i++) {
-            JSONObject result = resultsArr.getJSONObject(i);
-            String resultType = result.getString("dataType");
-            if (resultType.equals("guide")) {
-               Type guidesType = new TypeToken<GuideInfo>() {}.getType();
-               GuideInfo gi = new Gson().fromJson(result.toString(), guidesType);
-
-               GuideSearchResult gsr = new GuideSearchResult(gi);
-               search.mResults.add(gsr);
-            } else if (resultType.equals("wiki")) {
-               TopicSearchResult tsr = new TopicSearchResult();
-               tsr.mDisplayTitle = result.getString("display_title");
-               tsr.mTitle = result.getString("title");
-               tsr.mText = result.getString("text");
-               tsr.mNamespace = result.getString("namespace");
-               tsr.mSummary = result.getString("summary");
-               tsr.mUrl = result.getString("url");
-               if (!result.isNull("image")) {
-                  tsr.mImage = parseImage(result, "image");
-               }
+      JsonReader reader = new JsonReader(new StringReader(json));
+      Set<String> names = new HashSet<String>();
 
-               search.mResults.add(tsr);
+      try {
+         reader.beginObject();
+         while (reader.hasNext()) {
+            String name = reader.nextName();
+            names.add(name);
+
+            if (name.equals("limit")) {
+               search.mLimit = reader.nextInt();
+            } else if (name.equals("offset")) {
+               search.mOffset = reader.nextInt();
+            } else if (name.equals("totalResults")) {
+               search.mTotalResults = reader.nextInt();
+            } else if (name.equals("moreResults")) {
+               search.mHasMoreResults = nextBoolean(reader);
+            } else if (name.equals("search")) {
+               search.mQuery = nextString(reader);
+            } else if (name.equals("results") && reader.peek() != JsonToken.NULL) {
+               reader.beginArray();
+               while (reader.hasNext()) {
+                  // The type of a result isn't necessarily its first field so each
+                  // result is read into a small tree first.
+                  JsonObject result = sJsonParser.parse(reader).getAsJsonObject();
+                  String resultType = result.get("dataType").getAsString();
+
+                  if (resultType.equals("guide")) {
+                     GuideInfo gi = sGson.fromJson(result, GuideInfo.class);
+                     search.mResults.add(new GuideSearchResult(gi));
+                  } else if (resultType.equals("wiki")) {
+                     TopicSearchResult tsr = new TopicSearchResult();
+                     tsr.mDisplayTitle = getString(result, "display_title");
+                     tsr.mTitle = getString(result, "title");
+                     tsr.mText = getString(result, "text");
+                     tsr.mNamespace = getString(result, "namespace");
+                     tsr.mSummary = getString(result, "summary");
+                     tsr.mUrl = getString(result, "url");
+                     if (result.has("image") && !result.get("image").isJsonNull()) {
+                        tsr.mImage = readImage(result.get("image"));
+                     }
+
+                     search.mResults.add(tsr);
+                  }
+               }
+               reader.endArray();
+            } else {
+               reader.skipValue();
             }
          }
+         reader.endObject();
+      } catch (IOException | RuntimeException e) {
+         throw toJSONException(e);
       }
 
+      checkRequired(names, "limit", "offset", "totalResults", "moreResults", "search");
+
       return search;
    }
 
@@ -188,75 +231,392 @@ public class JSONHelper {
 
    /**
     * Guide parsing
+    *
+    * Guides are streamed straight into the model because they can be several
+    * megabytes. Values are read the same way JSONObject reads them so the result
+    * matches parseStep() and the other org.json based parsers.
     */
    public static Guide parseGuide(String json) throws JSONException {
-      JSONObject jGuide = new JSONObject(json);
-      JSONArray jSteps = jGuide.getJSONArray("steps");
-      JSONArray jTools = jGuide.getJSONArray("tools");
-      JSONArray jParts = jGuide.getJSONArray("parts");
-      JSONObject jAuthor = jGuide.getJSONObject("author");
-      JSONArray jDocuments = jGuide.getJSONArray("documents");
-      Guide guide = new Guide(jGuide.getInt("guideid"));
-
-      guide.setFeaturedDocument(!jGuide.isNull("featured_documentid") ? jGuide.getInt("featured_documentid") : 0);
-      guide.setTitle(jGuide.getString("title"));
-      guide.setTopic(jGuide.getString("category"));
-      guide.setSubject(jGuide.getString("subject"));
-      guide.setAuthor(jAuthor.getString("username"));
-      guide.setTimeRequired(jGuide.getString("time_required"));
-      guide.setDifficulty(jGuide.getString("difficulty"));
-      guide.setIntroductionRaw(jGuide.getString("introduction_raw"));
-      guide.setIntroductionRendered(jGuide.getString("introduction_rendered"));
-      if (!jGuide.isNull("image")) {
-         guide.setIntroImage(parseImage(jGuide, "image"));
-      }
-      guide.setSummary(jGuide.isNull("summary") ? "" : jGuide.getString("summary"));
-      guide.setRevisionid(jGuide.getInt("revisionid"));
-      guide.setPublic(jGuide.getBoolean("public"));
-      guide.setType(jGuide.getString("type"));
-      guide.setPatrolThreshold(jGuide.getInt("patrol_threshold"));
-      guide.setConclusion(jGuide.getString("conclusion_rendered"));
-      guide.setCompleted(jGuide.getBoolean("completed"));
-      guide.setComments(parseComments(jGuide.getJSONArray("comments")));
-      guide.setFavorited(jGuide.getBoolean("favorited"));
-      guide.setModifiedDate(jGuide.getDouble("modified_date"));
-      guide.setPrereqModifiedDate(jGuide.getDouble("prereq_modified_date"));
-
-      if (jGuide.has("can_edit")) {
-         guide.setCanEdit(jGuide.getBoolean("can_edit"));
-      }
-
-      guide.setDocuments(parseDocuments(jDocuments));
-
-      for (int i = 0; i < jSteps.length(); i++) {
-         guide.addStep(parseStep(jSteps.getJSONObject(i), i + 1));
+      JsonReader reader = new JsonReader(new StringReader(json));
+      Guide guide = new Guide();
+      Set<String> names = new HashSet<String>();
+
+      try {
+         reader.beginObject();
+         while (reader.hasNext()) {
+            String name = reader.nextName();
+            names.add(name);
+
+            if (name.equals("guideid")) {
+               guide.setGuideid(reader.nextInt());
+            } else if (name.equals("featured_documentid")) {
+               guide.setFeaturedDocument(reader.peek() == JsonToken.NULL ?
+                skipNull(reader, 0) : reader.nextInt());
+            } else if (name.equals("title")) {
+               guide.setTitle(nextString(reader));
+            } else if (name.equals("category")) {
+               guide.setTopic(nextString(reader));
+            } else if (name.equals("subject")) {
+               guide.setSubject(nextString(reader));
+            } else if (name.equals("author")) {
+               guide.setAuthor(readAuthorUsername(reader));
+            } else if (name.equals("time_required")) {
+               guide.setTimeRequired(nextString(reader));
+            } else if (name.equals("difficulty")) {
+               guide.setDifficulty(nextString(reader));
+            } else if (name.equals("introduction_raw")) {
+               guide.setIntroductionRaw(nextString(reader));
+            } else if (name.equals("introduction_rendered")) {
+               guide.setIntroductionRendered(nextString(reader));
+            } else if (name.equals("image")) {
+               if (reader.peek() == JsonToken.NULL) {
+                  reader.nextNull();
+               } else {
+                  guide.setIntroImage(readImage(sJsonParser.parse(reader)));
+               }
+            } else if (name.equals("summary")) {
+               guide.setSummary(reader.peek() == JsonToken.NULL ? skipNull(reader, "") :
+                nextString(reader));
+            } else if (name.equals("revisionid")) {
+               guide.setRevisionid(reader.nextInt());
+            } else if (name.equals("public")) {
+               guide.setPublic(nextBoolean(reader));
+            } else if (name.equals("type")) {
+               guide.setType(nextString(reader));
+            } else if (name.equals("patrol_threshold")) {
+               guide.setPatrolThreshold(reader.nextInt());
+            } else if (name.equals("conclusion_rendered")) {
+               guide.setConclusion(nextString(reader));
+            } else if (name.equals("completed")) {
+               guide.setCompleted(nextBoolean(reader));
+            } else if (name.equals("comments")) {
+               guide.setComments(readComments(reader));
+            } else if (name.equals("favorited")) {
+               guide.setFavorited(nextBoolean(reader));
+            } else if (name.equals("modified_date")) {
+               guide.setModifiedDate(reader.nextDouble());
+            } else if (name.equals("prereq_modified_date")) {
+               guide.setPrereqModifiedDate(reader.nextDouble());
+            } else if (name.equals("can_edit")) {
+               guide.setCanEdit(nextBoolean(reader));
+            } else if (name.equals("documents")) {
+               ArrayList<Document> documents = new ArrayList<>();
+               reader.beginArray();
+               while (reader.hasNext()) {
+                  documents.add(sGson.<Document>fromJson(reader, Document.class));
+               }
+               reader.endArray();
+               guide.setDocuments(documents);
+            } else if (name.equals("steps")) {
+               reader.beginArray();
+               while (reader.hasNext()) {
+                  guide.addStep(readStep(reader, guide.getNumSteps() + 1));
+               }
+               reader.endArray();
+            } else if (name.equals("tools")) {
+               reader.beginArray();
+               while (reader.hasNext()) {
+                  guide.addTool(readItem(reader, Item.ItemType.TOOL));
+               }
+               reader.endArray();
+            } else if (name.equals("parts")) {
+               reader.beginArray();
+               while (reader.hasNext()) {
+                  guide.addPart(readItem(reader, Item.ItemType.PART));
+               }
+               reader.endArray();
+            } else {
+               reader.skipValue();
+            }
+         }
+         reader.endObject();
+      } catch (IOException | RuntimeException e) {
+         throw toJSONException(e);
+      }
+
+      checkRequired(names, "steps", "tools", "parts", "author", "documents", "guideid",
+       "title", "category", "subject", "time_required", "difficulty", "introduction_raw",
+       "introduction_rendered", "revisionid", "public", "type", "patrol_threshold",
+       "conclusion_rendered", "completed", "comments", "favorited", "modified_date",
+       "prereq_modified_date");
+
+      return guide;
+   }
+
+   private static String readAuthorUsername(JsonReader reader)
+    throws IOException, JSONException {
+      String username = null;
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+         if (reader.nextName().equals("username")) {
+            username = nextString(reader);
+         } else {
+            reader.skipValue();
+         }
+      }
+      reader.endObject();
+
+      if (username == null) {
+         throw new JSONException("No value for username");
+      }
+
+      return username;
+   }
+
+   private static GuideStep readStep(JsonReader reader, int stepNumber)
+    throws IOException, JSONException {
+      GuideStep step = new GuideStep(stepNumber);
+      Set<String> names = new HashSet<String>();
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+         String name = reader.nextName();
+         names.add(name);
+
+         if (name.equals("guideid")) {
+            step.setGuideid(reader.nextInt());
+         } else if (name.equals("stepid")) {
+            step.setStepid(reader.nextInt());
+         } else if (name.equals("revisionid")) {
+            step.setRevisionid(reader.nextInt());
+         } else if (name.equals("orderby")) {
+            step.setOrderby(reader.peek() == JsonToken.NULL ? skipNull(reader, stepNumber) :
+             reader.nextInt());
+         } else if (name.equals("title")) {
+            step.setTitle(nextString(reader));
+         } else if (name.equals("media")) {
+            // The media type isn't necessarily before its data so the media object is
+            // read into a small tree first.
+            JsonElement jMedia = sJsonParser.parse(reader);
+
+            try {
+               readStepMedia(step, jMedia.getAsJsonObject());
+            } catch (JSONException | RuntimeException e) {
+               step.addImage(new Image());
+            }
+         } else if (name.equals("lines")) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+               step.addLine(readLine(reader));
+            }
+            reader.endArray();
+         } else if (name.equals("comments")) {
+            step.setComments(readComments(reader));
+         } else {
+            reader.skipValue();
+         }
+      }
+      reader.endObject();
+
+      checkRequired(names, "guideid", "stepid", "revisionid", "title", "lines");
+
+      if (!names.contains("media")) {
+         step.addImage(new Image());
+      }
+
+      return step;
+   }
+
+   private static void readStepMedia(GuideStep step, JsonObject jMedia) throws JSONException {
+      String type = jMedia.get("type").getAsString();
+
+      if (type.equals("image")) {
+         for (JsonElement jImage : jMedia.getAsJsonArray("data")) {
+            step.addImage(readImage(jImage));
+         }
+      } else {
+         // Videos and embeds are rare and are parsed by the org.json based parsers.
+         parseStepMedia(step, new JSONObject(jMedia.toString()));
+      }
+   }
+
+   private static StepLine readLine(JsonReader reader) throws IOException, JSONException {
+      Set<String> names = new HashSet<String>();
+      int lineid = 0;
+      String bullet = null;
+      int level = 0;
+      String textRaw = null;
+      String textRendered = null;
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+         String name = reader.nextName();
+         names.add(name);
+
+         if (name.equals("lineid")) {
+            lineid = reader.peek() == JsonToken.NULL ? skipNull(reader, 0) : reader.nextInt();
+         } else if (name.equals("bullet")) {
+            bullet = nextString(reader);
+         } else if (name.equals("level")) {
+            level = reader.nextInt();
+         } else if (name.equals("text_raw")) {
+            textRaw = nextString(reader);
+         } else if (name.equals("text_rendered")) {
+            textRendered = nextString(reader);
+         } else {
+            reader.skipValue();
+         }
+      }
+      reader.endObject();
+
+      checkRequired(names, "bullet", "level", "text_raw", "text_rendered");
+
+      return new StepLine(lineid, bullet, level, textRaw, textRendered);
+   }
+
+   private static Item readItem(JsonReader reader, Item.ItemType type)
+    throws IOException, JSONException {
+      Map<String, String> fields = new HashMap<String, String>();
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+         fields.put(reader.nextName(), nextString(reader));
+      }
+      reader.endObject();
+
+      checkRequired(fields.keySet(), "text", "quantity", "url", "thumbnail", "notes");
+
+      return new Item(type, fields.get("text"), fields.get("quantity"), fields.get("url"),
+       fields.get("thumbnail"), fields.get("notes"));
+   }
+
+   private static ArrayList<Comment> readComments(JsonReader reader)
+    throws IOException, JSONException {
+      ArrayList<Comment> comments = new ArrayList<Comment>();
+
+      reader.beginArray();
+      while (reader.hasNext()) {
+         // Comments keep their source JSON so they are built from org.json.
+         comments.add(new Comment(sJsonParser.parse(reader).toString()));
       }
+      reader.endArray();
 
+      return comments;
+   }
+
+   /**
+    * Same as parseImage() for an image that was read into a tree.
+    */
+   private static Image readImage(JsonElement jImage) {
+      try {
+         JsonObject image = jImage.getAsJsonObject();
+         return new Image(image.get("id").getAsInt(), getString(image, "original"));
+      } catch (RuntimeException e) {
+         Log.w(TAG, "Image parsing", e);
+         return new Image();
+      }
+   }
+
+   /**
+    * Reads the next value as a String the way JSONObject.getString() does so streamed
+    * models match the ones org.json builds. Notably JSON null becomes "null".
+    */
+   private static String nextString(JsonReader reader) throws IOException {
+      switch (reader.peek()) {
+         case NULL:
+            reader.nextNull();
+            return "null";
+         case BOOLEAN:
+            return String.valueOf(reader.nextBoolean());
+         case BEGIN_ARRAY:
+         case BEGIN_OBJECT:
+            return sJsonParser.parse(reader).toString();
+         default:
+            return reader.nextString();
+      }
+   }
+
+   /**
+    * JSONObject.getString() for a value that was read into a tree.
+    */
+   private static String getString(JsonObject object, String name) {
+      JsonElement value = object.get(name);
+
+      if (value == null) {
+         throw new IllegalStateException("No value for " + name);
+      }
+
+      return value.isJsonNull() ? "null" :
+       value.isJsonPrimitive() ? value.getAsString() : value.toString();
+   }
+
+   /**
+    * Reads the next value as a boolean the way JSONObject.getBoolean() does which
+    * also accepts "true" and "false" strings.
+    */
+   private static boolean nextBoolean(JsonReader reader) throws IOException {
+      if (reader.peek() == JsonToken.STRING) {
+         String value = reader.nextString();
+
+         if (value.equalsIgnoreCase("true")) {
+            return true;
+         } else if (value.equalsIgnoreCase("false")) {
+            return false;
+         }
+
+         throw new IllegalStateException("Expected a boolean but was " + value);
+      }
+
+      return reader.nextBoolean();
+   }
+
+   private static <T> T skipNull(JsonReader reader, T value) throws IOException {
+      reader.nextNull();
+      return value;
+   }
+
+   /**
+    * Throws the JSONException JSONObject.get() would have for the first required name
+    * that wasn't read.
+    */
+   private static void checkRequired(Set<String> names, String... required)
+    throws JSONException {
+      for (String name : required) {
+         if (!names.contains(name)) {
+            throw new JSONException("No value for " + name);
+         }
+      }
+   }
+
+   private static JSONException toJSONException(Exception e) {
+      JSONException jsonException = new JSONException(e.getMessage());
+      jsonException.initCause(e);
+      return jsonException;
+   }
+
+   public static ArrayList<Item> parseTools(JSONArray jTools) throws JSONException {
+      ArrayList<Item> tools = new ArrayList<Item>();
       for (int i = 0; i < jTools.length(); i++) {
-         guide.addTool(parseTool(jTools.getJSONObject(i)));
+         tools.add(parseTool(jTools.getJSONObject(i)));
       }
 
+      return tools;
+   }
+
+   public static ArrayList<Item> parseParts(JSONArray jParts) throws JSONException {
+      ArrayList<Item> parts = new ArrayList<Item>();
       for (int i = 0; i < jParts.length(); i++) {
-         guide.addPart(parsePart(jParts.getJSONObject(i)));
+         parts.add(parsePart(jParts.getJSONObject(i)));
       }
 
-      return guide;
+      return parts;
    }
 
    public static Wiki parseWiki(String json) {
-      return new Gson().fromJson(json, Wiki.class);
+      return sGson.fromJson(json, Wiki.class);
    }
 
-   private static ArrayList<Document> parseDocuments(JSONArray documents) throws JSONException {
+   public static ArrayList<Document> parseDocuments(JSONArray documents) throws JSONException {
       ArrayList<Document> result = new ArrayList<>();
       for (int i = 0; i < documents.length(); i++) {
-         result.add(new Gson().fromJson(documents.getJSONObject(i).toString(), Document.class));
+         result.add(sGson.fromJson(documents.getJSONObject(i).toString(), Document.class));
       }
 
       return result;
    }
 
-   private static ArrayList<Comment> parseComments(JSONArray comments) throws JSONException {
+   public static ArrayList<Comment> parseComments(JSONArray comments) throws JSONException {
       ArrayList<Comment> result = new ArrayList<Comment>();
       for (int i = 0; i < comments.length(); i++) {
          result.add(new Comment(comments.getJSONObject(i)));
@@ -294,22 +654,7 @@ public class JSONHelper {
       step.setTitle(jStep.getString("title"));
 
       try {
-         JSONObject jMedia = jStep.getJSONObject("media");
-         String type = jMedia.getString("type");
-
-         if (type.equals("image")) {
-            JSONArray jImages = jMedia.getJSONArray("data");
-            for (int i = 0; i < jImages.length(); i++) {
-               step.addImage(parseImage(jImages.getJSONObject(i), null));
-            }
-         } else if (type.equals("video")) {
-            JSONObject jVideo = jMedia.getJSONObject("data");
-            step.addVideo(parseVideo(jVideo));
-         } else if (type.equals("embed")) {
-            JSONObject jEmbed = jMedia.getJSONObject("data");
-            step.addEmbed(new Embed(jEmbed));
-         }
-
+         parseStepMedia(step, jStep.getJSONObject("media"));
       } catch (JSONException e) {
          Image image = new Image();
          step.addImage(image);
@@ -327,6 +672,26 @@ public class JSONHelper {
       return step;
    }
 
+   /**
+    * Adds the images, video or embed in the step's "media" object to the step.
+    */
+   public static void parseStepMedia(GuideStep step, JSONObject jMedia) throws JSONException {
+      String type = jMedia.getString("type");
+
+      if (type.equals("image")) {
+         JSONArray jImages = jMedia.getJSONArray("data");
+         for (int i = 0; i < jImages.length(); i++) {
+            step.addImage(parseImage(jImages.getJSONObject(i), null));
+         }
+      } else if (type.equals("video")) {
+         JSONObject jVideo = jMedia.getJSONObject("data");
+         step.addVideo(parseVideo(jVideo));
+      } else if (type.equals("embed")) {
+         JSONObject jEmbed = jMedia.getJSONObject("data");
+         step.addEmbed(new Embed(jEmbed));
+      }
+   }
+
    private static Video parseVideo(JSONObject jVideo) throws JSONException {
       Video video = new Video();
 
@@ -378,92 +743,146 @@ public class JSONHelper {
    /**
     * Topic hierarchy parsing
     */
-   public static TopicNode parseTopics(String json) throws JSONException {
-      JSONArray jHierarchy = new JSONArray(json);
+   public static TopicTree parseTopics(String json) throws JSONException {
+      JsonReader reader = new JsonReader(new StringReader(json));
+      TopicTree.Builder tree = new TopicTree.Builder();
 
-      ArrayList<TopicNode> topics = parseTopicChildren(jHierarchy);
-      TopicNode root = new TopicNode();
-
-      root.setChildren(topics);
+      try {
+         parseTopicChildren(reader, tree, TopicTree.ROOT);
+      } catch (IOException | RuntimeException e) {
+         throw toJSONException(e);
+      }
 
-      return root;
+      return tree.build();
    }
 
    /**
-    * Reads through the given JSONObject and adds any topics to the given topic.
+    * Reads an array of topics and adds them to the tree as children of the parent.
     */
-   private static ArrayList<TopicNode> parseTopicChildren(JSONArray jChildren) throws JSONException {
-      ArrayList<TopicNode> topics = new ArrayList<TopicNode>();
-
-      for (int i = 0; i < jChildren.length(); i++) {
-         JSONObject jTopic = jChildren.getJSONObject(i);
-         TopicNode topic = new TopicNode(jTopic.getString("title"));
-
-         if (jTopic.has("children")) {
-            topic.setChildren(parseTopicChildren(jTopic.getJSONArray("children")));
+   private static void parseTopicChildren(JsonReader reader, TopicTree.Builder tree,
+    int parent) throws IOException, JSONException {
+      reader.beginArray();
+      while (reader.hasNext()) {
+         int topic = tree.add(parent);
+         boolean hasTitle = false;
+
+         reader.beginObject();
+         while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            if (name.equals("title")) {
+               hasTitle = true;
+               tree.setName(topic, reader.nextString());
+            } else if (name.equals("display_title")) {
+               tree.setDisplayName(topic, reader.nextString());
+            } else if (name.equals("children") && reader.peek() != JsonToken.NULL) {
+               tree.setHasChildren(topic);
+               parseTopicChildren(reader, tree, topic);
+            } else {
+               reader.skipValue();
+            }
          }
+         reader.endObject();
 
-         if (jTopic.has("display_title")) {
-            topic.setDisplayName(jTopic.getString("display_title"));
+         if (!hasTitle) {
+            throw new JSONException("No value for title");
          }
-
-         topics.add(topic);
       }
-
-      return topics;
+      reader.endArray();
    }
 
    /**
     * Topic leaf parsing
     */
    public static TopicLeaf parseTopicLeaf(String json) throws JSONException {
+      JsonReader reader = new JsonReader(new StringReader(json));
+      ArrayList<GuideInfo> featuredGuides = new ArrayList<GuideInfo>();
+      ArrayList<GuideInfo> guides = new ArrayList<GuideInfo>();
+      ArrayList<Wiki> wikis = new ArrayList<Wiki>();
+      Map<String, String> fields = new HashMap<String, String>();
+      Set<String> names = new HashSet<String>();
+      String description = null;
+      Image image = new Image();
 
-      JSONObject jTopic = new JSONObject(json);
-      JSONArray jGuides = jTopic.getJSONArray("guides");
-      JSONArray jWikis = jTopic.getJSONArray("related_wikis");
-      TopicLeaf topicLeaf = new TopicLeaf(jTopic.getString("title"));
-      JSONArray jFeaturedGuides = jTopic.getJSONArray("featured_guides");
+      try {
+         reader.beginObject();
+         while (reader.hasNext()) {
+            String name = reader.nextName();
+            names.add(name);
+
+            if (name.equals("featured_guides")) {
+               readGuideInfos(reader, featuredGuides);
+            } else if (name.equals("guides")) {
+               readGuideInfos(reader, guides);
+            } else if (name.equals("related_wikis")) {
+               reader.beginArray();
+               while (reader.hasNext()) {
+                  wikis.add(sGson.<Wiki>fromJson(reader, Wiki.class));
+               }
+               reader.endArray();
+            } else if (name.equals("description")) {
+               description = reader.peek() == JsonToken.NULL ? skipNull(reader, (String)null) :
+                nextString(reader);
+            } else if (name.equals("image")) {
+               if (reader.peek() == JsonToken.NULL) {
+                  reader.nextNull();
+               } else {
+                  image = readImage(sJsonParser.parse(reader));
+               }
+            } else if (name.equals("title") || name.equals("display_title") ||
+             name.equals("solutions_url") || name.equals("langid") ||
+             name.equals("contents_raw") || name.equals("contents_rendered")) {
+               fields.put(name, nextString(reader));
+            } else {
+               reader.skipValue();
+            }
+         }
+         reader.endObject();
+      } catch (IOException | RuntimeException e) {
+         throw toJSONException(e);
+      }
+
+      checkRequired(names, "guides", "related_wikis", "title", "featured_guides",
+       "solutions_url", "langid", "contents_raw", "contents_rendered", "display_title");
 
-      for (int i = 0; i < jFeaturedGuides.length(); i++) {
-         String guideJson = jFeaturedGuides.getJSONObject(i).toString();
-         GuideInfo guide = new Gson().fromJson(guideJson, GuideInfo.class);
+      TopicLeaf topicLeaf = new TopicLeaf(fields.get("title"));
+
+      for (GuideInfo guide : featuredGuides) {
          topicLeaf.addFeaturedGuide(guide);
       }
 
-
-      for (int i = 0; i < jGuides.length(); i++) {
-         String guideJson = jGuides.getJSONObject(i).toString();
-         GuideInfo guide = new Gson().fromJson(guideJson, GuideInfo.class);
+      for (GuideInfo guide : guides) {
          topicLeaf.addGuide(guide);
       }
 
-      for (int i = 0; i < jWikis.length(); i++) {
-         String wikiJson = jWikis.getJSONObject(i).toString();
-         Log.d("dozuki", wikiJson);
-         Wiki wiki = new Gson().fromJson(wikiJson, Wiki.class);
+      for (Wiki wiki : wikis) {
          topicLeaf.addWiki(wiki);
       }
 
-      topicLeaf.setSolutionsUrl(jTopic.getString("solutions_url"));
-
-      if (!jTopic.isNull("description")) {
-         topicLeaf.setDescription(jTopic.getString("description"));
-      }
+      topicLeaf.setSolutionsUrl(fields.get("solutions_url"));
 
-      if (jTopic.isNull("image")) {
-         topicLeaf.setImage(new Image());
-      } else {
-         topicLeaf.setImage(parseImage(jTopic.getJSONObject("image"), null));
+      if (description != null) {
+         topicLeaf.setDescription(description);
       }
 
-      topicLeaf.setLocale(jTopic.getString("langid"));
-      topicLeaf.setContentsRaw(jTopic.getString("contents_raw"));
-      topicLeaf.setContentsRendered(jTopic.getString("contents_rendered"));
-      topicLeaf.setTitle(jTopic.getString("display_title"));
+      topicLeaf.setImage(image);
+      topicLeaf.setLocale(fields.get("langid"));
+      topicLeaf.setContentsRaw(fields.get("contents_raw"));
+      topicLeaf.setContentsRendered(fields.get("contents_rendered"));
+      topicLeaf.setTitle(fields.get("display_title"));
 
       return topicLeaf;
    }
 
+   private static void readGuideInfos(JsonReader reader, ArrayList<GuideInfo> guides)
+    throws IOException {
+      reader.beginArray();
+      while (reader.hasNext()) {
+         guides.add(sGson.<GuideInfo>fromJson(reader, GuideInfo.class));
+      }
+      reader.endArray();
+   }
+
    /**
     * Parsing list of UserImageInfo.
     */
@@ -666,18 +1085,23 @@ public class JSONHelper {
 
    public static ArrayList<GuideInfo> parseUserFavorites(String json) {
       ArrayList<GuideInfo> result = new ArrayList<GuideInfo>();
+      JsonReader reader = new JsonReader(new StringReader(json));
 
       try {
-         JSONArray jFavorites = new JSONArray(json);
-
-         int length = jFavorites.length();
-         for (int i = 0; i < length; i++) {
-            JSONObject jGuide = jFavorites.getJSONObject(i).getJSONObject("guide");
-
-            GuideInfo guide = new Gson().fromJson(jGuide.toString(), GuideInfo.class);
-            result.add(guide);
+         reader.beginArray();
+         while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+               if (reader.nextName().equals("guide")) {
+                  result.add(sGson.<GuideInfo>fromJson(reader, GuideInfo.class));
+               } else {
+                  reader.skipValue();
+               }
+            }
+            reader.endObject();
          }
-      } catch (JSONException e) {
+         reader.endArray();
+      } catch (IOException | RuntimeException e) {
          e.printStackTrace();
       }
 
@@ -690,7 +1114,7 @@ public class JSONHelper {
 
    public static ArrayList<GuideInfo> parseGuides(String json) {
       Type guidesType = new TypeToken<Collection<GuideInfo>>() {}.getType();
-      Collection<GuideInfo> guideList = new Gson().fromJson(json, guidesType);
+      Collection<GuideInfo> guideList = sGson.fromJson(json, guidesType);
 
       return new ArrayList<GuideInfo>(guideList);
    }
@@ -0,0 +1,338 @@
+package com.dozuki.ifixit.util;
+
+import com.dozuki.ifixit.model.Document;
+import com.dozuki.ifixit.model.Flag;
+import com.dozuki.ifixit.model.Image;
+import com.dozuki.ifixit.model.Wiki;
+import com.dozuki.ifixit.model.guide.GuideInfo;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Hand written adapters for the models that are bound with Gson in bulk. Reflective
+ * binding is the slowest part of parsing a topic with hundreds of guides on older
+ * devices.
+ *
+ * The adapters read the same names, coerce values and leave the same defaults as
+ * Gson's reflective adapters. Unknown names are skipped, JSON nulls set object fields
+ * to null and leave primitives alone.
+ */
+public class ModelTypeAdapterFactory implements TypeAdapterFactory {
+   @Override
+   @SuppressWarnings("unchecked")
+   public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+      Class<? super T> rawType = type.getRawType();
+
+      if (rawType == Image.class) {
+         return (TypeAdapter<T>)new ImageAdapter();
+      } else if (rawType == GuideInfo.class) {
+         return (TypeAdapter<T>)new GuideInfoAdapter(gson.getAdapter(Image.class));
+      } else if (rawType == Wiki.class) {
+         return (TypeAdapter<T>)new WikiAdapter(gson.getAdapter(Image.class),
+          gson.getAdapter(new TypeToken<ArrayList<Flag>>() {}),
+          gson.getAdapter(new TypeToken<ArrayList<Document>>() {}));
+      }
+
+      return null;
+   }
+
+   private static class ImageAdapter extends TypeAdapter<Image> {
+      @Override
+      public Image read(JsonReader in) throws IOException {
+         if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+         }
+
+         Image image = new Image();
+
+         in.beginObject();
+         while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (in.peek() == JsonToken.NULL) {
+               in.nextNull();
+
+               if (name.equals("original")) {
+                  image.setPath(null);
+               }
+            } else if (name.equals("id")) {
+               image.setId(in.nextInt());
+            } else if (name.equals("original")) {
+               image.setPath(nextString(in));
+            } else {
+               in.skipValue();
+            }
+         }
+         in.endObject();
+
+         return image;
+      }
+
+      @Override
+      public void write(JsonWriter out, Image image) throws IOException {
+         if (image == null) {
+            out.nullValue();
+            return;
+         }
+
+         out.beginObject();
+         out.name("id").value(image.getId());
+         out.name("original").value(image.getPath());
+         out.endObject();
+      }
+   }
+
+   private static class GuideInfoAdapter extends TypeAdapter<GuideInfo> {
+      private final TypeAdapter<Image> mImageAdapter;
+
+      public GuideInfoAdapter(TypeAdapter<Image> imageAdapter) {
+         mImageAdapter = imageAdapter;
+      }
+
+      @Override
+      public GuideInfo read(JsonReader in) throws IOException {
+         if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+         }
+
+         GuideInfo guide = new GuideInfo(0);
+         // Gson never ran the field initializer so a guide without an image has none.
+         guide.mImage = null;
+
+         in.beginObject();
+         while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (in.peek() == JsonToken.NULL) {
+               in.nextNull();
+               continue;
+            }
+
+            switch (name) {
+               case "guideid": guide.mGuideid = in.nextInt(); break;
+               case "revisionid": guide.mRevisionid = in.nextInt(); break;
+               case "modified_date": guide.mModifiedDate = in.nextDouble(); break;
+               case "prereq_modified_date": guide.mPrereqModifiedDate = in.nextDouble(); break;
+               case "type": guide.mType = nextString(in); break;
+               case "category": guide.mTopic = nextString(in); break;
+               case "subject": guide.mSubject = nextString(in); break;
+               case "title": guide.mTitle = nextString(in); break;
+               case "public": guide.mPublic = nextBoolean(in); break;
+               case "flags": guide.mFlags = nextStringArray(in); break;
+               case "image": guide.mImage = mImageAdapter.read(in); break;
+               case "url": guide.mUrl = nextString(in); break;
+               case "username": guide.mAuthorName = nextString(in); break;
+               case "userid": guide.mUserid = in.nextInt(); break;
+               case "locale": guide.mLocale = nextString(in); break;
+               default: in.skipValue(); break;
+            }
+         }
+         in.endObject();
+
+         return guide;
+      }
+
+      @Override
+      public void write(JsonWriter out, GuideInfo guide) throws IOException {
+         if (guide == null) {
+            out.nullValue();
+            return;
+         }
+
+         out.beginObject();
+         out.name("guideid").value(guide.mGuideid);
+         out.name("revisionid").value(guide.mRevisionid);
+         out.name("modified_date").value(guide.mModifiedDate);
+         out.name("prereq_modified_date").value(guide.mPrereqModifiedDate);
+         out.name("type").value(guide.mType);
+         out.name("category").value(guide.mTopic);
+         out.name("subject").value(guide.mSubject);
+         out.name("title").value(guide.mTitle);
+         out.name("public").value(guide.mPublic);
+         out.name("flags");
+         writeStringArray(out, guide.mFlags);
+         out.name("image");
+         mImageAdapter.write(out, guide.mImage);
+         out.name("url").value(guide.mUrl);
+         out.name("username").value(guide.mAuthorName);
+         out.name("userid").value(guide.mUserid);
+         out.name("locale").value(guide.mLocale);
+         out.endObject();
+      }
+   }
+
+   private static class WikiAdapter extends TypeAdapter<Wiki> {
+      private final TypeAdapter<Image> mImageAdapter;
+      private final TypeAdapter<ArrayList<Flag>> mFlagsAdapter;
+      private final TypeAdapter<ArrayList<Document>> mDocumentsAdapter;
+
+      public WikiAdapter(TypeAdapter<Image> imageAdapter,
+       TypeAdapter<ArrayList<Flag>> flagsAdapter,
+       TypeAdapter<ArrayList<Document>> documentsAdapter) {
+         mImageAdapter = imageAdapter;
+         mFlagsAdapter = flagsAdapter;
+         mDocumentsAdapter = documentsAdapter;
+      }
+
+      @Override
+      public Wiki read(JsonReader in) throws IOException {
+         if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+         }
+
+         Wiki wiki = newWiki();
+
+         in.beginObject();
+         while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (in.peek() == JsonToken.NULL) {
+               in.nextNull();
+               continue;
+            }
+
+            switch (name) {
+               case "wikiid": wiki.wikiid = in.nextInt(); break;
+               case "revisionid": wiki.revisionid = in.nextInt(); break;
+               case "langid": wiki.langid = nextString(in); break;
+               case "source_revisionid": wiki.sourceRevisionid = in.nextInt(); break;
+               case "title": wiki.title = nextString(in); break;
+               case "display_title": wiki.displayTitle = nextString(in); break;
+               case "namespace": wiki.namespace = nextString(in); break;
+               case "summary": wiki.summary = nextString(in); break;
+               case "url": wiki.url = nextString(in); break;
+               case "contents_raw": wiki.contentsRaw = nextString(in); break;
+               case "contents_rendered": wiki.contentsRendered = nextString(in); break;
+               case "flags": wiki.flags = mFlagsAdapter.read(in); break;
+               case "documents": wiki.documents = mDocumentsAdapter.read(in); break;
+               case "can_edit": wiki.canEdit = nextBoolean(in); break;
+               case "table_of_contents": wiki.tableOfContents = nextBoolean(in); break;
+               case "text": wiki.text = nextString(in); break;
+               case "image": wiki.image = mImageAdapter.read(in); break;
+               default: in.skipValue(); break;
+            }
+         }
+         in.endObject();
+
+         return wiki;
+      }
+
+      /**
+       * Returns a wiki with the values Gson leaves in fields that aren't in the JSON.
+       * Wiki has no no-args constructor so Gson allocates it without running the
+       * field initializers.
+       */
+      private static Wiki newWiki() {
+         Wiki wiki = new Wiki(0);
+
+         wiki.langid = null;
+         wiki.title = null;
+         wiki.displayTitle = null;
+         wiki.namespace = null;
+         wiki.summary = null;
+         wiki.url = null;
+         wiki.contentsRaw = null;
+         wiki.contentsRendered = null;
+         wiki.flags = null;
+         wiki.documents = null;
+         wiki.text = null;
+         wiki.image = null;
+
+         return wiki;
+      }
+
+      @Override
+      public void write(JsonWriter out, Wiki wiki) throws IOException {
+         if (wiki == null) {
+            out.nullValue();
+            return;
+         }
+
+         out.beginObject();
+         out.name("wikiid").value(wiki.wikiid);
+         out.name("revisionid").value(wiki.revisionid);
+         out.name("langid").value(wiki.langid);
+         out.name("source_revisionid").value(wiki.sourceRevisionid);
+         out.name("title").value(wiki.title);
+         out.name("display_title").value(wiki.displayTitle);
+         out.name("namespace").value(wiki.namespace);
+         out.name("summary").value(wiki.summary);
+         out.name("url").value(wiki.url);
+         out.name("contents_raw").value(wiki.contentsRaw);
+         out.name("contents_rendered").value(wiki.contentsRendered);
+         out.name("flags");
+         mFlagsAdapter.write(out, wiki.flags);
+         out.name("documents");
+         mDocumentsAdapter.write(out, wiki.documents);
+         out.name("can_edit").value(wiki.canEdit);
+         out.name("table_of_contents").value(wiki.tableOfContents);
+         out.name("text").value(wiki.text);
+         out.name("image");
+         mImageAdapter.write(out, wiki.image);
+         out.endObject();
+      }
+   }
+
+   /**
+    * Reads a string the way Gson does which also accepts numbers and booleans.
+    */
+   private static String nextString(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.BOOLEAN) {
+         return Boolean.toString(in.nextBoolean());
+      }
+
+      return in.nextString();
+   }
+
+   /**
+    * Reads a boolean the way Gson does which also accepts strings.
+    */
+   private static boolean nextBoolean(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.STRING) {
+         return Boolean.parseBoolean(in.nextString());
+      }
+
+      return in.nextBoolean();
+   }
+
+   private static String[] nextStringArray(JsonReader in) throws IOException {
+      ArrayList<String> values = new ArrayList<String>();
+
+      in.beginArray();
+      while (in.hasNext()) {
+         if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            values.add(null);
+         } else {
+            values.add(nextString(in));
+         }
+      }
+      in.endArray();
+
+      return values.toArray(new String[values.size()]);
+   }
+
+   private static void writeStringArray(JsonWriter out, String[] values) throws IOException {
+      if (values == null) {
+         out.nullValue();
+         return;
+      }
+
+      out.beginArray();
+      for (String value : values) {
+         out.value(value);
+      }
+      out.endArray();
+   }
+}
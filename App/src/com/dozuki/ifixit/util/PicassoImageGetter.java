@@ -5,7 +5,8 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
+import android.os.Process;
+import android.support.v4.view.ViewCompat;
 import android.text.Html;
 import android.view.View;
 import android.widget.TextView;
@@ -13,16 +14,69 @@ import android.widget.TextView;
 import com.dozuki.ifixit.ui.guide.view.FullImageViewActivity;
 import com.squareup.picasso.Picasso;
 
+import java.lang.ref.WeakReference;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the images of HTML displayed in a TextView. Images are decoded no wider than
+ * the TextView so long wiki pages don't decode every image at full resolution, and
+ * all images that arrive within a frame share one relayout of the text.
+ *
+ * getDrawable() may be called on any thread.
+ */
 public class PicassoImageGetter implements Html.ImageGetter {
+   private static final int THREADS = 2;
+   private static final long KEEP_ALIVE_SECONDS = 30;
+
+   /**
+    * Shared by all getters so a long page can't start a load for every image at once.
+    */
+   private static final ThreadPoolExecutor sExecutor = new ThreadPoolExecutor(THREADS,
+    THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+    new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable runnable) {
+         return new Thread(new Runnable() {
+            @Override
+            public void run() {
+               Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+               runnable.run();
+            }
+         }, "PicassoImageGetter");
+      }
+   });
+
+   static {
+      sExecutor.allowCoreThreadTimeOut(true);
+   }
 
    final Resources resources;
 
    final Picasso pablo;
 
-   final TextView textView;
+   // Weak because images may arrive after the TextView is gone.
+   final WeakReference<TextView> textView;
+
+   private boolean mRelayoutScheduled;
+
+   private final Runnable mRelayout = new Runnable() {
+      @Override
+      public void run() {
+         TextView view = textView.get();
+
+         mRelayoutScheduled = false;
+
+         if (view != null) {
+            view.setText(view.getText()); // invalidate() doesn't work correctly...
+         }
+      }
+   };
 
    public PicassoImageGetter(final TextView textView, final Resources resources) {
-      this.textView = textView;
+      this.textView = new WeakReference<TextView>(textView);
       this.resources = resources;
       this.pablo = Picasso.with(textView.getContext());
    }
@@ -31,43 +85,91 @@ public class PicassoImageGetter implements Html.ImageGetter {
    public Drawable getDrawable(final String source) {
       final BitmapDrawablePlaceHolder result = new BitmapDrawablePlaceHolder();
 
-      new AsyncTask<Void, Void, Bitmap>() {
-
+      sExecutor.execute(new Runnable() {
          @Override
-         protected Bitmap doInBackground(final Void... meh) {
-            try {
-               return pablo.load(source).get();
-            } catch (Exception e) {
-               return null;
+         public void run() {
+            TextView view = textView.get();
+            final Bitmap bitmap = view == null ? null : loadBitmap(view, source);
+
+            if (bitmap == null) {
+               return;
             }
+
+            view.post(new Runnable() {
+               @Override
+               public void run() {
+                  onBitmapLoaded(source, bitmap, result);
+               }
+            });
          }
+      });
 
-         @Override
-         protected void onPostExecute(final Bitmap bitmap) {
-            try {
-               final BitmapDrawable drawable = new BitmapDrawable(resources, bitmap);
+      return result;
+   }
 
-               drawable.setBounds(0, 0, drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
+   private Bitmap loadBitmap(TextView view, String source) {
+      try {
+         return pablo.load(source)
+          .resize(getMaxWidth(view), 0)
+          .onlyScaleDown()
+          .get();
+      } catch (Exception e) {
+         return null;
+      } catch (OutOfMemoryError e) {
+         return null;
+      }
+   }
 
-               result.setDrawable(drawable);
-               result.setBounds(0, 0, drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
+   /**
+    * Returns the width available to images. Falls back to the screen width if the
+    * TextView hasn't been laid out yet.
+    */
+   private int getMaxWidth(TextView view) {
+      int width = view.getWidth() - view.getTotalPaddingLeft() -
+       view.getTotalPaddingRight();
 
-               textView.setOnClickListener(new View.OnClickListener() {
-                  @Override
-                  public void onClick(View v) {
-                     FullImageViewActivity.viewImage(textView.getContext(), source, false);
-                  }
-               });
+      if (width <= 0) {
+         width = resources.getDisplayMetrics().widthPixels;
+      }
 
-               textView.setText(textView.getText()); // invalidate() doesn't work correctly...
-            } catch (Exception e) {
-                /* nom nom nom*/
-            }
+      return width;
+   }
+
+   private void onBitmapLoaded(final String source, Bitmap bitmap,
+    BitmapDrawablePlaceHolder result) {
+      final TextView view = textView.get();
+      final BitmapDrawable drawable = new BitmapDrawable(resources, bitmap);
+
+      drawable.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
+
+      result.setDrawable(drawable);
+      result.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
+
+      if (view == null) {
+         return;
+      }
+
+      view.setOnClickListener(new View.OnClickListener() {
+         @Override
+         public void onClick(View v) {
+            FullImageViewActivity.viewImage(view.getContext(), source, false);
          }
+      });
 
-      }.execute((Void) null);
+      scheduleRelayout(view);
+   }
 
-      return result;
+   /**
+    * Sets the text again on the next frame so every image that arrived until then
+    * is laid out at once.
+    */
+   private void scheduleRelayout(TextView view) {
+      if (mRelayoutScheduled) {
+         return;
+      }
+
+      mRelayoutScheduled = true;
+      ViewCompat.postOnAnimation(view, mRelayout);
    }
 
    static class BitmapDrawablePlaceHolder extends BitmapDrawable {
@@ -85,4 +187,4 @@ public class PicassoImageGetter implements Html.ImageGetter {
       }
 
    }
-}
\ No newline at end of file
+}
@@ -17,7 +17,10 @@ public class PicassoUtils {
 
    public static RequestCreator displayImage(Picasso picasso, String url, boolean offline) {
       if (offline) {
-         return picasso.load(new File(ApiSyncAdapter.getOfflineMediaPath(url)));
+         // Offline media are named by a hash of their URL. Keying them by the URL
+         // keeps the size suffix TieredImageCache picks the tier by.
+         return picasso.load(new File(ApiSyncAdapter.getOfflineMediaPath(url)))
+          .stableKey(url);
       } else {
          return picasso.load(url);
       }
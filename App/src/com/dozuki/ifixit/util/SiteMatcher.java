@@ -0,0 +1,106 @@
+package com.dozuki.ifixit.util;
+
+import com.dozuki.ifixit.model.dozuki.Site;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the sites that match what the user typed into the site picker, best matches
+ * first. Titles are matched by substring and names by edit distance, like
+ * Site.search(), but the normalized titles and names are computed once for all
+ * queries and the edit distance gives up as soon as a name can't match.
+ */
+public class SiteMatcher {
+   private static final int TITLE_PREFIX = 0;
+   private static final int TITLE_WORD = 1;
+   private static final int TITLE_SUBSTRING = 2;
+   // Name matches rank below title matches, closest first.
+   private static final int NAME_DISTANCE = 3;
+   private static final int NO_MATCH = -1;
+
+   private static class Match implements Comparable<Match> {
+      public final Site mSite;
+      public final int mRank;
+
+      public Match(Site site, int rank) {
+         mSite = site;
+         mRank = rank;
+      }
+
+      @Override
+      public int compareTo(Match other) {
+         return mRank < other.mRank ? -1 : (mRank == other.mRank ? 0 : 1);
+      }
+   }
+
+   private final List<Site> mSites;
+   private final String[] mTitles;
+   private final EditDistance.Pattern[] mNames;
+
+   public SiteMatcher(List<Site> sites) {
+      mSites = new ArrayList<Site>(sites);
+      mTitles = new String[mSites.size()];
+      mNames = new EditDistance.Pattern[mSites.size()];
+
+      for (int i = 0; i < mSites.size(); i++) {
+         Site site = mSites.get(i);
+
+         mTitles[i] = Utils.normalizeForSearch(site.mTitle);
+         mNames[i] = new EditDistance.Pattern(Utils.normalizeForSearch(site.mName));
+      }
+   }
+
+   /**
+    * Returns the matching sites ordered by how well they match. Sites that match
+    * equally well keep their order. All sites match an empty query.
+    */
+   public List<Site> match(String query) {
+      String normalized = Utils.normalizeForSearch(query);
+
+      if (normalized.length() == 0) {
+         return new ArrayList<Site>(mSites);
+      }
+
+      List<Match> matches = new ArrayList<Match>();
+
+      for (int i = 0; i < mSites.size(); i++) {
+         int rank = getRank(i, normalized);
+
+         if (rank != NO_MATCH) {
+            matches.add(new Match(mSites.get(i), rank));
+         }
+      }
+
+      // Stable so equal matches keep the order of the site list.
+      Collections.sort(matches);
+
+      List<Site> sites = new ArrayList<Site>(matches.size());
+
+      for (Match match : matches) {
+         sites.add(match.mSite);
+      }
+
+      return sites;
+   }
+
+   private int getRank(int site, String query) {
+      String title = mTitles[site];
+
+      if (title.startsWith(query)) {
+         return TITLE_PREFIX;
+      } else if (title.contains(" " + query)) {
+         return TITLE_WORD;
+      } else if (title.contains(query)) {
+         return TITLE_SUBSTRING;
+      }
+
+      // Same threshold as Site.search().
+      EditDistance.Pattern name = mNames[site];
+      int max = name.length() / 2;
+      int distance = name.editDistance(query, max);
+
+      return distance <= max ? NAME_DISTANCE + distance : NO_MATCH;
+   }
+}
@@ -0,0 +1,199 @@
+package com.dozuki.ifixit.util;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.squareup.picasso.Cache;
+import com.squareup.picasso.LruCache;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Picasso memory cache that keeps a separate LRU for each class of image so a few
+ * full size images can't push every list thumbnail out of memory.
+ *
+ * Images are assigned a Tier by the ImageSizes suffix of their URL. Offline images
+ * are keyed by their URL too; see PicassoUtils. Anything else, e.g. local files and
+ * resources, goes to Tier.OTHER.
+ */
+public class TieredImageCache implements Cache {
+   private static final String TAG = "TieredImageCache";
+
+   public enum Tier {
+      /**
+       * Guide list images, avatars and logos.
+       */
+      LIST(30),
+
+      /**
+       * Step images and thumbnails displayed in guides and topics.
+       */
+      STEP(40),
+
+      /**
+       * Full size images displayed one at a time.
+       */
+      FULL(20),
+
+      /**
+       * Everything else.
+       */
+      OTHER(10);
+
+      /**
+       * Percentage of the total cache size.
+       */
+      public final int mPercent;
+
+      Tier(int percent) {
+         mPercent = percent;
+      }
+   }
+
+   private final Map<Tier, LruCache> mCaches = new EnumMap<Tier, LruCache>(Tier.class);
+   private final Map<String, Tier> mSizeTiers = new HashMap<String, Tier>();
+   private final int mMaxSize;
+
+   public TieredImageCache(Context context) {
+      this(calculateMaxSize(context));
+   }
+
+   public TieredImageCache(int maxSize) {
+      mMaxSize = maxSize;
+
+      for (Tier tier : Tier.values()) {
+         mCaches.put(tier, new LruCache(maxSize / 100 * tier.mPercent));
+      }
+
+      // Sizes are shared between image classes depending on the screen size so
+      // the first tier that claims a size gets it.
+      addSizeTier(ImageSizes.stepFull, Tier.FULL);
+      addSizeTier(ImageSizes.guideList, Tier.LIST);
+      addSizeTier(ImageSizes.stepList, Tier.LIST);
+      addSizeTier(ImageSizes.logo, Tier.LIST);
+      addSizeTier(ImageSizes.commentAvatar, Tier.LIST);
+      addSizeTier(ImageSizes.headerAvatar, Tier.LIST);
+      addSizeTier(ImageSizes.stepThumb, Tier.STEP);
+      addSizeTier(ImageSizes.stepMain, Tier.STEP);
+      addSizeTier(ImageSizes.topicMain, Tier.STEP);
+   }
+
+   private void addSizeTier(String size, Tier tier) {
+      if (size != null && !mSizeTiers.containsKey(size)) {
+         mSizeTiers.put(size, tier);
+      }
+   }
+
+   /**
+    * Same size as Picasso's default memory cache: about 15% of the app's heap.
+    */
+   private static int calculateMaxSize(Context context) {
+      ActivityManager am = (ActivityManager)context.getSystemService(Context.ACTIVITY_SERVICE);
+      boolean largeHeap = (context.getApplicationInfo().flags &
+       ApplicationInfo.FLAG_LARGE_HEAP) != 0;
+      int memoryClass = largeHeap ? am.getLargeMemoryClass() : am.getMemoryClass();
+
+      return 1024 * 1024 * memoryClass / 7;
+   }
+
+   /**
+    * Returns the Tier of the Picasso cache key which starts with the image's URI.
+    */
+   public Tier getTier(String key) {
+      int uriEnd = key.indexOf('\n');
+      String uri = uriEnd == -1 ? key : key.substring(0, uriEnd);
+      int extension = uri.lastIndexOf('.');
+
+      if (extension == -1 || uri.indexOf('/', extension) != -1) {
+         return Tier.OTHER;
+      }
+
+      Tier tier = mSizeTiers.get(uri.substring(extension));
+
+      return tier == null ? Tier.OTHER : tier;
+   }
+
+   @Override
+   public Bitmap get(String key) {
+      return mCaches.get(getTier(key)).get(key);
+   }
+
+   @Override
+   public void set(String key, Bitmap bitmap) {
+      LruCache cache = mCaches.get(getTier(key));
+
+      // The LRU would evict everything else in the tier to make room for an image
+      // that doesn't fit anyway.
+      if (bitmap.getRowBytes() * bitmap.getHeight() > cache.maxSize()) {
+         return;
+      }
+
+      cache.set(key, bitmap);
+   }
+
+   @Override
+   public int size() {
+      int size = 0;
+
+      for (LruCache cache : mCaches.values()) {
+         size += cache.size();
+      }
+
+      return size;
+   }
+
+   @Override
+   public int maxSize() {
+      return mMaxSize;
+   }
+
+   @Override
+   public void clear() {
+      for (LruCache cache : mCaches.values()) {
+         cache.clear();
+      }
+   }
+
+   @Override
+   public void clearKeyUri(String keyPrefix) {
+      for (LruCache cache : mCaches.values()) {
+         cache.clearKeyUri(keyPrefix);
+      }
+   }
+
+   public int hitCount(Tier tier) {
+      return mCaches.get(tier).hitCount();
+   }
+
+   public int missCount(Tier tier) {
+      return mCaches.get(tier).missCount();
+   }
+
+   public int evictionCount(Tier tier) {
+      return mCaches.get(tier).evictionCount();
+   }
+
+   public int size(Tier tier) {
+      return mCaches.get(tier).size();
+   }
+
+   public int maxSize(Tier tier) {
+      return mCaches.get(tier).maxSize();
+   }
+
+   /**
+    * Logs the hits, misses, evictions and size of every tier.
+    */
+   public void logStats() {
+      for (Tier tier : Tier.values()) {
+         Log.d(TAG, tier + ": " + hitCount(tier) + " hits, " + missCount(tier) +
+          " misses, " + evictionCount(tier) + " evictions, " + size(tier) + " of " +
+          maxSize(tier) + " bytes");
+      }
+   }
+}
@@ -0,0 +1,581 @@
+package com.dozuki.ifixit.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.dozuki.ifixit.App;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Topic names of a site indexed for autocomplete. A lookup matches the start of a
+ * name or of any word in it, ignoring case and accents, and takes two binary searches
+ * no matter how many topics the site has.
+ *
+ * The names are kept in one char array sorted by their normalized form. Every word
+ * after the first is an offset into the normalized names, sorted by the text that
+ * follows it. The index is saved in the app's files directory so it's there right
+ * away next time, and refreshing it with the latest topic list only normalizes and
+ * sorts the topics that were added.
+ */
+public class TopicIndex {
+   private static final String TAG = "TopicIndex";
+   private static final String FILE_PREFIX = "topic_index_";
+   private static final String TMP_SUFFIX = ".tmp";
+   private static final int VERSION = 1;
+   private static final long REFRESH_INTERVAL_MS = 24 * 60 * 60 * 1000;
+   // Longer names can't be written with writeUTF and aren't real topics anyway.
+   private static final int MAX_NAME_LENGTH = 1000;
+   // Ends every normalized name. Sorts before every other char and never occurs in
+   // one because normalizing drops control chars.
+   private static final char END = '\0';
+
+   /**
+    * Receives the index on the main thread.
+    */
+   public interface Listener {
+      /**
+       * @param index the current site's index or null if it doesn't have one yet
+       */
+      void onTopicIndexLoaded(TopicIndex index);
+   }
+
+   private static volatile TopicIndex sIndex;
+   private static final Handler sHandler = new Handler(Looper.getMainLooper());
+   private static final ExecutorService sExecutor =
+    Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable runnable) {
+         return new Thread(new Runnable() {
+            @Override
+            public void run() {
+               Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+               runnable.run();
+            }
+         }, "TopicIndex");
+      }
+   });
+
+   private final String mSiteName;
+   private final long mRefreshedTime;
+   // Names one after another. Name i is mNames[mNameStarts[i], mNameStarts[i + 1]).
+   private final char[] mNames;
+   private final int[] mNameStarts;
+   // Normalized names, each followed by END, in the same order as mNames.
+   private final char[] mKeys;
+   private final int[] mKeyStarts;
+   // Offsets into mKeys of words that don't start a name, sorted by the text after them.
+   private final int[] mWords;
+
+   private TopicIndex(String siteName, long refreshedTime, char[] names, int[] nameStarts,
+    char[] keys, int[] keyStarts, int[] words) {
+      mSiteName = siteName;
+      mRefreshedTime = refreshedTime;
+      mNames = names;
+      mNameStarts = nameStarts;
+      mKeys = keys;
+      mKeyStarts = keyStarts;
+      mWords = words;
+   }
+
+   private static TopicIndex empty(String siteName) {
+      return new TopicIndex(siteName, 0, new char[0], new int[] {0}, new char[0],
+       new int[] {0}, new int[0]);
+   }
+
+   /**
+    * Returns the current site's index if it's loaded.
+    */
+   public static TopicIndex get() {
+      TopicIndex index = sIndex;
+
+      return index != null && index.mSiteName.equals(getSiteName()) ? index : null;
+   }
+
+   /**
+    * Calls the listener with the current site's index, reading it from disk first if
+    * it isn't loaded yet.
+    */
+   public static void load(final Listener listener) {
+      TopicIndex index = get();
+
+      if (index != null) {
+         if (listener != null) {
+            listener.onTopicIndexLoaded(index);
+         }
+         return;
+      }
+
+      final String siteName = getSiteName();
+
+      sExecutor.execute(new Runnable() {
+         @Override
+         public void run() {
+            deliver(listener, getOrRead(siteName));
+         }
+      });
+   }
+
+   /**
+    * Brings the current site's index up to date with its full list of topics in the
+    * background and saves it.
+    */
+   public static void update(List<String> topics, final Listener listener) {
+      final String siteName = getSiteName();
+      final List<String> newTopics = new ArrayList<String>(topics);
+
+      sExecutor.execute(new Runnable() {
+         @Override
+         public void run() {
+            TopicIndex index = getOrRead(siteName);
+            long start = System.currentTimeMillis();
+
+            index = (index == null ? empty(siteName) : index).update(newTopics);
+            sIndex = index;
+
+            if (App.inDebug()) {
+               Log.i(TAG, "Indexed " + index.getCount() + " topics in " +
+                (System.currentTimeMillis() - start) + "ms");
+            }
+
+            index.write(getFile(siteName));
+            deliver(listener, index);
+         }
+      });
+   }
+
+   /**
+    * Returns true if the topic list should be downloaded again.
+    */
+   public boolean isStale() {
+      return System.currentTimeMillis() - mRefreshedTime > REFRESH_INTERVAL_MS;
+   }
+
+   public int getCount() {
+      return mNameStarts.length - 1;
+   }
+
+   /**
+    * Returns up to limit topic names that start with the query followed by those
+    * with a later word that starts with it. May be called on any thread.
+    */
+   public List<String> find(String query, int limit) {
+      String key = Utils.normalizeForSearch(query);
+      List<String> matches = new ArrayList<String>();
+
+      if (key.length() == 0) {
+         return matches;
+      }
+
+      int count = getCount();
+      int first = lowerBound(mKeyStarts, count, key);
+      int end = first;
+
+      for (; end < count && matches.size() < limit &&
+       comparePrefix(mKeyStarts[end], key) == 0; end++) {
+         matches.add(getName(end));
+      }
+
+      Set<Integer> found = new HashSet<Integer>();
+
+      for (int i = lowerBound(mWords, mWords.length, key); i < mWords.length &&
+       matches.size() < limit && comparePrefix(mWords[i], key) == 0; i++) {
+         int topic = getTopicAt(mWords[i]);
+
+         // Skip names that already matched by their start or another word.
+         if ((topic < first || topic >= end) && found.add(topic)) {
+            matches.add(getName(topic));
+         }
+      }
+
+      return matches;
+   }
+
+   /**
+    * Returns a copy with the given topics. The topics that are already indexed keep
+    * their normalized names and the order of their words.
+    */
+   private TopicIndex update(List<String> topics) {
+      int count = getCount();
+      Set<String> addedNames = new HashSet<String>();
+
+      for (String topic : topics) {
+         if (topic != null && topic.length() > 0 && topic.length() <= MAX_NAME_LENGTH) {
+            addedNames.add(topic);
+         }
+      }
+
+      boolean[] kept = new boolean[count];
+      int keptCount = 0;
+
+      for (int i = 0; i < count; i++) {
+         if (addedNames.remove(getName(i))) {
+            kept[i] = true;
+            keptCount++;
+         }
+      }
+
+      long now = System.currentTimeMillis();
+
+      if (keptCount == count && addedNames.isEmpty()) {
+         return new TopicIndex(mSiteName, now, mNames, mNameStarts, mKeys, mKeyStarts,
+          mWords);
+      }
+
+      List<Topic> added = new ArrayList<Topic>(addedNames.size());
+      for (String name : addedNames) {
+         added.add(new Topic(name, Utils.normalizeForSearch(name)));
+      }
+      Collections.sort(added);
+
+      // Merge the kept topics and the added ones, both sorted.
+      int total = keptCount + added.size();
+      StringBuilder names = new StringBuilder(mNames.length);
+      StringBuilder keys = new StringBuilder(mKeys.length);
+      int[] nameStarts = new int[total + 1];
+      int[] keyStarts = new int[total + 1];
+      int[] keptKeyStarts = new int[count];
+      int[] addedKeyStarts = new int[added.size()];
+      int oldTopic = nextKept(kept, 0);
+      int addedTopic = 0;
+
+      for (int i = 0; i < total; i++) {
+         Topic topic;
+
+         if (addedTopic == added.size() || (oldTopic < count &&
+          compare(getKey(oldTopic), getName(oldTopic), added.get(addedTopic)) < 0)) {
+            topic = new Topic(getName(oldTopic), getKey(oldTopic));
+            keptKeyStarts[oldTopic] = keys.length();
+            oldTopic = nextKept(kept, oldTopic + 1);
+         } else {
+            topic = added.get(addedTopic);
+            addedKeyStarts[addedTopic] = keys.length();
+            addedTopic++;
+         }
+
+         nameStarts[i] = names.length();
+         keyStarts[i] = keys.length();
+         names.append(topic.mName);
+         keys.append(topic.mKey).append(END);
+      }
+
+      nameStarts[total] = names.length();
+      keyStarts[total] = keys.length();
+
+      final char[] newKeys = keys.toString().toCharArray();
+
+      // Words of kept topics move with their topic but stay in order.
+      int[] keptWords = new int[mWords.length];
+      int keptWordCount = 0;
+
+      for (int word : mWords) {
+         int topic = getTopicAt(word);
+
+         if (kept[topic]) {
+            keptWords[keptWordCount++] = keptKeyStarts[topic] + word - mKeyStarts[topic];
+         }
+      }
+
+      List<Integer> addedWordList = new ArrayList<Integer>();
+
+      for (int i = 0; i < added.size(); i++) {
+         String key = added.get(i).mKey;
+
+         for (int j = 1; j < key.length(); j++) {
+            if (Character.isLetterOrDigit(key.charAt(j)) &&
+             !Character.isLetterOrDigit(key.charAt(j - 1))) {
+               addedWordList.add(addedKeyStarts[i] + j);
+            }
+         }
+      }
+
+      Integer[] addedWords = addedWordList.toArray(new Integer[addedWordList.size()]);
+      Arrays.sort(addedWords, new Comparator<Integer>() {
+         @Override
+         public int compare(Integer lhs, Integer rhs) {
+            return compareSuffixes(newKeys, lhs, rhs);
+         }
+      });
+
+      int[] words = new int[keptWordCount + addedWords.length];
+
+      for (int i = 0, k = 0, a = 0; i < words.length; i++) {
+         if (a == addedWords.length || (k < keptWordCount &&
+          compareSuffixes(newKeys, keptWords[k], addedWords[a]) < 0)) {
+            words[i] = keptWords[k++];
+         } else {
+            words[i] = addedWords[a++];
+         }
+      }
+
+      return new TopicIndex(mSiteName, now, names.toString().toCharArray(), nameStarts,
+       newKeys, keyStarts, words);
+   }
+
+   private static int nextKept(boolean[] kept, int topic) {
+      while (topic < kept.length && !kept[topic]) {
+         topic++;
+      }
+
+      return topic;
+   }
+
+   private static class Topic implements Comparable<Topic> {
+      public final String mName;
+      public final String mKey;
+
+      public Topic(String name, String key) {
+         mName = name;
+         mKey = key;
+      }
+
+      @Override
+      public int compareTo(Topic other) {
+         return compare(mKey, mName, other);
+      }
+   }
+
+   private static int compare(String key, String name, Topic topic) {
+      int result = key.compareTo(topic.mKey);
+
+      return result != 0 ? result : name.compareTo(topic.mName);
+   }
+
+   private String getName(int topic) {
+      return new String(mNames, mNameStarts[topic],
+       mNameStarts[topic + 1] - mNameStarts[topic]);
+   }
+
+   private String getKey(int topic) {
+      // Leave out END.
+      return new String(mKeys, mKeyStarts[topic],
+       mKeyStarts[topic + 1] - mKeyStarts[topic] - 1);
+   }
+
+   /**
+    * Returns the topic whose normalized name contains the offset.
+    */
+   private int getTopicAt(int offset) {
+      int low = 0;
+      int high = getCount() - 1;
+
+      while (low < high) {
+         int mid = (low + high + 1) >>> 1;
+
+         if (mKeyStarts[mid] <= offset) {
+            low = mid;
+         } else {
+            high = mid - 1;
+         }
+      }
+
+      return low;
+   }
+
+   /**
+    * Returns the index of the first of the sorted offsets whose text doesn't come
+    * before the key.
+    */
+   private int lowerBound(int[] offsets, int size, String key) {
+      int low = 0;
+      int high = size;
+
+      while (low < high) {
+         int mid = (low + high) >>> 1;
+
+         if (comparePrefix(offsets[mid], key) < 0) {
+            low = mid + 1;
+         } else {
+            high = mid;
+         }
+      }
+
+      return low;
+   }
+
+   /**
+    * Compares the text at the offset to the key, considering only as much of the text
+    * as the key is long. Returns 0 if the text starts with the key.
+    */
+   private int comparePrefix(int offset, String key) {
+      for (int i = 0; i < key.length(); i++) {
+         // Never reads past the end of the name because END differs from every char
+         // of the key.
+         char c = mKeys[offset + i];
+
+         if (c != key.charAt(i)) {
+            return c < key.charAt(i) ? -1 : 1;
+         }
+      }
+
+      return 0;
+   }
+
+   private static int compareSuffixes(char[] keys, int lhs, int rhs) {
+      for (int i = 0; ; i++) {
+         char l = keys[lhs + i];
+         char r = keys[rhs + i];
+
+         if (l != r) {
+            return l < r ? -1 : 1;
+         } else if (l == END) {
+            return 0;
+         }
+      }
+   }
+
+   private static void deliver(final Listener listener, final TopicIndex index) {
+      if (listener == null) {
+         return;
+      }
+
+      sHandler.post(new Runnable() {
+         @Override
+         public void run() {
+            listener.onTopicIndexLoaded(index);
+         }
+      });
+   }
+
+   /**
+    * Returns the site's index from memory or disk. Only called on sExecutor.
+    */
+   private static TopicIndex getOrRead(String siteName) {
+      TopicIndex index = sIndex;
+
+      if (index != null && index.mSiteName.equals(siteName)) {
+         return index;
+      }
+
+      index = read(siteName);
+
+      if (index != null) {
+         sIndex = index;
+      }
+
+      return index;
+   }
+
+   private static String getSiteName() {
+      return App.get().getSite().mName;
+   }
+
+   private static File getFile(String siteName) {
+      return new File(App.get().getFilesDir(), FILE_PREFIX + siteName);
+   }
+
+   private static TopicIndex read(String siteName) {
+      DataInputStream in = null;
+
+      try {
+         in = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(getFile(siteName))));
+
+         if (in.readInt() != VERSION) {
+            return null;
+         }
+
+         long refreshedTime = in.readLong();
+         int count = in.readInt();
+         StringBuilder names = new StringBuilder();
+         StringBuilder keys = new StringBuilder();
+         int[] nameStarts = new int[count + 1];
+         int[] keyStarts = new int[count + 1];
+
+         for (int i = 0; i < count; i++) {
+            nameStarts[i] = names.length();
+            keyStarts[i] = keys.length();
+            names.append(in.readUTF());
+            keys.append(in.readUTF()).append(END);
+         }
+
+         nameStarts[count] = names.length();
+         keyStarts[count] = keys.length();
+
+         int[] words = new int[in.readInt()];
+
+         for (int i = 0; i < words.length; i++) {
+            words[i] = in.readInt();
+         }
+
+         return new TopicIndex(siteName, refreshedTime, names.toString().toCharArray(),
+          nameStarts, keys.toString().toCharArray(), keyStarts, words);
+      } catch (FileNotFoundException e) {
+         return null;
+      } catch (IOException e) {
+         Log.e(TAG, "Failed to read topic index", e);
+         return null;
+      } finally {
+         closeQuietly(in);
+      }
+   }
+
+   private void write(File file) {
+      File tmpFile = new File(file.getPath() + TMP_SUFFIX);
+      DataOutputStream out = null;
+
+      try {
+         out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+
+         out.writeInt(VERSION);
+         out.writeLong(mRefreshedTime);
+         out.writeInt(getCount());
+
+         for (int i = 0; i < getCount(); i++) {
+            out.writeUTF(getName(i));
+            out.writeUTF(getKey(i));
+         }
+
+         out.writeInt(mWords.length);
+
+         for (int word : mWords) {
+            out.writeInt(word);
+         }
+
+         out.close();
+         out = null;
+
+         if (!tmpFile.renameTo(file)) {
+            Log.e(TAG, "Failed to rename " + tmpFile);
+         }
+      } catch (IOException e) {
+         Log.e(TAG, "Failed to write topic index", e);
+      } finally {
+         closeQuietly(out);
+         tmpFile.delete();
+      }
+   }
+
+   private static void closeQuietly(Closeable closeable) {
+      if (closeable == null) {
+         return;
+      }
+
+      try {
+         closeable.close();
+      } catch (IOException ignored) {
+         // Nothing to do.
+      }
+   }
+}
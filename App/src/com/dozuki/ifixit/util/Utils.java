@@ -22,6 +22,10 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -165,6 +169,36 @@ public class Utils {
       return builder.toString();
    }
 
+   /**
+    * Lower cases the text, strips accents and control chars, and collapses whitespace
+    * so user input can be matched against names regardless of how they're typed.
+    */
+   public static String normalizeForSearch(String text) {
+      String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+      StringBuilder normalized = new StringBuilder(decomposed.length());
+      boolean space = false;
+
+      for (int i = 0; i < decomposed.length(); i++) {
+         char c = decomposed.charAt(i);
+
+         if (Character.getType(c) == Character.NON_SPACING_MARK) {
+            continue;
+         } else if (Character.isWhitespace(c) || Character.isISOControl(c)) {
+            space = normalized.length() > 0;
+            continue;
+         }
+
+         if (space) {
+            normalized.append(' ');
+            space = false;
+         }
+
+         normalized.append(Character.toLowerCase(c));
+      }
+
+      return normalized.toString();
+   }
+
    public static CharSequence getRelativeTime(Context context, long timeInMs) {
       final long MS_IN_MINUTE = 60000;
       if (System.currentTimeMillis() - timeInMs < MS_IN_MINUTE) {
@@ -194,4 +228,32 @@ public class Utils {
    public static float pxFromDp(final Context context, final float dp) {
       return dp * context.getResources().getDisplayMetrics().density;
    }
+
+   /**
+    * Returns the hex encoded SHA-1 of the string. Used to derive collision safe file
+    * names from keys such as URLs.
+    */
+   public static String sha1(String string) {
+      try {
+         MessageDigest digest = MessageDigest.getInstance("SHA-1");
+         return toHex(digest.digest(string.getBytes("UTF-8")));
+      } catch (NoSuchAlgorithmException e) {
+         // Every Android device is required to provide SHA-1.
+         throw new RuntimeException(e);
+      } catch (UnsupportedEncodingException e) {
+         // Every Android device is required to support UTF-8.
+         throw new RuntimeException(e);
+      }
+   }
+
+   public static String toHex(byte[] bytes) {
+      StringBuilder hex = new StringBuilder(bytes.length * 2);
+
+      for (byte b : bytes) {
+         hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+         hex.append(Character.forDigit(b & 0xf, 16));
+      }
+
+      return hex.toString();
+   }
 }
@@ -6,13 +6,13 @@ import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnCancelListener;
-import android.os.AsyncTask;
 import android.util.Log;
 
 import com.dozuki.ifixit.App;
 import com.dozuki.ifixit.BuildConfig;
 import com.dozuki.ifixit.R;
 import com.dozuki.ifixit.model.auth.Authenticator;
+import com.dozuki.ifixit.model.guide.Guide;
 import com.dozuki.ifixit.model.user.User;
 import com.dozuki.ifixit.ui.BaseActivity;
 import com.dozuki.ifixit.ui.guide.view.OfflineGuidesActivity;
@@ -21,9 +21,20 @@ import com.dozuki.ifixit.util.JSONHelper;
 import com.squareup.otto.DeadEvent;
 import com.squareup.otto.Subscribe;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -37,8 +48,26 @@ import okhttp3.ResponseBody;
 public class Api {
 
    private static final int INVALID_LOGIN_CODE = 401;
+   private static final int NOT_MODIFIED_CODE = 304;
+   private static final String ETAG = "ETag";
+   private static final String LAST_MODIFIED = "Last-Modified";
    private static final String TAG = "Api";
 
+   /**
+    * Calls that change a guide. Their queries start with the guideid.
+    */
+   private static final Set<ApiEndpoint> GUIDE_WRITES = EnumSet.of(
+    ApiEndpoint.CREATE_GUIDE,
+    ApiEndpoint.EDIT_GUIDE,
+    ApiEndpoint.DELETE_GUIDE,
+    ApiEndpoint.PUBLISH_GUIDE,
+    ApiEndpoint.UNPUBLISH_GUIDE,
+    ApiEndpoint.REORDER_GUIDE_STEPS,
+    ApiEndpoint.ADD_GUIDE_STEP,
+    ApiEndpoint.UPDATE_GUIDE_STEP,
+    ApiEndpoint.DELETE_GUIDE_STEP);
+   private static final Pattern GUIDEID_QUERY = Pattern.compile("\\d+");
+
    /**
     * Pending API call. This is set when an authenticated request is performed
     * but the user is not logged in. This is then performed once the user has
@@ -47,9 +76,29 @@ public class Api {
    private static ApiCall sPendingApiCall;
 
    /**
-    * List of events that have been sent but not received by any subscribers.
+    * GETs that are being performed mapped to the identical calls that were made in the
+    * meantime. Those get the same result instead of performing the request again.
+    * Only accessed on the main thread.
+    */
+   private static final Map<String, List<ApiCall>> sInFlightCalls =
+    new HashMap<String, List<ApiCall>>();
+
+   /**
+    * Performs all API calls made through call().
     */
-   private static List<ApiEvent<?>> sDeadApiEvents;
+   private static final ApiExecutor sExecutor = new ApiExecutor();
+
+   /**
+    * Prefetches that haven't finished mapped by their in flight key so calls joining
+    * them can move them up the queue. Only accessed on the main thread.
+    */
+   private static final Map<String, ApiExecutor.Task> sPrefetchTasks =
+    new HashMap<String, ApiExecutor.Task>();
+
+   /**
+    * Delivers results to the Activity that made the ApiCall.
+    */
+   private static ApiEventRouter sEventRouter;
 
    /**
     * Returns true if the the user needs to be authenticated for the given site and endpoint.
@@ -71,6 +120,85 @@ public class Api {
          Log.w(TAG, "Missing activityid!", new Exception());
       }
 
+      setCurrentUser(apiCall);
+
+      // User needs to be logged in for an authenticated endpoint with the exception of login.
+      if (requireAuthentication(endpoint) && !App.get().isUserLoggedIn()) {
+         App.getBus().post(getUnauthorizedEvent(apiCall));
+      } else {
+         performRequest(apiCall);
+      }
+   }
+
+   /**
+    * Receives the result of a prefetch on the main thread.
+    */
+   interface PrefetchListener {
+      void onPrefetched(ApiEvent<?> result);
+   }
+
+   /**
+    * Performs the GET at PREFETCH priority without posting the result so a later
+    * call() is answered from the response cache. Responses that are still fresh
+    * aren't requested again. A call() made while the prefetch is queued joins it
+    * and moves it up to the call's priority. Returns false if the call can't be
+    * prefetched.
+    */
+   static boolean prefetch(BaseActivity activity, ApiCall apiCall,
+    final PrefetchListener listener) {
+      apiCall.mActivityid = activity.getActivityid();
+      apiCall.setPriority(ApiCall.Priority.PREFETCH);
+      setCurrentUser(apiCall);
+
+      final String inFlightKey = getInFlightKey(apiCall);
+
+      if (inFlightKey == null || sInFlightCalls.containsKey(inFlightKey) ||
+       (requireAuthentication(apiCall.mEndpoint) && !App.get().isUserLoggedIn())) {
+         return false;
+      }
+
+      sInFlightCalls.put(inFlightKey, new ArrayList<ApiCall>());
+
+      ApiExecutor.Task task = new ApiExecutor.Task(apiCall, apiCall.mPriority) {
+         @Override
+         protected ApiEvent<?> run(ApiCall call) {
+            return performPrefetch(call);
+         }
+
+         @Override
+         protected void onFinished(ApiEvent<?> result) {
+            List<ApiCall> waitingCalls = sInFlightCalls.remove(inFlightKey);
+            sPrefetchTasks.remove(inFlightKey);
+
+            if (waitingCalls != null) {
+               postCopies(result, waitingCalls);
+            }
+
+            listener.onPrefetched(result);
+         }
+      };
+
+      sPrefetchTasks.put(inFlightKey, task);
+      sExecutor.execute(task);
+
+      return true;
+   }
+
+   private static ApiEvent<?> performPrefetch(ApiCall apiCall) {
+      ApiEndpoint endpoint = apiCall.mEndpoint;
+      String url = endpoint.getUrl(apiCall.mSite, apiCall.mQuery);
+      FileCache.Entry entry = FileCache.getEntry(getCacheKey(url, apiCall.mUser));
+
+      // Stale responses are requested right away rather than revalidated because
+      // a revalidated result would be posted to the Activity.
+      if (entry != null && endpoint.mFreshness.isFresh(entry.getAge())) {
+         return performCachedApiCall(apiCall);
+      }
+
+      return performAndParseApiCall(apiCall);
+   }
+
+   private static void setCurrentUser(ApiCall apiCall) {
       apiCall.mSite = App.get().getSite();
       User user = App.get().getUser();
       apiCall.mUser = user;
@@ -81,13 +209,6 @@ public class Api {
          // user isn't associated with the auth token when the API call is performed.
          apiCall.mAuthToken = user.getAuthToken();
       }
-
-      // User needs to be logged in for an authenticated endpoint with the exception of login.
-      if (requireAuthentication(endpoint) && !App.get().isUserLoggedIn()) {
-         App.getBus().post(getUnauthorizedEvent(apiCall));
-      } else {
-         performRequest(apiCall);
-      }
    }
 
    /**
@@ -151,6 +272,9 @@ public class Api {
             event.mApiCall = result.mApiCall;
             event.mResponse = result.mResponse;
             event.mStoredResponse = result.mStoredResponse;
+            event.mCachedResponse = result.mCachedResponse;
+            event.mETag = result.mETag;
+            event.mLastModified = result.mLastModified;
          } catch (Exception e) {
             // This is meant to catch JSON and GSON parse exceptions but enumerating
             // all different types of Exceptions and putting error handling code
@@ -222,7 +346,7 @@ public class Api {
    }
 
    public static void init() {
-      sDeadApiEvents = new LinkedList<ApiEvent<?>>();
+      sEventRouter = new ApiEventRouter(App.getBus());
 
       App.getBus().register(new Object() {
          @Subscribe
@@ -234,79 +358,278 @@ public class Api {
             }
 
             if (event instanceof ApiEvent<?>) {
-               addDeadApiEvent((ApiEvent<?>)event);
-            } else if (event instanceof ApiEvent.ActivityProxy) {
-               addDeadApiEvent(((ApiEvent.ActivityProxy)event).getApiEvent());
+               sEventRouter.onDeadEvent((ApiEvent<?>)event);
             }
          }
 
       });
    }
 
-   private static void addDeadApiEvent(ApiEvent<?> apiEvent) {
-      synchronized (sDeadApiEvents) {
-         sDeadApiEvents.add(apiEvent);
-      }
+   public static ApiEventRouter getEventRouter() {
+      return sEventRouter;
    }
 
-   public static void retryDeadEvents(BaseActivity activity) {
-      synchronized (sDeadApiEvents) {
-         if (sDeadApiEvents.isEmpty()) {
+   private static void performRequest(ApiCall apiCall) {
+      final String inFlightKey = getInFlightKey(apiCall);
+
+      if (inFlightKey != null) {
+         List<ApiCall> waitingCalls = sInFlightCalls.get(inFlightKey);
+
+         if (waitingCalls != null) {
+            if (App.inDebug()) {
+               Log.i(TAG, "Joining in flight API call: " + inFlightKey);
+            }
+
+            waitingCalls.add(apiCall);
+
+            ApiExecutor.Task prefetchTask = sPrefetchTasks.get(inFlightKey);
+            if (prefetchTask != null) {
+               sExecutor.promote(prefetchTask, apiCall.mPriority);
+            }
             return;
          }
 
-         List<ApiEvent<?>> deadApiEvents = sDeadApiEvents;
-         sDeadApiEvents = new LinkedList<ApiEvent<?>>();
-         int activityid = activity.getActivityid();
-
-         // Iterate over all the dead events, firing off each one.  If it fails,
-         // it is recaught by the @Subscribe onDeadEvent, and added back to the list.
-         for (ApiEvent<?> apiEvent : deadApiEvents) {
-            // Fire the event If the activityids match, otherwise add it back
-            // to the list of dead events so we can try it again later.
-            if (activityid == apiEvent.mApiCall.mActivityid) {
-               if (BuildConfig.DEBUG) {
-                  Log.i(TAG, "Retrying dead event: " +
-                   apiEvent.getClass().getName());
-               }
+         sInFlightCalls.put(inFlightKey, new ArrayList<ApiCall>());
+      }
 
-               App.getBus().post(apiEvent);
-            } else {
-               if (BuildConfig.DEBUG) {
-                  Log.i(TAG, "Adding dead event: " + apiEvent.getClass().toString());
-               }
+      sExecutor.execute(new ApiExecutor.Task(apiCall, apiCall.mPriority) {
+         @Override
+         protected ApiEvent<?> run(ApiCall call) {
+            return performCachedApiCall(call);
+         }
 
-               sDeadApiEvents.add(apiEvent);
+         @Override
+         protected void onFinished(ApiEvent<?> result) {
+            List<ApiCall> waitingCalls = inFlightKey == null ? null :
+             sInFlightCalls.remove(inFlightKey);
+
+            postResult(result);
+
+            if (waitingCalls != null) {
+               postCopies(result, waitingCalls);
             }
          }
+      });
+   }
 
-         if (BuildConfig.DEBUG && sDeadApiEvents.size() > 0) {
-            Log.i(TAG, "Skipped " + sDeadApiEvents.size() + " dead events");
+   /**
+    * Posts the result to the calls that waited on its request. Every call gets its
+    * own model parsed from the shared response on a worker thread so one Activity
+    * changing its model doesn't change another's.
+    */
+   private static void postCopies(final ApiEvent<?> result, List<ApiCall> waitingCalls) {
+      for (ApiCall waitingCall : waitingCalls) {
+         if (result.getResult() == null) {
+            // Nothing to share besides the response and the error.
+            postResult(result.copyForApiCall(waitingCall));
+            continue;
          }
+
+         sExecutor.execute(new ApiExecutor.Task(waitingCall, waitingCall.mPriority) {
+            @Override
+            protected ApiEvent<?> run(ApiCall call) {
+               ApiEvent<?> copy = parseResult(result.copyForApiCall(call), call.mEndpoint);
+               copy.mRevalidated = result.mRevalidated;
+
+               return copy;
+            }
+
+            // The response is already here. Canceling the copy would also make
+            // cancelCalls() forget a newer call in flight with the same key.
+            @Override
+            public boolean isCancelable() {
+               return false;
+            }
+
+            @Override
+            protected void onFinished(ApiEvent<?> copy) {
+               postResult(copy);
+            }
+         });
       }
    }
 
-   private static void performRequest(ApiCall apiCall) {
-      AsyncTask<ApiCall, Void, ApiEvent<?>> as = new AsyncTask<ApiCall, Void, ApiEvent<?>>() {
+   /**
+    * Drops the Activity's GETs that haven't started yet. Called once the Activity is
+    * finishing so its requests don't hold up those of the next Activity. Identical
+    * calls made by other Activities in the meantime are performed on their own.
+    */
+   public static void cancelCalls(int activityid) {
+      List<ApiExecutor.Task> canceled = sExecutor.cancel(activityid);
+
+      if (canceled.isEmpty()) {
+         return;
+      }
+
+      if (App.inDebug()) {
+         Log.i(TAG, "Canceled " + canceled.size() + " API calls; " +
+          sExecutor.getQueueDepths());
+      }
+
+      List<ApiCall> orphanedCalls = new ArrayList<ApiCall>();
+
+      for (ApiExecutor.Task task : canceled) {
+         for (ApiCall waitingCall : removeInFlight(task)) {
+            if (waitingCall.mActivityid != activityid) {
+               orphanedCalls.add(waitingCall);
+            }
+         }
+      }
+
+      for (ApiCall apiCall : orphanedCalls) {
+         performRequest(apiCall);
+      }
+   }
+
+   /**
+    * Drops a GET that hasn't started yet, e.g. because a newer call supersedes it. Its
+    * result is never posted. Calls that joined it are performed on their own. Calls
+    * that already started finish as usual.
+    */
+   public static void cancelCall(ApiCall apiCall) {
+      String inFlightKey = getInFlightKey(apiCall);
+      List<ApiCall> waitingCalls = inFlightKey == null ? null :
+       sInFlightCalls.get(inFlightKey);
+
+      // The call joined an identical one so there is nothing to cancel but its result.
+      if (waitingCalls != null && waitingCalls.remove(apiCall)) {
+         return;
+      }
+
+      ApiExecutor.Task task = sExecutor.cancel(apiCall);
+
+      if (task == null) {
+         return;
+      }
+
+      if (App.inDebug()) {
+         Log.i(TAG, "Canceled API call; " + sExecutor.getQueueDepths());
+      }
+
+      for (ApiCall waitingCall : removeInFlight(task)) {
+         performRequest(waitingCall);
+      }
+   }
+
+   /**
+    * Forgets the canceled Task as the call in flight for its key and returns the calls
+    * that were waiting on it.
+    */
+   private static List<ApiCall> removeInFlight(ApiExecutor.Task task) {
+      String inFlightKey = getInFlightKey(task.getApiCall());
+
+      if (inFlightKey == null) {
+         return Collections.emptyList();
+      }
+
+      List<ApiCall> waitingCalls = sInFlightCalls.remove(inFlightKey);
+      sPrefetchTasks.remove(inFlightKey);
+
+      return waitingCalls == null ? Collections.<ApiCall>emptyList() : waitingCalls;
+   }
+
+   private static void postResult(ApiEvent<?> result) {
+      if (result.mApiCall.mEndpoint.mPostResults) {
+         // Always post the result despite any errors. The router only delivers it to
+         // the Activity instance that initiated the ApiCall.
+         sEventRouter.post(result);
+      }
+   }
+
+   /**
+    * Returns the key identical calls share in sInFlightCalls or null if the call
+    * must always be performed on its own. Only GETs are shared because they don't
+    * have side effects.
+    */
+   private static String getInFlightKey(ApiCall apiCall) {
+      ApiEndpoint endpoint = apiCall.mEndpoint;
+
+      if (!endpoint.mMethod.equals("GET") || apiCall.mBypassCache) {
+         return null;
+      }
+
+      String key = endpoint.name() + " " + endpoint.getUrl(apiCall.mSite, apiCall.mQuery);
+
+      if (apiCall.mUser != null) {
+         key += " " + apiCall.mUser.getUserid();
+      }
+
+      return key;
+   }
+
+   /**
+    * Refreshes the stale response for the ApiCall and posts the result again if the
+    * response changed.
+    */
+   private static void revalidate(ApiCall apiCall, final String staleResponse) {
+      sExecutor.execute(new ApiExecutor.Task(apiCall, ApiCall.Priority.BACKGROUND) {
          @Override
-         protected ApiEvent<?> doInBackground(ApiCall... call) {
-            return performAndParseApiCall(call[0]);
+         protected ApiEvent<?> run(ApiCall call) {
+            return performAndParseApiCall(call);
          }
 
          @Override
-         protected void onPostExecute(ApiEvent<?> result) {
-            if (result.mApiCall.mEndpoint.mPostResults) {
-               /**
-                * Always post the result despite any errors. This actually sends it off
-                * to BaseActivity which posts the underlying ApiEvent<?> if the ApiCall
-                * was initiated by that Activity instance.
-                */
-               App.getBus().post(new ApiEvent.ActivityProxy(result));
+         protected void onFinished(ApiEvent<?> result) {
+            // The stale response has already been displayed so errors aren't
+            // interesting and neither is an identical response.
+            if (result.hasError() || result.mStoredResponse ||
+             staleResponse.equals(result.getResponse())) {
+               return;
             }
+
+            if (App.inDebug()) {
+               Log.i(TAG, "Posting revalidated API response");
+            }
+
+            result.mRevalidated = true;
+
+            postResult(result);
          }
-      };
+      });
+   }
+
+   /**
+    * Wrapper for performAndParseApiCall() that answers GETs from the response cache
+    * according to the endpoint's Freshness while online. Stale responses within the
+    * stale-while-revalidate window are returned immediately and refreshed in the
+    * background.
+    */
+   private static ApiEvent<?> performCachedApiCall(ApiCall apiCall) {
+      ApiEndpoint endpoint = apiCall.mEndpoint;
+      ApiEndpoint.Freshness freshness = endpoint.mFreshness;
+
+      if (!endpoint.mMethod.equals("GET") || !freshness.isCacheable() ||
+       apiCall.mBypassCache || !App.get().isConnected()) {
+         return performAndParseApiCall(apiCall);
+      }
+
+      String url = endpoint.getUrl(apiCall.mSite, apiCall.mQuery);
+      FileCache.Entry entry = FileCache.getEntry(getCacheKey(url, apiCall.mUser));
+
+      if (entry == null || !freshness.isUsable(entry.getAge())) {
+         return performAndParseApiCall(apiCall);
+      }
+
+      ApiEvent<?> event = endpoint.getEvent();
+      event.setApiCall(apiCall);
+      // All GETs will be 200's if they're valid.
+      event.setCode(200).setResponse(entry.mValue).setCachedResponse(true);
+      event = parseResult(event, endpoint);
+
+      if (event.hasError()) {
+         // Whatever is in the cache is no good so try the real thing.
+         return performAndParseApiCall(apiCall);
+      }
+
+      if (App.inDebug()) {
+         Log.i(TAG, "Using cached API response, age: " + entry.getAge() + "ms");
+      }
+
+      if (!freshness.isFresh(entry.getAge())) {
+         revalidate(apiCall, entry.mValue);
+      }
 
-      as.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, apiCall);
+      return event;
    }
 
    protected static ApiEvent<?> performAndParseApiCall(ApiCall apiCall) {
@@ -328,8 +651,10 @@ public class Api {
          }
 
          if (!response.hasError() && endpoint.mMethod.equals("GET") &&
-          !response.mStoredResponse) {
-            storeResponse(url, apiCall, response.getResponse());
+          !response.mStoredResponse && !response.mCachedResponse) {
+            storeResponse(url, apiCall, response);
+         } else if (!response.hasError() && GUIDE_WRITES.contains(endpoint)) {
+            removeStoredGuide(apiCall, response);
          }
 
          return response;
@@ -373,6 +698,27 @@ public class Api {
          requestBuilder.addHeader("Authorization", "api " + apiCall.mAuthToken);
       }
 
+      /*
+        Make GETs conditional if we have a stored response so the server can skip
+        sending the body if it hasn't changed.
+       */
+      Map<String, String> validators = null;
+      if (apiCall.mEndpoint.mMethod.equals("GET")) {
+         validators = FileCache.getMetadata(getCacheKey(url, apiCall.mUser));
+      }
+
+      if (validators != null) {
+         String etag = validators.get(ETAG);
+         String lastModified = validators.get(LAST_MODIFIED);
+
+         if (etag != null) {
+            requestBuilder.header("If-None-Match", etag);
+         }
+         if (lastModified != null) {
+            requestBuilder.header("If-Modified-Since", lastModified);
+         }
+      }
+
       Request request = requestBuilder.build();
 
       try {
@@ -415,7 +761,35 @@ public class Api {
             } else {
                return getUnauthorizedEvent(apiCall);
             }
+         } else if (code == NOT_MODIFIED_CODE && validators != null) {
+            String cacheKey = getCacheKey(url, apiCall.mUser);
+            FileCache.Entry storedEntry = FileCache.getEntry(cacheKey);
+
+            if (storedEntry == null) {
+               // The stored response went away since the request was made. It's gone
+               // for good now so this time the request won't be conditional.
+               return getResponse(url, event, apiCall);
+            }
+
+            if (App.inDebug()) {
+               Log.i(TAG, "Stored API response not modified");
+            }
+
+            // The stored response is still valid. Treat it as if it was just fetched
+            // and parse it as usual.
+            FileCache.touch(cacheKey);
+
+            event.mETag = storedEntry.getMetadata(ETAG);
+            event.mLastModified = storedEntry.getMetadata(LAST_MODIFIED);
+
+            return event
+             .setCode(200)
+             .setResponse(storedEntry.mValue)
+             .setCachedResponse(true);
          } else {
+            event.mETag = response.header(ETAG);
+            event.mLastModified = response.header(LAST_MODIFIED);
+
             return event
              .setCode(code)
              .setResponse(bodyString);
@@ -470,6 +844,44 @@ public class Api {
       }
    }
 
+   /**
+    * Drops the stored GUIDE response of the guide a write changed and the TOPIC
+    * responses of its old and new topic. They would otherwise be shown unchanged
+    * until their Freshness runs out.
+    */
+   private static void removeStoredGuide(ApiCall apiCall, ApiEvent<?> response) {
+      Set<String> topics = new HashSet<String>();
+      Object result = response.getResult();
+      Matcher guideid = GUIDEID_QUERY.matcher(apiCall.mQuery);
+
+      if (result instanceof Guide) {
+         topics.add(((Guide)result).getTopic());
+      }
+
+      if (guideid.lookingAt()) {
+         String guideKey = getCacheKey(ApiEndpoint.GUIDE.getUrl(apiCall.mSite,
+          guideid.group()), apiCall.mUser);
+         String storedGuide = FileCache.get(guideKey);
+
+         if (storedGuide != null) {
+            try {
+               topics.add(new JSONObject(storedGuide).optString("category", null));
+            } catch (JSONException e) {
+               Log.w(TAG, "Cannot read topic of stored guide", e);
+            }
+         }
+
+         FileCache.remove(guideKey);
+      }
+
+      for (String topic : topics) {
+         if (topic != null) {
+            FileCache.remove(getCacheKey(ApiEndpoint.TOPIC.getUrl(apiCall.mSite, topic),
+             apiCall.mUser));
+         }
+      }
+   }
+
    private static String getStoredResponse(String url, ApiCall apiCall) {
       long startTime = System.currentTimeMillis();
 
@@ -483,10 +895,13 @@ public class Api {
       return response;
    }
 
-   private static void storeResponse(String url, ApiCall apiCall, String response) {
+   private static void storeResponse(String url, ApiCall apiCall, ApiEvent<?> response) {
       long startTime = System.currentTimeMillis();
+      Map<String, String> validators = new HashMap<String, String>();
+      validators.put(ETAG, response.mETag);
+      validators.put(LAST_MODIFIED, response.mLastModified);
 
-      FileCache.set(getCacheKey(url, apiCall.mUser), response);
+      FileCache.set(getCacheKey(url, apiCall.mUser), response.getResponse(), validators);
 
       if (App.inDebug()) {
          long endTime = System.currentTimeMillis();
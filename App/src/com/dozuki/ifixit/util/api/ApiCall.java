@@ -33,6 +33,26 @@ public class ApiCall {
    public static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
    public static final MediaType MEDIA = MediaType.parse("application/octet-stream");
 
+   /**
+    * Order in which queued ApiCalls are performed.
+    */
+   public enum Priority {
+      /**
+       * The user is waiting on the result.
+       */
+      INTERACTIVE,
+
+      /**
+       * The result might be needed soon.
+       */
+      PREFETCH,
+
+      /**
+       * Nobody is waiting on the result e.g. refreshing stale responses.
+       */
+      BACKGROUND
+   }
+
    protected ApiEndpoint mEndpoint;
    protected String mQuery;
    protected RequestBody mRequestBody;
@@ -43,6 +63,14 @@ public class ApiCall {
    protected User mUser;
    protected int mActivityid = -1;
 
+   /**
+    * True to always hit the network even if the endpoint allows serving cached
+    * responses.
+    */
+   protected boolean mBypassCache;
+
+   protected Priority mPriority = Priority.INTERACTIVE;
+
    public ApiCall(ApiEndpoint endpoint, String query) {
       this(endpoint, query, null);
    }
@@ -79,6 +107,25 @@ public class ApiCall {
       return mQuery;
    }
 
+   /**
+    * Ignores the endpoint's Freshness so the user gets the latest content e.g. when
+    * explicitly reloading.
+    */
+   public ApiCall bypassCache() {
+      mBypassCache = true;
+
+      return this;
+   }
+
+   /**
+    * Sets the priority of the call relative to other queued calls.
+    */
+   public ApiCall setPriority(Priority priority) {
+      mPriority = priority;
+
+      return this;
+   }
+
    /**
     * ApiCall Factory methods.
     */
@@ -353,16 +400,27 @@ public class ApiCall {
       return new ApiCall(ApiEndpoint.USER_EMBEDS, query);
    }
 
-   public static ApiCall uploadImage(String filePath, String extraInformation) {
-      File file = new File(filePath);
-      return new ApiCall(ApiEndpoint.UPLOAD_IMAGE, filePath, RequestBody.create(MEDIA, file), extraInformation,
-       filePath);
+   /**
+    * Uploads the prepared image file under the file name of the image the user
+    * picked at filePath.
+    */
+   public static ApiCall uploadImage(String filePath, File upload, String extraInformation,
+    ProgressRequestBody.Listener listener) {
+      return new ApiCall(ApiEndpoint.UPLOAD_IMAGE, filePath,
+       new ProgressRequestBody(MEDIA, upload, listener), extraInformation, filePath);
+   }
+
+   /**
+    * Returns the file the call uploads or null if it doesn't upload one.
+    */
+   public File getUploadFile() {
+      return mRequestBody instanceof ProgressRequestBody ?
+       ((ProgressRequestBody)mRequestBody).getFile() : null;
    }
 
-   public static ApiCall uploadImageToStep(String filePath) {
-      File file = new File(filePath);
-      return new ApiCall(ApiEndpoint.UPLOAD_STEP_IMAGE, filePath, RequestBody.create(MEDIA, file), null,
-       filePath);
+   public static ApiCall uploadImageToStep(String filePath, File upload) {
+      return new ApiCall(ApiEndpoint.UPLOAD_STEP_IMAGE, filePath,
+       new ProgressRequestBody(MEDIA, upload, null), null, filePath);
    }
 
    public static ApiCall deleteImage(List<Integer> deleteList) {
@@ -5,25 +5,49 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
 
 import com.dozuki.ifixit.App;
+import com.dozuki.ifixit.model.Image;
+import com.dozuki.ifixit.model.Item;
 import com.dozuki.ifixit.model.dozuki.Site;
 import com.dozuki.ifixit.model.guide.Guide;
 import com.dozuki.ifixit.model.guide.GuideInfo;
+import com.dozuki.ifixit.model.guide.GuideStep;
+import com.dozuki.ifixit.model.guide.StepLine;
+import com.dozuki.ifixit.model.search.GuideSearchResult;
+import com.dozuki.ifixit.model.search.SearchResults;
 import com.dozuki.ifixit.model.user.User;
 import com.dozuki.ifixit.util.JSONHelper;
 import com.google.gson.Gson;
 
+import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Offline guides are stored normalized into guides, steps, lines, images and media
+ * so lists and progress counters can be read without parsing any JSON. Only the
+ * parts of a guide that are rarely displayed (tools, parts, documents, comments and
+ * video/embed data) are kept as the JSON fragments the API returned.
+ */
 public class ApiDatabase extends SQLiteOpenHelper {
    public static final String TAG = "ApiDatabase";
-   private static final int DATABASE_VERSION = 1;
+   private static final int DATABASE_VERSION = 5;
    private static final String DATABASE_NAME = "api";
 
    private static ApiDatabase sDatabase;
@@ -44,33 +68,165 @@ public class ApiDatabase extends SQLiteOpenHelper {
       mContext = context;
    }
 
+   @Override
+   public void onOpen(SQLiteDatabase db) {
+      super.onOpen(db);
+
+      // Lets the offline guide list read while a sync writes.
+      if (!db.isReadOnly()) {
+         db.enableWriteAheadLogging();
+      }
+   }
+
    @Override
    public void onCreate(SQLiteDatabase db) {
+      createOfflineGuideTables(db);
+      db.execSQL(CREATE_OFFLINE_MEDIA_TABLE);
+      db.execSQL(CREATE_OFFLINE_MEDIA_URL_INDEX);
+      db.execSQL(CREATE_OFFLINE_GUIDE_SEARCH_TABLE);
+   }
+
+   private void createOfflineGuideTables(SQLiteDatabase db) {
       db.execSQL(CREATE_OFFLINE_GUIDES_TABLE);
+      db.execSQL(CREATE_OFFLINE_GUIDE_STEPS_TABLE);
+      db.execSQL(CREATE_OFFLINE_STEP_LINES_TABLE);
+      db.execSQL(CREATE_OFFLINE_STEP_IMAGES_TABLE);
+      db.execSQL(createGuideIndex(TABLE_OFFLINE_GUIDE_STEPS));
+      db.execSQL(createGuideIndex(TABLE_OFFLINE_STEP_LINES));
+      db.execSQL(createGuideIndex(TABLE_OFFLINE_STEP_IMAGES));
    }
 
    @Override
    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-      db.execSQL("DROP TABLE IF EXISTS " + TABLE_OFFLINE_GUIDES);
+      if (oldVersion < 2) {
+         // Media references are filled in for existing guides by the next sync.
+         db.execSQL("ALTER TABLE " + TABLE_OFFLINE_GUIDES + " ADD COLUMN " +
+          KEY_MEDIA_RECORDED + " INTEGER DEFAULT 0");
+         db.execSQL(CREATE_OFFLINE_MEDIA_TABLE);
+         db.execSQL(CREATE_OFFLINE_MEDIA_URL_INDEX);
+      }
+
+      if (oldVersion < 3) {
+         // Existing guides have no step revisions so the next update of each one
+         // checks all of its media.
+         db.execSQL("ALTER TABLE " + TABLE_OFFLINE_GUIDES + " ADD COLUMN " +
+          KEY_REVISIONID + " INTEGER");
+      }
 
-      // Create tables again.
-      // TODO: This isn't a viable solution when the DB is upgraded.
-      onCreate(db);
+      if (oldVersion < 4) {
+         migrateGuideJson(db);
+      }
+
+      if (oldVersion < 5) {
+         db.execSQL(CREATE_OFFLINE_GUIDE_SEARCH_TABLE);
+         indexGuides(db, "1", new String[0]);
+      }
    }
 
    /**
-    * Stores the JSON for guides stored offline.
+    * Moves guides stored as JSON blobs over to the normalized tables. Guides that
+    * can't be parsed are dropped and downloaded again by the next sync.
+    */
+   private void migrateGuideJson(SQLiteDatabase db) {
+      final String OLD_GUIDES_TABLE = TABLE_OFFLINE_GUIDES + "_json";
+      final int SITEID_INDEX = 0;
+      final int USERID_INDEX = 1;
+      final int MEDIA_TOTAL_INDEX = 2;
+      final int MEDIA_DOWNLOADED_INDEX = 3;
+      final int MEDIA_RECORDED_INDEX = 4;
+      final int GUIDE_INFO_JSON_INDEX = 5;
+      final int GUIDE_JSON_INDEX = 6;
+
+      db.execSQL("ALTER TABLE " + TABLE_OFFLINE_GUIDES + " RENAME TO " + OLD_GUIDES_TABLE);
+      // Only revisions were stored for steps before. They are recreated below.
+      db.execSQL("DROP TABLE IF EXISTS " + TABLE_OFFLINE_GUIDE_STEPS);
+      createOfflineGuideTables(db);
+
+      Cursor cursor = db.query(
+       OLD_GUIDES_TABLE,
+       new String[] {KEY_SITEID, KEY_USERID, KEY_MEDIA_TOTAL, KEY_MEDIA_DOWNLOADED,
+        KEY_MEDIA_RECORDED, "guide_info_json", "guide_json"},
+       null,
+       null,
+       null,
+       null,
+       KEY_ID + " ASC");
+
+      Gson gson = JSONHelper.getGson();
+
+      while (cursor.moveToNext()) {
+         try {
+            String guideJson = cursor.getString(GUIDE_JSON_INDEX);
+            Guide guide = JSONHelper.parseGuide(guideJson);
+            GuideInfo guideInfo = gson.fromJson(cursor.getString(GUIDE_INFO_JSON_INDEX),
+             GuideInfo.class);
+
+            ContentValues values = getGuideValues(guide, guideInfo, new JSONObject(guideJson));
+            values.put(KEY_SITEID, cursor.getInt(SITEID_INDEX));
+            values.put(KEY_USERID, cursor.getInt(USERID_INDEX));
+            values.put(KEY_MEDIA_TOTAL, cursor.getInt(MEDIA_TOTAL_INDEX));
+            values.put(KEY_MEDIA_DOWNLOADED, cursor.getInt(MEDIA_DOWNLOADED_INDEX));
+            values.put(KEY_MEDIA_RECORDED, cursor.getInt(MEDIA_RECORDED_INDEX));
+
+            db.insert(TABLE_OFFLINE_GUIDES, null, values);
+            setSteps(db, getGuideParams(cursor.getInt(SITEID_INDEX),
+             cursor.getInt(USERID_INDEX), guide.getGuideid()), guide,
+             new JSONObject(guideJson).getJSONArray("steps"));
+         } catch (Exception e) {
+            App.sendException(TAG, "Cannot migrate stored guide!", e);
+         }
+      }
+
+      cursor.close();
+
+      db.execSQL("DROP TABLE " + OLD_GUIDES_TABLE);
+   }
+
+   /**
+    * One row for each offline guide with everything needed to list it and the
+    * guide level fields of the full guide.
     */
    private static final String TABLE_OFFLINE_GUIDES = "offline_guides";
    private static final String KEY_ID = "_id";
    private static final String KEY_SITEID = "siteid";
    private static final String KEY_USERID = "userid";
    private static final String KEY_GUIDEID = "guideid";
+   // Modified date including prereq changes. Used to find stale guides.
    private static final String KEY_MODIFIED_DATE = "modified_date";
    private static final String KEY_MEDIA_TOTAL = "media_total";
    private static final String KEY_MEDIA_DOWNLOADED = "media_downloaded";
-   private static final String KEY_GUIDE_INFO_JSON = "guide_info_json";
-   private static final String KEY_GUIDE_JSON = "guide_json";
+   // True once the guide's media are recorded in TABLE_OFFLINE_MEDIA.
+   private static final String KEY_MEDIA_RECORDED = "media_recorded";
+   private static final String KEY_REVISIONID = "revisionid";
+   private static final String KEY_TITLE = "title";
+   private static final String KEY_TYPE = "type";
+   private static final String KEY_TOPIC = "topic";
+   private static final String KEY_SUBJECT = "subject";
+   private static final String KEY_PUBLIC = "public";
+   private static final String KEY_FLAGS = "flags";
+   private static final String KEY_URL = "url";
+   private static final String KEY_LOCALE = "locale";
+   private static final String KEY_AUTHOR = "author";
+   private static final String KEY_AUTHOR_USERID = "author_userid";
+   private static final String KEY_IMAGEID = "imageid";
+   private static final String KEY_IMAGE_PATH = "image_path";
+   private static final String KEY_GUIDE_MODIFIED_DATE = "guide_modified_date";
+   private static final String KEY_PREREQ_MODIFIED_DATE = "prereq_modified_date";
+   private static final String KEY_TIME_REQUIRED = "time_required";
+   private static final String KEY_DIFFICULTY = "difficulty";
+   private static final String KEY_INTRODUCTION_RAW = "introduction_raw";
+   private static final String KEY_INTRODUCTION_RENDERED = "introduction_rendered";
+   private static final String KEY_SUMMARY = "summary";
+   private static final String KEY_CONCLUSION = "conclusion";
+   private static final String KEY_COMPLETED = "completed";
+   private static final String KEY_FAVORITED = "favorited";
+   private static final String KEY_CAN_EDIT = "can_edit";
+   private static final String KEY_PATROL_THRESHOLD = "patrol_threshold";
+   private static final String KEY_FEATURED_DOCUMENTID = "featured_documentid";
+   private static final String KEY_TOOLS_JSON = "tools_json";
+   private static final String KEY_PARTS_JSON = "parts_json";
+   private static final String KEY_DOCUMENTS_JSON = "documents_json";
+   private static final String KEY_COMMENTS_JSON = "comments_json";
 
    private static final String CREATE_OFFLINE_GUIDES_TABLE =
     "CREATE TABLE " + TABLE_OFFLINE_GUIDES + "(" +
@@ -81,8 +237,37 @@ public class ApiDatabase extends SQLiteOpenHelper {
        KEY_MODIFIED_DATE + " REAL, " +
        KEY_MEDIA_TOTAL + " INTEGER, " +
        KEY_MEDIA_DOWNLOADED + " INTEGER, " +
-       KEY_GUIDE_JSON + " TEXT, " +
-       KEY_GUIDE_INFO_JSON + " TEXT, " +
+       KEY_MEDIA_RECORDED + " INTEGER DEFAULT 0, " +
+       KEY_REVISIONID + " INTEGER, " +
+       KEY_TITLE + " TEXT, " +
+       KEY_TYPE + " TEXT, " +
+       KEY_TOPIC + " TEXT, " +
+       KEY_SUBJECT + " TEXT, " +
+       KEY_PUBLIC + " INTEGER, " +
+       KEY_FLAGS + " TEXT, " +
+       KEY_URL + " TEXT, " +
+       KEY_LOCALE + " TEXT, " +
+       KEY_AUTHOR + " TEXT, " +
+       KEY_AUTHOR_USERID + " INTEGER, " +
+       KEY_IMAGEID + " INTEGER, " +
+       KEY_IMAGE_PATH + " TEXT, " +
+       KEY_GUIDE_MODIFIED_DATE + " REAL, " +
+       KEY_PREREQ_MODIFIED_DATE + " REAL, " +
+       KEY_TIME_REQUIRED + " TEXT, " +
+       KEY_DIFFICULTY + " TEXT, " +
+       KEY_INTRODUCTION_RAW + " TEXT, " +
+       KEY_INTRODUCTION_RENDERED + " TEXT, " +
+       KEY_SUMMARY + " TEXT, " +
+       KEY_CONCLUSION + " TEXT, " +
+       KEY_COMPLETED + " INTEGER, " +
+       KEY_FAVORITED + " INTEGER, " +
+       KEY_CAN_EDIT + " INTEGER, " +
+       KEY_PATROL_THRESHOLD + " INTEGER, " +
+       KEY_FEATURED_DOCUMENTID + " INTEGER, " +
+       KEY_TOOLS_JSON + " TEXT, " +
+       KEY_PARTS_JSON + " TEXT, " +
+       KEY_DOCUMENTS_JSON + " TEXT, " +
+       KEY_COMMENTS_JSON + " TEXT, " +
        "UNIQUE (" +
           KEY_SITEID + ", " +
           KEY_USERID + ", " +
@@ -90,13 +275,172 @@ public class ApiDatabase extends SQLiteOpenHelper {
        ") ON CONFLICT REPLACE " +
     ")";
 
+   private static final String[] GUIDE_INFO_COLUMNS = new String[] {
+      KEY_GUIDEID, KEY_REVISIONID, KEY_GUIDE_MODIFIED_DATE, KEY_PREREQ_MODIFIED_DATE,
+      KEY_TYPE, KEY_TOPIC, KEY_SUBJECT, KEY_TITLE, KEY_PUBLIC, KEY_FLAGS, KEY_IMAGEID,
+      KEY_IMAGE_PATH, KEY_URL, KEY_AUTHOR, KEY_AUTHOR_USERID, KEY_LOCALE
+   };
+
+   private static final String[] GUIDE_COLUMNS = new String[] {
+      KEY_SITEID, KEY_USERID, KEY_GUIDEID, KEY_REVISIONID, KEY_TITLE, KEY_TYPE, KEY_TOPIC,
+      KEY_SUBJECT, KEY_PUBLIC, KEY_AUTHOR, KEY_IMAGEID, KEY_IMAGE_PATH,
+      KEY_GUIDE_MODIFIED_DATE, KEY_PREREQ_MODIFIED_DATE, KEY_TIME_REQUIRED, KEY_DIFFICULTY,
+      KEY_INTRODUCTION_RAW, KEY_INTRODUCTION_RENDERED, KEY_SUMMARY, KEY_CONCLUSION,
+      KEY_COMPLETED, KEY_FAVORITED, KEY_CAN_EDIT, KEY_PATROL_THRESHOLD,
+      KEY_FEATURED_DOCUMENTID, KEY_TOOLS_JSON, KEY_PARTS_JSON, KEY_DOCUMENTS_JSON,
+      KEY_COMMENTS_JSON
+   };
+
+   /**
+    * Steps of the offline guides. Each step's revision is used to tell which steps
+    * changed when a guide is updated.
+    */
+   private static final String TABLE_OFFLINE_GUIDE_STEPS = "offline_guide_steps";
+   private static final String KEY_STEPID = "stepid";
+   // Guide the step originates from. Differs from KEY_GUIDEID for prereq steps.
+   private static final String KEY_STEP_GUIDEID = "step_guideid";
+   private static final String KEY_ORDERBY = "orderby";
+   private static final String KEY_STEP_NUMBER = "step_number";
+   private static final String KEY_MEDIA_TYPE = "media_type";
+   // The step's "media" object for videos and embeds. Images are in their own table.
+   private static final String KEY_MEDIA_JSON = "media_json";
+
+   private static final String CREATE_OFFLINE_GUIDE_STEPS_TABLE =
+    "CREATE TABLE " + TABLE_OFFLINE_GUIDE_STEPS + "(" +
+       KEY_ID + " INTEGER PRIMARY KEY, " +
+       KEY_SITEID + " INTEGER, " +
+       KEY_USERID + " INTEGER, " +
+       KEY_GUIDEID + " INTEGER, " +
+       KEY_STEPID + " INTEGER, " +
+       KEY_STEP_GUIDEID + " INTEGER, " +
+       KEY_REVISIONID + " INTEGER, " +
+       KEY_ORDERBY + " INTEGER, " +
+       KEY_STEP_NUMBER + " INTEGER, " +
+       KEY_TITLE + " TEXT, " +
+       KEY_MEDIA_TYPE + " TEXT, " +
+       KEY_MEDIA_JSON + " TEXT, " +
+       KEY_COMMENTS_JSON + " TEXT, " +
+       "UNIQUE (" +
+          KEY_SITEID + ", " +
+          KEY_USERID + ", " +
+          KEY_GUIDEID + ", " +
+          KEY_STEPID +
+       ") ON CONFLICT REPLACE " +
+    ")";
+
+   private static final String TABLE_OFFLINE_STEP_LINES = "offline_step_lines";
+   private static final String KEY_POSITION = "position";
+   private static final String KEY_LINEID = "lineid";
+   private static final String KEY_BULLET = "bullet";
+   private static final String KEY_LEVEL = "level";
+   private static final String KEY_TEXT_RAW = "text_raw";
+   private static final String KEY_TEXT_RENDERED = "text_rendered";
+
+   private static final String CREATE_OFFLINE_STEP_LINES_TABLE =
+    "CREATE TABLE " + TABLE_OFFLINE_STEP_LINES + "(" +
+       KEY_ID + " INTEGER PRIMARY KEY, " +
+       KEY_SITEID + " INTEGER, " +
+       KEY_USERID + " INTEGER, " +
+       KEY_GUIDEID + " INTEGER, " +
+       KEY_STEPID + " INTEGER, " +
+       KEY_POSITION + " INTEGER, " +
+       KEY_LINEID + " INTEGER, " +
+       KEY_BULLET + " TEXT, " +
+       KEY_LEVEL + " INTEGER, " +
+       KEY_TEXT_RAW + " TEXT, " +
+       KEY_TEXT_RENDERED + " TEXT" +
+    ")";
+
+   private static final String TABLE_OFFLINE_STEP_IMAGES = "offline_step_images";
+
+   private static final String CREATE_OFFLINE_STEP_IMAGES_TABLE =
+    "CREATE TABLE " + TABLE_OFFLINE_STEP_IMAGES + "(" +
+       KEY_ID + " INTEGER PRIMARY KEY, " +
+       KEY_SITEID + " INTEGER, " +
+       KEY_USERID + " INTEGER, " +
+       KEY_GUIDEID + " INTEGER, " +
+       KEY_STEPID + " INTEGER, " +
+       KEY_POSITION + " INTEGER, " +
+       KEY_IMAGEID + " INTEGER, " +
+       KEY_IMAGE_PATH + " TEXT" +
+    ")";
+
+   private static String createGuideIndex(String table) {
+      return "CREATE INDEX " + table + "_guide ON " + table + "(" +
+       KEY_SITEID + ", " + KEY_USERID + ", " + KEY_GUIDEID + ")";
+   }
+
+   /**
+    * References from offline guides to the media they use. A medium is orphaned once
+    * no guide of any user references it.
+    */
+   private static final String TABLE_OFFLINE_MEDIA = "offline_media";
+
+   private static final String CREATE_OFFLINE_MEDIA_TABLE =
+    "CREATE TABLE " + TABLE_OFFLINE_MEDIA + "(" +
+       KEY_ID + " INTEGER PRIMARY KEY, " +
+       KEY_SITEID + " INTEGER, " +
+       KEY_USERID + " INTEGER, " +
+       KEY_GUIDEID + " INTEGER, " +
+       KEY_URL + " TEXT, " +
+       "UNIQUE (" +
+          KEY_SITEID + ", " +
+          KEY_USERID + ", " +
+          KEY_GUIDEID + ", " +
+          KEY_URL +
+       ") ON CONFLICT IGNORE " +
+    ")";
+
+   private static final String CREATE_OFFLINE_MEDIA_URL_INDEX =
+    "CREATE INDEX " + TABLE_OFFLINE_MEDIA + "_" + KEY_URL + " ON " +
+    TABLE_OFFLINE_MEDIA + "(" + KEY_URL + ")";
+
+   /**
+    * Full text index of the offline guides so they can be searched without a
+    * connection. There is one document per guide whose docid is the guide's KEY_ID.
+    * FTS3 because it's available on every supported release.
+    */
+   private static final String TABLE_OFFLINE_GUIDE_SEARCH = "offline_guide_search";
+   private static final String KEY_STEP_TITLES = "step_titles";
+   private static final String KEY_STEP_TEXT = "step_text";
+
+   private static final String CREATE_OFFLINE_GUIDE_SEARCH_TABLE =
+    "CREATE VIRTUAL TABLE " + TABLE_OFFLINE_GUIDE_SEARCH + " USING fts3(" +
+       KEY_TITLE + ", " +
+       KEY_SUBJECT + ", " +
+       KEY_STEP_TITLES + ", " +
+       KEY_STEP_TEXT +
+    ")";
+
+   // How much a hit counts in each column of TABLE_OFFLINE_GUIDE_SEARCH.
+   private static final double[] SEARCH_COLUMN_WEIGHTS = {10.0, 5.0, 2.0, 1.0};
+
+   private static final String GUIDE_WHERE =
+    KEY_SITEID + " = ? AND " +
+    KEY_USERID + " = ? AND " +
+    KEY_GUIDEID + " = ?";
+
+   private static final String STEP_WHERE = GUIDE_WHERE + " AND " + KEY_STEPID + " = ?";
+
+   private static String[] getGuideParams(int siteid, int userid, int guideid) {
+      return new String[] {siteid + "", userid + "", guideid + ""};
+   }
+
+   private static String[] getGuideParams(Site site, User user, int guideid) {
+      return getGuideParams(site.mSiteid, user.getUserid(), guideid);
+   }
+
    public ArrayList<GuideMediaProgress> getOfflineGuides(Site site, User user) {
-      final int GUIDE_JSON_INDEX = 0;
-      final int TOTAL_MEDIA_INDEX = 1;
-      final int MEDIA_DOWNLOADED_INDEX = 2;
+      String[] columns = new String[GUIDE_INFO_COLUMNS.length + 2];
+      final int TOTAL_MEDIA_INDEX = GUIDE_INFO_COLUMNS.length;
+      final int MEDIA_DOWNLOADED_INDEX = TOTAL_MEDIA_INDEX + 1;
+      System.arraycopy(GUIDE_INFO_COLUMNS, 0, columns, 0, GUIDE_INFO_COLUMNS.length);
+      columns[TOTAL_MEDIA_INDEX] = KEY_MEDIA_TOTAL;
+      columns[MEDIA_DOWNLOADED_INDEX] = KEY_MEDIA_DOWNLOADED;
+
       Cursor cursor = getReadableDatabase().query(
        TABLE_OFFLINE_GUIDES,
-       new String[] {KEY_GUIDE_INFO_JSON, KEY_MEDIA_TOTAL, KEY_MEDIA_DOWNLOADED},
+       columns,
        KEY_SITEID + " = ? AND " +
        KEY_USERID + " = ?",
        new String[] {site.mSiteid + "", user.getUserid() + ""},
@@ -109,7 +453,7 @@ public class ApiDatabase extends SQLiteOpenHelper {
 
       while (cursor.moveToNext()) {
          guideMedia.add(new GuideMediaProgress(
-            getGuideInfoFromCursor(cursor, GUIDE_JSON_INDEX, false),
+            getGuideInfoFromCursor(cursor),
             cursor.getInt(TOTAL_MEDIA_INDEX),
             cursor.getInt(MEDIA_DOWNLOADED_INDEX)
          ));
@@ -121,19 +465,171 @@ public class ApiDatabase extends SQLiteOpenHelper {
    }
 
    public Guide getOfflineGuide(Site site, User user, int guideid) {
-      Cursor cursor = getReadableDatabase().query(
+      SQLiteDatabase db = getReadableDatabase();
+      Cursor cursor = db.query(
        TABLE_OFFLINE_GUIDES,
-       new String[] {KEY_GUIDE_JSON},
-       KEY_SITEID + " = ? AND " +
-       KEY_USERID + " = ? AND " +
-       KEY_GUIDEID + " = ? ",
-       new String[] {site.mSiteid + "", user.getUserid() + "", guideid + ""},
+       GUIDE_COLUMNS,
+       GUIDE_WHERE,
+       getGuideParams(site, user, guideid),
        null,
        null,
        null
       );
       cursor.moveToFirst();
-      return getGuideFromCursor(cursor, 0, true);
+      return getGuideFromCursor(db, cursor, true);
+   }
+
+   /**
+    * Returns a page of the user's offline guides that contain every word of the query,
+    * best matches first. The last word also matches longer words so results keep up
+    * with typing. Hits in titles count more than hits in steps and hits in few guides
+    * count more than hits in many.
+    */
+   public SearchResults searchOfflineGuides(Site site, User user, String query, int limit,
+    int offset) {
+      final int ID_INDEX = 0;
+      final int MATCHINFO_INDEX = 1;
+      SearchResults results = new SearchResults();
+      String match = getMatchQuery(query);
+
+      results.mQuery = query;
+      results.mLimit = limit;
+      results.mOffset = offset;
+
+      if (match == null) {
+         return results;
+      }
+
+      SQLiteDatabase db = getReadableDatabase();
+      Cursor cursor = db.rawQuery(
+       "SELECT g." + KEY_ID + ", matchinfo(" + TABLE_OFFLINE_GUIDE_SEARCH + ") FROM " +
+        TABLE_OFFLINE_GUIDE_SEARCH + " JOIN " + TABLE_OFFLINE_GUIDES + " g ON g." +
+        KEY_ID + " = " + TABLE_OFFLINE_GUIDE_SEARCH + ".docid " +
+       "WHERE " + TABLE_OFFLINE_GUIDE_SEARCH + " MATCH ? AND " +
+        "g." + KEY_SITEID + " = ? AND " +
+        "g." + KEY_USERID + " = ?",
+       new String[] {match, site.mSiteid + "", user.getUserid() + ""});
+
+      final List<Long> ids = new ArrayList<Long>(cursor.getCount());
+      final Map<Long, Double> scores = new HashMap<Long, Double>();
+
+      while (cursor.moveToNext()) {
+         long id = cursor.getLong(ID_INDEX);
+
+         ids.add(id);
+         scores.put(id, getSearchScore(cursor.getBlob(MATCHINFO_INDEX)));
+      }
+
+      cursor.close();
+
+      // Best score first, most recently saved first among equal scores.
+      Collections.sort(ids, new Comparator<Long>() {
+         @Override
+         public int compare(Long a, Long b) {
+            int byScore = Double.compare(scores.get(b), scores.get(a));
+            return byScore != 0 ? byScore : b.compareTo(a);
+         }
+      });
+
+      results.mTotalResults = ids.size();
+      results.mHasMoreResults = offset + limit < ids.size();
+
+      if (offset >= ids.size()) {
+         return results;
+      }
+
+      List<Long> pageIds = ids.subList(offset, Math.min(offset + limit, ids.size()));
+      Map<Long, GuideInfo> guides = getGuideInfos(db, pageIds);
+
+      for (Long id : pageIds) {
+         GuideInfo guideInfo = guides.get(id);
+
+         if (guideInfo != null) {
+            results.mResults.add(new GuideSearchResult(guideInfo));
+         }
+      }
+
+      return results;
+   }
+
+   /**
+    * Turns what the user typed into an FTS query that requires every word. Returns
+    * null if there are no words. Everything other than letters and digits is dropped
+    * so the query can't use FTS syntax.
+    */
+   private static String getMatchQuery(String query) {
+      StringBuilder match = new StringBuilder();
+
+      for (String word : query.toLowerCase(Locale.US).split("[^\\p{L}\\p{N}]+")) {
+         if (word.length() > 0) {
+            match.append(word).append(' ');
+         }
+      }
+
+      if (match.length() == 0) {
+         return null;
+      }
+
+      // Prefix match on the last word.
+      match.setCharAt(match.length() - 1, '*');
+
+      return match.toString();
+   }
+
+   /**
+    * Returns the score of a search result from its default ("pcx") matchinfo: the
+    * number of phrases and columns followed by, for each phrase and column, the
+    * hits in this row, the hits in all rows and the number of rows with hits.
+    */
+   private static double getSearchScore(byte[] matchinfo) {
+      IntBuffer info = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder())
+       .asIntBuffer();
+      int phrases = info.get(0);
+      int columns = info.get(1);
+      double score = 0;
+
+      for (int phrase = 0; phrase < phrases; phrase++) {
+         for (int column = 0; column < columns; column++) {
+            int index = 2 + (phrase * columns + column) * 3;
+            int hitsThisRow = info.get(index);
+            int hitsAllRows = info.get(index + 1);
+
+            if (hitsThisRow > 0) {
+               score += SEARCH_COLUMN_WEIGHTS[column] * hitsThisRow / hitsAllRows;
+            }
+         }
+      }
+
+      return score;
+   }
+
+   /**
+    * Returns a map of KEY_ID to GuideInfo for the given offline guide rows.
+    */
+   private Map<Long, GuideInfo> getGuideInfos(SQLiteDatabase db, List<Long> ids) {
+      String[] columns = new String[GUIDE_INFO_COLUMNS.length + 1];
+      final int ID_INDEX = GUIDE_INFO_COLUMNS.length;
+      System.arraycopy(GUIDE_INFO_COLUMNS, 0, columns, 0, GUIDE_INFO_COLUMNS.length);
+      columns[ID_INDEX] = KEY_ID;
+
+      Cursor cursor = db.query(
+       TABLE_OFFLINE_GUIDES,
+       columns,
+       KEY_ID + " IN (" + TextUtils.join(",", ids) + ")",
+       null,
+       null,
+       null,
+       null);
+
+      Map<Long, GuideInfo> guides = new HashMap<Long, GuideInfo>();
+
+      while (cursor.moveToNext()) {
+         guides.put(cursor.getLong(ID_INDEX), getGuideInfoFromCursor(cursor));
+      }
+
+      cursor.close();
+
+      return guides;
    }
 
    /**
@@ -144,7 +640,7 @@ public class ApiDatabase extends SQLiteOpenHelper {
 
       Cursor cursor = db.query(
        TABLE_OFFLINE_GUIDES,
-       new String[] {KEY_GUIDE_JSON},
+       GUIDE_COLUMNS,
        KEY_SITEID + " = ? AND " +
        KEY_USERID + " = ? AND " +
        KEY_MEDIA_DOWNLOADED + " != " + KEY_MEDIA_TOTAL,
@@ -153,17 +649,17 @@ public class ApiDatabase extends SQLiteOpenHelper {
        null,
        KEY_ID + " ASC");
 
-      return getGuidesFromCursor(cursor, 0);
+      return getGuidesFromCursor(db, cursor);
    }
 
    /**
-    * Returns a list of Guides from the cursor with json at the provided index.
+    * Returns a list of Guides from the cursor over GUIDE_COLUMNS.
     */
-   private ArrayList<Guide> getGuidesFromCursor(Cursor cursor, int jsonIndex) {
+   private ArrayList<Guide> getGuidesFromCursor(SQLiteDatabase db, Cursor cursor) {
       ArrayList<Guide> guides = new ArrayList<Guide>();
 
       while (cursor.moveToNext()) {
-         guides.add(getGuideFromCursor(cursor, jsonIndex, false));
+         guides.add(getGuideFromCursor(db, cursor, false));
       }
 
       cursor.close();
@@ -172,16 +668,59 @@ public class ApiDatabase extends SQLiteOpenHelper {
    }
 
    /**
-    * Creates a guide from the cursor with JSON found at the provided index.
+    * Creates a guide from the cursor over GUIDE_COLUMNS and reads its steps.
     */
-   private Guide getGuideFromCursor(Cursor cursor, int jsonIndex, boolean closeCursor) {
+   private Guide getGuideFromCursor(SQLiteDatabase db, Cursor cursor, boolean closeCursor) {
       try {
          // Invalid cursor position.
          if (cursor.isBeforeFirst() || cursor.isAfterLast()) {
             return null;
          }
-         String guideJson = cursor.getString(jsonIndex);
-         return JSONHelper.parseGuide(guideJson);
+
+         Guide guide = new Guide(getInt(cursor, KEY_GUIDEID));
+         guide.setRevisionid(getInteger(cursor, KEY_REVISIONID));
+         guide.setTitle(getString(cursor, KEY_TITLE));
+         guide.setType(getString(cursor, KEY_TYPE));
+         guide.setTopic(getString(cursor, KEY_TOPIC));
+         guide.setSubject(getString(cursor, KEY_SUBJECT));
+         guide.setPublic(getBoolean(cursor, KEY_PUBLIC));
+         guide.setAuthor(getString(cursor, KEY_AUTHOR));
+         guide.setModifiedDate(getDouble(cursor, KEY_GUIDE_MODIFIED_DATE));
+         guide.setPrereqModifiedDate(getDouble(cursor, KEY_PREREQ_MODIFIED_DATE));
+         guide.setTimeRequired(getString(cursor, KEY_TIME_REQUIRED));
+         guide.setDifficulty(getString(cursor, KEY_DIFFICULTY));
+         guide.setIntroductionRaw(getString(cursor, KEY_INTRODUCTION_RAW));
+         guide.setIntroductionRendered(getString(cursor, KEY_INTRODUCTION_RENDERED));
+         guide.setSummary(getString(cursor, KEY_SUMMARY));
+         guide.setConclusion(getString(cursor, KEY_CONCLUSION));
+         guide.setCompleted(getBoolean(cursor, KEY_COMPLETED));
+         guide.setFavorited(getBoolean(cursor, KEY_FAVORITED));
+         guide.setCanEdit(getBoolean(cursor, KEY_CAN_EDIT));
+         guide.setPatrolThreshold(getInt(cursor, KEY_PATROL_THRESHOLD));
+         guide.setFeaturedDocument(getInt(cursor, KEY_FEATURED_DOCUMENTID));
+
+         if (getInteger(cursor, KEY_IMAGEID) != null) {
+            guide.setIntroImage(new Image(getInt(cursor, KEY_IMAGEID),
+             getString(cursor, KEY_IMAGE_PATH)));
+         }
+
+         for (Item tool : JSONHelper.parseTools(new JSONArray(getString(cursor, KEY_TOOLS_JSON)))) {
+            guide.addTool(tool);
+         }
+
+         for (Item part : JSONHelper.parseParts(new JSONArray(getString(cursor, KEY_PARTS_JSON)))) {
+            guide.addPart(part);
+         }
+
+         guide.setDocuments(JSONHelper.parseDocuments(
+          new JSONArray(getString(cursor, KEY_DOCUMENTS_JSON))));
+         guide.setComments(JSONHelper.parseComments(
+          new JSONArray(getString(cursor, KEY_COMMENTS_JSON))));
+
+         readSteps(db, getGuideParams(getInt(cursor, KEY_SITEID), getInt(cursor, KEY_USERID),
+          guide.getGuideid()), guide);
+
+         return guide;
       } catch (JSONException e) {
          App.sendException(TAG, "Cannot parse stored guide!", e);
          return null;
@@ -193,24 +732,137 @@ public class ApiDatabase extends SQLiteOpenHelper {
    }
 
    /**
-    * Creates a GuideInfo from the cursor with JSON found at the provided index.
+    * Adds the guide's steps along with their lines and images to the guide.
     */
-   private GuideInfo getGuideInfoFromCursor(Cursor cursor, int jsonIndex, boolean closeCursor) {
+   private void readSteps(SQLiteDatabase db, String[] guideParams, Guide guide)
+    throws JSONException {
+      Map<Integer, GuideStep> steps = new HashMap<Integer, GuideStep>();
+
+      Cursor cursor = db.query(
+       TABLE_OFFLINE_GUIDE_STEPS,
+       new String[] {KEY_STEPID, KEY_STEP_GUIDEID, KEY_REVISIONID, KEY_ORDERBY,
+        KEY_STEP_NUMBER, KEY_TITLE, KEY_MEDIA_JSON, KEY_COMMENTS_JSON},
+       GUIDE_WHERE,
+       guideParams,
+       null,
+       null,
+       KEY_STEP_NUMBER + " ASC");
+
       try {
-         // Invalid cursor position.
-         if (cursor.isBeforeFirst() || cursor.isAfterLast()) {
-            return null;
+         while (cursor.moveToNext()) {
+            GuideStep step = new GuideStep(getInt(cursor, KEY_STEP_NUMBER));
+            step.setStepid(getInt(cursor, KEY_STEPID));
+            step.setGuideid(getInt(cursor, KEY_STEP_GUIDEID));
+            step.setRevisionid(getInteger(cursor, KEY_REVISIONID));
+            step.setOrderby(getInt(cursor, KEY_ORDERBY));
+            step.setTitle(getString(cursor, KEY_TITLE));
+
+            String mediaJson = getString(cursor, KEY_MEDIA_JSON);
+            if (mediaJson != null) {
+               JSONHelper.parseStepMedia(step, new JSONObject(mediaJson));
+            }
+
+            String commentsJson = getString(cursor, KEY_COMMENTS_JSON);
+            if (commentsJson != null) {
+               step.setComments(JSONHelper.parseComments(new JSONArray(commentsJson)));
+            }
+
+            steps.put(step.getStepid(), step);
+            guide.addStep(step);
          }
-         String guideJson = cursor.getString(jsonIndex);
-         return new Gson().fromJson(guideJson, GuideInfo.class);
-      } catch (Exception e) {
-         App.sendException(TAG, "Cannot parse stored guide!", e);
-         return null;
       } finally {
-         if (closeCursor) {
-            cursor.close();
+         cursor.close();
+      }
+
+      cursor = db.query(
+       TABLE_OFFLINE_STEP_LINES,
+       new String[] {KEY_STEPID, KEY_LINEID, KEY_BULLET, KEY_LEVEL, KEY_TEXT_RAW,
+        KEY_TEXT_RENDERED},
+       GUIDE_WHERE,
+       guideParams,
+       null,
+       null,
+       KEY_POSITION + " ASC");
+
+      while (cursor.moveToNext()) {
+         GuideStep step = steps.get(getInt(cursor, KEY_STEPID));
+
+         if (step != null) {
+            step.addLine(new StepLine(getInt(cursor, KEY_LINEID), getString(cursor, KEY_BULLET),
+             getInt(cursor, KEY_LEVEL), getString(cursor, KEY_TEXT_RAW),
+             getString(cursor, KEY_TEXT_RENDERED)));
          }
       }
+
+      cursor.close();
+
+      cursor = db.query(
+       TABLE_OFFLINE_STEP_IMAGES,
+       new String[] {KEY_STEPID, KEY_IMAGEID, KEY_IMAGE_PATH},
+       GUIDE_WHERE,
+       guideParams,
+       null,
+       null,
+       KEY_POSITION + " ASC");
+
+      while (cursor.moveToNext()) {
+         GuideStep step = steps.get(getInt(cursor, KEY_STEPID));
+
+         if (step != null) {
+            step.addImage(new Image(getInt(cursor, KEY_IMAGEID),
+             getString(cursor, KEY_IMAGE_PATH)));
+         }
+      }
+
+      cursor.close();
+   }
+
+   /**
+    * Creates a GuideInfo from the cursor over GUIDE_INFO_COLUMNS.
+    */
+   private GuideInfo getGuideInfoFromCursor(Cursor cursor) {
+      GuideInfo guideInfo = new GuideInfo(getInt(cursor, KEY_GUIDEID));
+      Integer revisionid = getInteger(cursor, KEY_REVISIONID);
+      String flags = getString(cursor, KEY_FLAGS);
+
+      guideInfo.mRevisionid = revisionid == null ? 0 : revisionid;
+      guideInfo.mModifiedDate = getDouble(cursor, KEY_GUIDE_MODIFIED_DATE);
+      guideInfo.mPrereqModifiedDate = getDouble(cursor, KEY_PREREQ_MODIFIED_DATE);
+      guideInfo.mType = getString(cursor, KEY_TYPE);
+      guideInfo.mTopic = getString(cursor, KEY_TOPIC);
+      guideInfo.mSubject = getString(cursor, KEY_SUBJECT);
+      guideInfo.mTitle = getString(cursor, KEY_TITLE);
+      guideInfo.mPublic = getBoolean(cursor, KEY_PUBLIC);
+      guideInfo.mFlags = flags == null ? null : TextUtils.split(flags, ",");
+      guideInfo.mUrl = getString(cursor, KEY_URL);
+      guideInfo.mAuthorName = getString(cursor, KEY_AUTHOR);
+      guideInfo.mUserid = getInt(cursor, KEY_AUTHOR_USERID);
+      guideInfo.mLocale = getString(cursor, KEY_LOCALE);
+      guideInfo.mImage = getInteger(cursor, KEY_IMAGEID) == null ? null :
+       new Image(getInt(cursor, KEY_IMAGEID), getString(cursor, KEY_IMAGE_PATH));
+
+      return guideInfo;
+   }
+
+   private static String getString(Cursor cursor, String column) {
+      return cursor.getString(cursor.getColumnIndexOrThrow(column));
+   }
+
+   private static int getInt(Cursor cursor, String column) {
+      return cursor.getInt(cursor.getColumnIndexOrThrow(column));
+   }
+
+   private static Integer getInteger(Cursor cursor, String column) {
+      int index = cursor.getColumnIndexOrThrow(column);
+      return cursor.isNull(index) ? null : cursor.getInt(index);
+   }
+
+   private static double getDouble(Cursor cursor, String column) {
+      return cursor.getDouble(cursor.getColumnIndexOrThrow(column));
+   }
+
+   private static boolean getBoolean(Cursor cursor, String column) {
+      return getInt(cursor, column) != 0;
    }
 
    /**
@@ -245,6 +897,229 @@ public class ApiDatabase extends SQLiteOpenHelper {
       return modifiedDates;
    }
 
+   /**
+    * Returns a map of guideid to revisionid for the user's offline guides that have
+    * one. Guides stored before revisions were recorded are left out.
+    */
+   public Map<Integer, Integer> getGuideRevisions(Site site, User user) {
+      final int GUIDEID_INDEX = 0;
+      final int REVISIONID_INDEX = 1;
+
+      Cursor cursor = getReadableDatabase().query(
+       TABLE_OFFLINE_GUIDES,
+       new String[] {KEY_GUIDEID, KEY_REVISIONID},
+       KEY_SITEID + " = ? AND " +
+       KEY_USERID + " = ? AND " +
+       KEY_REVISIONID + " IS NOT NULL",
+       new String[] {site.mSiteid + "", user.getUserid() + ""},
+       null,
+       null,
+       null);
+
+      Map<Integer, Integer> revisions = new HashMap<Integer, Integer>();
+
+      while (cursor.moveToNext()) {
+         revisions.put(cursor.getInt(GUIDEID_INDEX), cursor.getInt(REVISIONID_INDEX));
+      }
+
+      cursor.close();
+
+      return revisions;
+   }
+
+   /**
+    * Returns the stepids of the guide's steps that have the same revision as the
+    * stored copy. Returns an empty set if the stored copy is missing media because
+    * nothing is known about which of its media are present in that case.
+    */
+   public Set<Integer> getUnchangedSteps(Site site, User user, Guide guide) {
+      Set<Integer> unchangedSteps = new HashSet<Integer>();
+      SQLiteDatabase db = getReadableDatabase();
+      String[] params = getGuideParams(site, user, guide.getGuideid());
+
+      Cursor cursor = db.query(
+       TABLE_OFFLINE_GUIDES,
+       new String[] {KEY_ID},
+       GUIDE_WHERE + " AND " +
+       KEY_MEDIA_DOWNLOADED + " = " + KEY_MEDIA_TOTAL,
+       params,
+       null,
+       null,
+       null);
+
+      boolean complete = cursor.moveToFirst();
+      cursor.close();
+
+      if (!complete) {
+         return unchangedSteps;
+      }
+
+      Map<Integer, Integer> storedRevisions = getStepRevisions(db, params);
+
+      for (GuideStep step : guide.getSteps()) {
+         Integer revisionid = step.getRevisionid();
+
+         if (revisionid != null && revisionid.equals(storedRevisions.get(step.getStepid()))) {
+            unchangedSteps.add(step.getStepid());
+         }
+      }
+
+      return unchangedSteps;
+   }
+
+   private Map<Integer, Integer> getStepRevisions(SQLiteDatabase db, String[] guideParams) {
+      final int STEPID_INDEX = 0;
+      final int REVISIONID_INDEX = 1;
+
+      Cursor cursor = db.query(
+       TABLE_OFFLINE_GUIDE_STEPS,
+       new String[] {KEY_STEPID, KEY_REVISIONID},
+       GUIDE_WHERE,
+       guideParams,
+       null,
+       null,
+       null);
+
+      Map<Integer, Integer> revisions = new HashMap<Integer, Integer>();
+
+      while (cursor.moveToNext()) {
+         revisions.put(cursor.getInt(STEPID_INDEX), cursor.getInt(REVISIONID_INDEX));
+      }
+
+      cursor.close();
+
+      return revisions;
+   }
+
+   /**
+    * Brings the stored steps in line with the guide. Steps whose revision didn't
+    * change only get their position and comments updated. Lines and images are only
+    * rewritten for steps that were added or revised.
+    */
+   private void setSteps(SQLiteDatabase db, String[] guideParams, Guide guide,
+    JSONArray jSteps) throws JSONException {
+      Map<Integer, Integer> storedRevisions = getStepRevisions(db, guideParams);
+      ArrayList<GuideStep> steps = guide.getSteps();
+
+      for (int i = 0; i < steps.size(); i++) {
+         GuideStep step = steps.get(i);
+         JSONObject jStep = jSteps.getJSONObject(i);
+         JSONArray jComments = jStep.optJSONArray("comments");
+         Integer revisionid = step.getRevisionid();
+         Integer storedRevisionid = storedRevisions.remove(step.getStepid());
+         String[] stepParams = new String[] {guideParams[0], guideParams[1],
+          guideParams[2], step.getStepid() + ""};
+
+         ContentValues values = new ContentValues();
+         values.put(KEY_ORDERBY, step.getOrderby());
+         values.put(KEY_STEP_NUMBER, step.getStepNum());
+         values.put(KEY_COMMENTS_JSON, jComments == null ? null : jComments.toString());
+
+         if (revisionid != null && revisionid.equals(storedRevisionid)) {
+            db.update(TABLE_OFFLINE_GUIDE_STEPS, values, STEP_WHERE, stepParams);
+            continue;
+         }
+
+         JSONObject jMedia = jStep.optJSONObject("media");
+         boolean hasMediaJson = jMedia != null && (step.hasVideo() || step.hasEmbed());
+
+         values.put(KEY_SITEID, guideParams[0]);
+         values.put(KEY_USERID, guideParams[1]);
+         values.put(KEY_GUIDEID, guideParams[2]);
+         values.put(KEY_STEPID, step.getStepid());
+         values.put(KEY_STEP_GUIDEID, step.getGuideid());
+         values.put(KEY_REVISIONID, revisionid);
+         values.put(KEY_TITLE, step.getTitle());
+         values.put(KEY_MEDIA_TYPE, step.type());
+         values.put(KEY_MEDIA_JSON, hasMediaJson ? jMedia.toString() : null);
+         db.insertWithOnConflict(TABLE_OFFLINE_GUIDE_STEPS, null, values,
+          SQLiteDatabase.CONFLICT_REPLACE);
+
+         db.delete(TABLE_OFFLINE_STEP_LINES, STEP_WHERE, stepParams);
+         db.delete(TABLE_OFFLINE_STEP_IMAGES, STEP_WHERE, stepParams);
+
+         ContentValues childValues = new ContentValues();
+         childValues.put(KEY_SITEID, guideParams[0]);
+         childValues.put(KEY_USERID, guideParams[1]);
+         childValues.put(KEY_GUIDEID, guideParams[2]);
+         childValues.put(KEY_STEPID, step.getStepid());
+
+         ArrayList<StepLine> lines = step.getLines();
+         for (int position = 0; position < lines.size(); position++) {
+            StepLine line = lines.get(position);
+            ContentValues lineValues = new ContentValues(childValues);
+            lineValues.put(KEY_POSITION, position);
+            lineValues.put(KEY_LINEID, line.getLineId());
+            lineValues.put(KEY_BULLET, line.getColor());
+            lineValues.put(KEY_LEVEL, line.getLevel());
+            lineValues.put(KEY_TEXT_RAW, line.getTextRaw());
+            lineValues.put(KEY_TEXT_RENDERED, line.getTextRendered());
+            db.insert(TABLE_OFFLINE_STEP_LINES, null, lineValues);
+         }
+
+         ArrayList<Image> images = step.getImages();
+         for (int position = 0; position < images.size(); position++) {
+            Image image = images.get(position);
+            ContentValues imageValues = new ContentValues(childValues);
+            imageValues.put(KEY_POSITION, position);
+            imageValues.put(KEY_IMAGEID, image.getId());
+            imageValues.put(KEY_IMAGE_PATH, image.getPath());
+            db.insert(TABLE_OFFLINE_STEP_IMAGES, null, imageValues);
+         }
+      }
+
+      // Whatever is left was removed from the guide.
+      for (Integer stepid : storedRevisions.keySet()) {
+         String[] stepParams = new String[] {guideParams[0], guideParams[1],
+          guideParams[2], stepid + ""};
+
+         db.delete(TABLE_OFFLINE_GUIDE_STEPS, STEP_WHERE, stepParams);
+         db.delete(TABLE_OFFLINE_STEP_LINES, STEP_WHERE, stepParams);
+         db.delete(TABLE_OFFLINE_STEP_IMAGES, STEP_WHERE, stepParams);
+      }
+   }
+
+   /**
+    * Adds the guides matching the where clause over TABLE_OFFLINE_GUIDES to the search
+    * index using the titles and text stored for their steps.
+    */
+   private static void indexGuides(SQLiteDatabase db, String where, String[] params) {
+      db.execSQL(
+       "INSERT INTO " + TABLE_OFFLINE_GUIDE_SEARCH + "(docid, " +
+          KEY_TITLE + ", " +
+          KEY_SUBJECT + ", " +
+          KEY_STEP_TITLES + ", " +
+          KEY_STEP_TEXT +
+       ") SELECT " +
+          "g." + KEY_ID + ", " +
+          "g." + KEY_TITLE + ", " +
+          "g." + KEY_SUBJECT + ", " +
+          "(SELECT group_concat(s." + KEY_TITLE + ", ' ') FROM " +
+           TABLE_OFFLINE_GUIDE_STEPS + " s WHERE " + sameGuide("s", "g") + "), " +
+          "(SELECT group_concat(l." + KEY_TEXT_RAW + ", ' ') FROM " +
+           TABLE_OFFLINE_STEP_LINES + " l WHERE " + sameGuide("l", "g") + ") " +
+       "FROM " + TABLE_OFFLINE_GUIDES + " g WHERE " + where,
+       params);
+   }
+
+   /**
+    * Removes the guides matching the where clause over TABLE_OFFLINE_GUIDES from the
+    * search index.
+    */
+   private static void unindexGuides(SQLiteDatabase db, String where, String[] params) {
+      db.delete(
+       TABLE_OFFLINE_GUIDE_SEARCH,
+       "docid IN (SELECT " + KEY_ID + " FROM " + TABLE_OFFLINE_GUIDES + " WHERE " +
+        where + ")",
+       params);
+   }
+
+   private static String sameGuide(String table, String otherTable) {
+      return table + "." + KEY_SITEID + " = " + otherTable + "." + KEY_SITEID + " AND " +
+       table + "." + KEY_USERID + " = " + otherTable + "." + KEY_USERID + " AND " +
+       table + "." + KEY_GUIDEID + " = " + otherTable + "." + KEY_GUIDEID;
+   }
+
    public void deleteGuides(Site site, User user, Set<Integer> guideids) {
       if (guideids.isEmpty()) {
          return;
@@ -269,35 +1144,223 @@ public class ApiDatabase extends SQLiteOpenHelper {
       where.deleteCharAt(where.length() - 1); // Delete trailing comma.
       where.append(")");
 
-      getWritableDatabase().delete(
-       TABLE_OFFLINE_GUIDES,
-       where.toString(),
-       params
-      );
+      SQLiteDatabase db = getWritableDatabase();
+      db.beginTransaction();
+      try {
+         unindexGuides(db, where.toString(), params);
+         db.delete(TABLE_OFFLINE_GUIDES, where.toString(), params);
+         db.delete(TABLE_OFFLINE_GUIDE_STEPS, where.toString(), params);
+         db.delete(TABLE_OFFLINE_STEP_LINES, where.toString(), params);
+         db.delete(TABLE_OFFLINE_STEP_IMAGES, where.toString(), params);
+         db.delete(TABLE_OFFLINE_MEDIA, where.toString(), params);
+         db.setTransactionSuccessful();
+      } finally {
+         db.endTransaction();
+      }
    }
 
    public void saveGuide(Site site, User user, ApiEvent<Guide> guideEvent,
-    GuideInfo guideInfo, int imagesTotal, int imagesDownloaded) {
+    GuideInfo guideInfo, Collection<String> media, int imagesTotal, int imagesDownloaded) {
       if (guideEvent == null) {
          throw new IllegalArgumentException("ApiEvent<Guide> guideEvent");
       }
       SQLiteDatabase db = getWritableDatabase();
-      ContentValues values = new ContentValues();
       Guide guide = guideEvent.getResult();
+      JSONObject jGuide;
+      ContentValues values;
+
+      try {
+         jGuide = new JSONObject(guideEvent.getResponse());
+         values = getGuideValues(guide, guideInfo, jGuide);
+      } catch (JSONException e) {
+         // The response was already parsed successfully so this shouldn't happen.
+         throw new IllegalArgumentException("Cannot parse guide response", e);
+      }
 
       values.put(KEY_SITEID, site.mSiteid);
       values.put(KEY_USERID, user.getUserid());
-      values.put(KEY_GUIDEID, guide.getGuideid());
-      values.put(KEY_MODIFIED_DATE, guide.getAbsoluteModifiedDate());
       values.put(KEY_MEDIA_TOTAL, imagesTotal);
       values.put(KEY_MEDIA_DOWNLOADED, imagesDownloaded);
-      values.put(KEY_GUIDE_INFO_JSON, new Gson().toJson(guideInfo));
-      values.put(KEY_GUIDE_JSON, guideEvent.getResponse());
+      values.put(KEY_MEDIA_RECORDED, 1);
 
-      db.insertWithOnConflict(TABLE_OFFLINE_GUIDES, null, values,
-       SQLiteDatabase.CONFLICT_REPLACE);
+      String[] guideParams = getGuideParams(site, user, guide.getGuideid());
+
+      db.beginTransaction();
+      try {
+         // Replacing the row changes its KEY_ID so the old document goes first.
+         unindexGuides(db, GUIDE_WHERE, guideParams);
+         db.insertWithOnConflict(TABLE_OFFLINE_GUIDES, null, values,
+          SQLiteDatabase.CONFLICT_REPLACE);
+         setGuideMedia(db, site, user, guide.getGuideid(), media);
+         setSteps(db, guideParams, guide, jGuide.getJSONArray("steps"));
+         indexGuides(db, GUIDE_WHERE, guideParams);
+         db.setTransactionSuccessful();
+      } catch (JSONException e) {
+         throw new IllegalArgumentException("Cannot parse guide steps", e);
+      } finally {
+         db.endTransaction();
+      }
    }
 
+   /**
+    * Returns the values of the guide's row except for the site, user and progress
+    * columns.
+    */
+   private static ContentValues getGuideValues(Guide guide, GuideInfo guideInfo,
+    JSONObject jGuide) throws JSONException {
+      ContentValues values = new ContentValues();
+      Image introImage = guide.getIntroImage();
+
+      values.put(KEY_GUIDEID, guide.getGuideid());
+      values.put(KEY_MODIFIED_DATE, guide.getAbsoluteModifiedDate());
+      values.put(KEY_REVISIONID, guide.getRevisionid());
+      values.put(KEY_TITLE, guide.getTitle());
+      values.put(KEY_TYPE, guide.getType());
+      values.put(KEY_TOPIC, guide.getTopic());
+      values.put(KEY_SUBJECT, guide.getSubject());
+      values.put(KEY_PUBLIC, guide.isPublic());
+      values.put(KEY_FLAGS, guideInfo.mFlags == null ? null :
+       TextUtils.join(",", guideInfo.mFlags));
+      values.put(KEY_URL, guideInfo.mUrl);
+      values.put(KEY_LOCALE, guideInfo.mLocale);
+      values.put(KEY_AUTHOR, guide.getAuthor());
+      values.put(KEY_AUTHOR_USERID, guideInfo.mUserid);
+      values.put(KEY_IMAGEID, introImage != null && introImage.isValid() ?
+       introImage.getId() : null);
+      values.put(KEY_IMAGE_PATH, introImage != null ? introImage.getPath() : null);
+      values.put(KEY_GUIDE_MODIFIED_DATE, jGuide.getDouble("modified_date"));
+      values.put(KEY_PREREQ_MODIFIED_DATE, jGuide.getDouble("prereq_modified_date"));
+      values.put(KEY_TIME_REQUIRED, jGuide.getString("time_required"));
+      values.put(KEY_DIFFICULTY, guide.getDifficulty());
+      values.put(KEY_INTRODUCTION_RAW, guide.getIntroductionRaw());
+      values.put(KEY_INTRODUCTION_RENDERED, guide.getIntroductionRendered());
+      values.put(KEY_SUMMARY, guide.getSummary());
+      values.put(KEY_CONCLUSION, guide.getConclusion());
+      values.put(KEY_COMPLETED, guide.getCompleted());
+      values.put(KEY_FAVORITED, guide.isFavorited());
+      values.put(KEY_CAN_EDIT, jGuide.optBoolean("can_edit", true));
+      values.put(KEY_PATROL_THRESHOLD, jGuide.getInt("patrol_threshold"));
+      values.put(KEY_FEATURED_DOCUMENTID, jGuide.isNull("featured_documentid") ? 0 :
+       jGuide.getInt("featured_documentid"));
+      values.put(KEY_TOOLS_JSON, jGuide.getJSONArray("tools").toString());
+      values.put(KEY_PARTS_JSON, jGuide.getJSONArray("parts").toString());
+      values.put(KEY_DOCUMENTS_JSON, jGuide.getJSONArray("documents").toString());
+      values.put(KEY_COMMENTS_JSON, jGuide.getJSONArray("comments").toString());
+
+      return values;
+   }
+
+   /**
+    * Replaces the media referenced by the guide.
+    */
+   public void setGuideMedia(Site site, User user, int guideid, Collection<String> media) {
+      SQLiteDatabase db = getWritableDatabase();
+
+      ContentValues values = new ContentValues();
+      values.put(KEY_MEDIA_RECORDED, 1);
+
+      db.beginTransaction();
+      try {
+         setGuideMedia(db, site, user, guideid, media);
+         db.update(
+          TABLE_OFFLINE_GUIDES,
+          values,
+          GUIDE_WHERE,
+          getGuideParams(site, user, guideid)
+         );
+         db.setTransactionSuccessful();
+      } finally {
+         db.endTransaction();
+      }
+   }
+
+   private void setGuideMedia(SQLiteDatabase db, Site site, User user, int guideid,
+    Collection<String> media) {
+      db.delete(
+       TABLE_OFFLINE_MEDIA,
+       GUIDE_WHERE,
+       getGuideParams(site, user, guideid)
+      );
+
+      ContentValues values = new ContentValues();
+      values.put(KEY_SITEID, site.mSiteid);
+      values.put(KEY_USERID, user.getUserid());
+      values.put(KEY_GUIDEID, guideid);
+
+      for (String url : media) {
+         values.put(KEY_URL, url);
+         db.insert(TABLE_OFFLINE_MEDIA, null, values);
+      }
+   }
+
+   /**
+    * Returns the URLs of all media referenced by any offline guide of any user.
+    */
+   public Set<String> getReferencedMedia() {
+      Cursor cursor = getReadableDatabase().query(
+       true,
+       TABLE_OFFLINE_MEDIA,
+       new String[] {KEY_URL},
+       null,
+       null,
+       null,
+       null,
+       null,
+       null);
+
+      Set<String> media = new HashSet<String>();
+
+      while (cursor.moveToNext()) {
+         media.add(cursor.getString(0));
+      }
+
+      cursor.close();
+
+      return media;
+   }
+
+   /**
+    * Returns the user's guides that were stored before media references were recorded.
+    */
+   public ArrayList<Guide> getGuidesWithoutMedia(Site site, User user) {
+      SQLiteDatabase db = getReadableDatabase();
+
+      Cursor cursor = db.query(
+       TABLE_OFFLINE_GUIDES,
+       GUIDE_COLUMNS,
+       KEY_SITEID + " = ? AND " +
+       KEY_USERID + " = ? AND " +
+       KEY_MEDIA_RECORDED + " = 0",
+       new String[] {site.mSiteid + "", user.getUserid() + ""},
+       null,
+       null,
+       KEY_ID + " ASC");
+
+      return getGuidesFromCursor(db, cursor);
+   }
+
+   /**
+    * Returns true if any user has guides that were stored before media references were
+    * recorded. The media those guides use are unknown until the user syncs again.
+    */
+   public boolean hasGuidesWithoutMedia() {
+      Cursor cursor = getReadableDatabase().query(
+       TABLE_OFFLINE_GUIDES,
+       new String[] {KEY_ID},
+       KEY_MEDIA_RECORDED + " = 0",
+       null,
+       null,
+       null,
+       null,
+       "1");
+
+      boolean hasGuides = cursor.moveToFirst();
+      cursor.close();
+
+      return hasGuides;
+   }
+
+
    public void updateGuideProgress(Site site, User user, int guideid, int imagesTotal,
     int imagesDownloaded) {
       ContentValues values = new ContentValues();
@@ -307,10 +1370,8 @@ public class ApiDatabase extends SQLiteOpenHelper {
       getWritableDatabase().update(
        TABLE_OFFLINE_GUIDES,
        values,
-       KEY_SITEID + " = ? AND " +
-       KEY_USERID + " = ? AND " +
-       KEY_GUIDEID + " = ?",
-       new String[] {site.mSiteid + "", user.getUserid() + "", guideid + ""}
+       GUIDE_WHERE,
+       getGuideParams(site, user, guideid)
       );
    }
 }
@@ -54,7 +54,8 @@ public enum ApiEndpoint {
          }
       },
       false,
-      "GET"
+      "GET",
+      new Freshness(Freshness.HOUR, 7 * Freshness.DAY)
    ),
 
    WIKI(
@@ -94,7 +95,8 @@ public enum ApiEndpoint {
          }
       },
       false,
-      "GET"
+      "GET",
+      new Freshness(5 * Freshness.MINUTE, Freshness.DAY)
    ),
 
    GUIDES(
@@ -189,7 +191,8 @@ public enum ApiEndpoint {
          }
       },
       false,
-      "GET"
+      "GET",
+      new Freshness(5 * Freshness.MINUTE, Freshness.DAY)
    ),
 
    ALL_TOPICS(
@@ -816,6 +819,43 @@ public enum ApiEndpoint {
        */
       public ApiEvent<?> getEvent();
    }
+
+   /**
+    * Defines how long a stored GET response can be used without waiting on the
+    * network.
+    *
+    * Responses younger than mMaxAge are used as is. Responses younger than
+    * mMaxAge + mStaleWhileRevalidate are used immediately but are also refreshed in
+    * the background. Anything older goes to the network as usual.
+    */
+   public static class Freshness {
+      public static final long MINUTE = 60 * 1000;
+      public static final long HOUR = 60 * MINUTE;
+      public static final long DAY = 24 * HOUR;
+
+      public static final Freshness NONE = new Freshness(0, 0);
+
+      public final long mMaxAge;
+      public final long mStaleWhileRevalidate;
+
+      public Freshness(long maxAge, long staleWhileRevalidate) {
+         mMaxAge = maxAge;
+         mStaleWhileRevalidate = staleWhileRevalidate;
+      }
+
+      public boolean isCacheable() {
+         return mMaxAge > 0 || mStaleWhileRevalidate > 0;
+      }
+
+      public boolean isFresh(long age) {
+         return age < mMaxAge;
+      }
+
+      public boolean isUsable(long age) {
+         return age < mMaxAge + mStaleWhileRevalidate;
+      }
+   }
+
    public static Set<String> VALID_LANGIDS = new HashSet<String>(Arrays.asList(
       new String[] {"en", "jp", "de", "fr", "es", "pt", "it", "nl", "tr", "zh", "ru"}
    ));
@@ -847,21 +887,38 @@ public enum ApiEndpoint {
     */
    public final boolean mPostResults;
 
+   /**
+    * How long stored responses can be served to Api.call() while online.
+    */
+   public final Freshness mFreshness;
+
    private ApiEndpoint(Endpoint endpoint, boolean authenticated, String method) {
       this(endpoint, authenticated, method, false);
    }
 
+   private ApiEndpoint(Endpoint endpoint, boolean authenticated, String method,
+                       Freshness freshness) {
+      this(endpoint, authenticated, method, false, true, freshness);
+   }
+
    private ApiEndpoint(Endpoint endpoint, boolean authenticated,
                        String method, boolean forcePublic) {
       this(endpoint, authenticated, method, forcePublic, true);
    }
+
    private ApiEndpoint(Endpoint endpoint, boolean authenticated,
                        String method, boolean forcePublic, boolean postResults) {
+      this(endpoint, authenticated, method, forcePublic, postResults, Freshness.NONE);
+   }
+
+   private ApiEndpoint(Endpoint endpoint, boolean authenticated, String method,
+                       boolean forcePublic, boolean postResults, Freshness freshness) {
       mEndpoint = endpoint;
       mAuthenticated = authenticated;
       mMethod = method;
       mForcePublic = forcePublic;
       mPostResults = postResults;
+      mFreshness = freshness;
    }
 
    /**
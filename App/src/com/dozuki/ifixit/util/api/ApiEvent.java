@@ -11,7 +11,7 @@ import com.dozuki.ifixit.model.guide.GuideInfo;
 import com.dozuki.ifixit.model.guide.GuideStep;
 import com.dozuki.ifixit.model.search.SearchResults;
 import com.dozuki.ifixit.model.topic.TopicLeaf;
-import com.dozuki.ifixit.model.topic.TopicNode;
+import com.dozuki.ifixit.model.topic.TopicTree;
 import com.dozuki.ifixit.model.user.User;
 import com.dozuki.ifixit.model.user.UserImage;
 
@@ -21,32 +21,11 @@ import java.util.ArrayList;
  * Base class for API events that are posted to the otto bus.
  */
 public abstract class ApiEvent<T> {
-   /**
-    * Proxy for APIEvents. Api posts these to the bus, BaseActivity
-    * listens for them and posts the underlying ApiEvent to the bus if the
-    * activityids match.
-    */
-   public static class ActivityProxy {
-      protected ApiEvent<?> mApiEvent;
-
-      public ActivityProxy(ApiEvent<?> apiEvent) {
-         mApiEvent = apiEvent;
-      }
-
-      public ApiEvent<?> getApiEvent() {
-         return mApiEvent;
-      }
-
-      public int getActivityid() {
-         return mApiEvent.mApiCall.mActivityid;
-      }
-   }
-
    public static class Unauthorized extends ApiEvent<String> {}
 
    public static class Search extends ApiEvent<SearchResults> {}
 
-   public static class Categories extends ApiEvent<TopicNode> {}
+   public static class Categories extends ApiEvent<TopicTree> {}
    public static class Topic extends ApiEvent<TopicLeaf> {}
    public static class TopicList extends ApiEvent<ArrayList<String>> {}
 
@@ -99,6 +78,32 @@ public abstract class ApiEvent<T> {
     */
    public boolean mStoredResponse;
 
+   /**
+    * True iff response came from the response cache while online, either because it
+    * was still within the endpoint's Freshness window or because the server
+    * responded with 304 Not Modified.
+    */
+   public boolean mCachedResponse;
+
+   /**
+    * True iff this is the refreshed result of a call that was already answered with
+    * a stale cached response. Only posted if the response changed.
+    */
+   public boolean mRevalidated;
+
+   /**
+    * Validators sent along with the response that are used to make the next request
+    * for it conditional.
+    */
+   protected String mETag;
+   protected String mLastModified;
+
+   /**
+    * True once ApiEventRouter replayed the event. It isn't queued again if it still
+    * has no subscriber.
+    */
+   protected boolean mReplayed;
+
    public ApiEvent<T> setResult(T result) {
       mResult = result;
       return this;
@@ -148,4 +153,37 @@ public abstract class ApiEvent<T> {
       mStoredResponse = stored;
       return this;
    }
+
+   public ApiEvent<T> setCachedResponse(boolean cached) {
+      mCachedResponse = cached;
+      return this;
+   }
+
+   /**
+    * Returns a copy of this event for an identical ApiCall that waited on this one's
+    * request. The result isn't copied because models are mutable; the copy must be
+    * parsed from the response again if this event has one.
+    */
+   @SuppressWarnings("unchecked")
+   protected ApiEvent<T> copyForApiCall(ApiCall apiCall) {
+      ApiEvent<T> event;
+
+      try {
+         event = getClass().newInstance();
+      } catch (Exception e) {
+         throw new IllegalStateException("Cannot copy " + getClass().getName(), e);
+      }
+
+      event.mResponse = mResponse;
+      event.mError = mError;
+      event.mCode = mCode;
+      event.mStoredResponse = mStoredResponse;
+      event.mCachedResponse = mCachedResponse;
+      event.mRevalidated = mRevalidated;
+      event.mETag = mETag;
+      event.mLastModified = mLastModified;
+      event.mApiCall = apiCall;
+
+      return event;
+   }
 }
@@ -0,0 +1,188 @@
+package com.dozuki.ifixit.util.api;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import com.dozuki.ifixit.App;
+import com.squareup.otto.Bus;
+
+import java.util.ArrayDeque;
+
+/**
+ * Delivers ApiEvents to the Activity that made the ApiCall. Events for an Activity
+ * that is registered are posted to the bus right away. Events for an Activity that
+ * isn't, e.g. because it's being recreated after a configuration change, are queued
+ * and replayed once it registers again.
+ *
+ * Events that reach the bus without a subscriber, e.g. because the Fragment that
+ * handles them isn't resumed yet, are queued the same way but only once. Queues of
+ * Activities that don't register again within MAX_QUEUE_AGE_MS are dropped.
+ *
+ * Only used on the main thread. Events posted on other threads are handed to the main
+ * thread first.
+ */
+public class ApiEventRouter {
+   private static final String TAG = "ApiEventRouter";
+
+   /**
+    * Events queued per Activity. The oldest are dropped beyond this.
+    */
+   private static final int MAX_QUEUED_EVENTS = 16;
+
+   /**
+    * Time after which the events of an Activity that isn't registered are dropped,
+    * e.g. because it was destroyed without finishing.
+    */
+   private static final long MAX_QUEUE_AGE_MS = 10 * 60 * 1000;
+
+   private final Bus mBus;
+   private final Handler mHandler = new Handler(Looper.getMainLooper());
+   // activityid to true if the Activity's subscribers are registered with the bus.
+   private final SparseBooleanArray mRegistered = new SparseBooleanArray();
+   private final SparseArray<ArrayDeque<ApiEvent<?>>> mQueuedEvents =
+    new SparseArray<ArrayDeque<ApiEvent<?>>>();
+   // activityid to the time the Activity unregistered or its first event was queued
+   // while it wasn't registered.
+   private final SparseArray<Long> mUnregisteredTimes = new SparseArray<Long>();
+
+   public ApiEventRouter(Bus bus) {
+      mBus = bus;
+   }
+
+   /**
+    * Posts the event to the bus if the Activity that made the ApiCall is registered
+    * and queues it otherwise.
+    */
+   public void post(final ApiEvent<?> event) {
+      if (Looper.myLooper() != Looper.getMainLooper()) {
+         mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+               post(event);
+            }
+         });
+         return;
+      }
+
+      if (mRegistered.get(event.mApiCall.mActivityid, false)) {
+         mBus.post(event);
+      } else {
+         queue(event);
+      }
+   }
+
+   /**
+    * Marks the Activity as ready to receive events and replays the ones that were
+    * queued for it.
+    */
+   public void register(int activityid) {
+      mRegistered.put(activityid, true);
+      mUnregisteredTimes.remove(activityid);
+
+      ArrayDeque<ApiEvent<?>> events = mQueuedEvents.get(activityid);
+
+      if (events == null) {
+         return;
+      }
+
+      // Events that still don't have a subscriber are queued again.
+      mQueuedEvents.remove(activityid);
+
+      for (ApiEvent<?> event : events) {
+         if (App.inDebug()) {
+            Log.i(TAG, "Replaying " + event.getClass().getName() + " for " + activityid);
+         }
+
+         event.mReplayed = true;
+         mBus.post(event);
+      }
+   }
+
+   /**
+    * Queues events for the Activity until it registers again.
+    */
+   public void unregister(int activityid) {
+      mRegistered.delete(activityid);
+      mUnregisteredTimes.put(activityid, SystemClock.elapsedRealtime());
+      removeExpiredQueues();
+   }
+
+   /**
+    * Drops the events queued for the Activity because it's finishing.
+    */
+   public void remove(int activityid) {
+      mRegistered.delete(activityid);
+      mQueuedEvents.remove(activityid);
+      mUnregisteredTimes.remove(activityid);
+   }
+
+   /**
+    * Queues an event that was posted to the bus but had no subscriber unless it
+    * already was replayed.
+    */
+   void onDeadEvent(ApiEvent<?> event) {
+      if (event.mReplayed) {
+         Log.w(TAG, "Dropping replayed " + event.getClass().getName() + " for " +
+          event.mApiCall.mActivityid);
+         return;
+      }
+
+      queue(event);
+   }
+
+   private void queue(ApiEvent<?> event) {
+      int activityid = event.mApiCall.mActivityid;
+
+      removeExpiredQueues();
+
+      if (!mRegistered.get(activityid, false) &&
+       mUnregisteredTimes.get(activityid) == null) {
+         // E.g. the Activity already finished or never registered.
+         mUnregisteredTimes.put(activityid, SystemClock.elapsedRealtime());
+      }
+
+      ArrayDeque<ApiEvent<?>> events = mQueuedEvents.get(activityid);
+
+      if (events == null) {
+         events = new ArrayDeque<ApiEvent<?>>();
+         mQueuedEvents.put(activityid, events);
+      }
+
+      if (events.size() >= MAX_QUEUED_EVENTS) {
+         ApiEvent<?> dropped = events.removeFirst();
+
+         Log.w(TAG, "Dropping " + dropped.getClass().getName() + " for " + activityid);
+      }
+
+      if (App.inDebug()) {
+         Log.i(TAG, "Queueing " + event.getClass().getName() + " for " + activityid);
+      }
+
+      events.addLast(event);
+   }
+
+   private void removeExpiredQueues() {
+      long now = SystemClock.elapsedRealtime();
+
+      // Backwards because removing shifts the indices of the keys after it.
+      for (int i = mUnregisteredTimes.size() - 1; i >= 0; i--) {
+         if (now - mUnregisteredTimes.valueAt(i) < MAX_QUEUE_AGE_MS) {
+            continue;
+         }
+
+         int activityid = mUnregisteredTimes.keyAt(i);
+         ArrayDeque<ApiEvent<?>> events = mQueuedEvents.get(activityid);
+
+         if (events != null) {
+            Log.w(TAG, "Dropping " + events.size() + " expired events for " + activityid);
+         }
+
+         mQueuedEvents.remove(activityid);
+         mUnregisteredTimes.removeAt(i);
+      }
+   }
+}
@@ -0,0 +1,273 @@
+package com.dozuki.ifixit.util.api;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.dozuki.ifixit.BuildConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs API calls on threads of their own so they never wait behind the image loads
+ * that share AsyncTask.THREAD_POOL_EXECUTOR. Queued calls run in order of
+ * ApiCall.Priority and then in the order they were submitted. One of the threads
+ * only runs INTERACTIVE calls so the user never waits for prefetches and
+ * revalidations to finish.
+ */
+class ApiExecutor {
+   private static final String TAG = "ApiExecutor";
+
+   /**
+    * An ApiCall to run. run() is called on a worker thread and its result is passed
+    * to onFinished() on the main thread.
+    */
+   public static abstract class Task implements Runnable, Comparable<Task> {
+      protected final ApiCall mApiCall;
+      private ApiCall.Priority mPriority;
+      private long mSequence;
+      private ApiExecutor mOwner;
+      // Guarded by mOwner. Set once a thread or cancel() claimed the Task.
+      private boolean mClaimed;
+
+      public Task(ApiCall apiCall, ApiCall.Priority priority) {
+         mApiCall = apiCall;
+         mPriority = priority;
+      }
+
+      protected abstract ApiEvent<?> run(ApiCall apiCall);
+
+      protected abstract void onFinished(ApiEvent<?> result);
+
+      @Override
+      public final void run() {
+         // INTERACTIVE Tasks are queued for both pools and run by whichever
+         // gets to them first.
+         if (!mOwner.claim(this)) {
+            return;
+         }
+
+         Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+         final ApiEvent<?> result = run(mApiCall);
+
+         mOwner.mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+               onFinished(result);
+            }
+         });
+      }
+
+      /**
+       * Only GETs are canceled. Other calls change something on the server which
+       * should happen even if the Activity is gone.
+       */
+      public boolean isCancelable() {
+         return mApiCall.mEndpoint.mMethod.equals("GET");
+      }
+
+      public ApiCall getApiCall() {
+         return mApiCall;
+      }
+
+      @Override
+      public int compareTo(Task other) {
+         if (mPriority != other.mPriority) {
+            return mPriority.compareTo(other.mPriority);
+         }
+
+         return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+      }
+   }
+
+   private static final int THREADS = 4;
+   private static final long KEEP_ALIVE_SECONDS = 30;
+
+   private final ThreadPoolExecutor mExecutor;
+   private final PriorityBlockingQueue<Runnable> mQueue;
+   private final ThreadPoolExecutor mInteractiveExecutor;
+   private final PriorityBlockingQueue<Runnable> mInteractiveQueue;
+   private final Handler mHandler = new Handler(Looper.getMainLooper());
+   private final AtomicLong mSequence = new AtomicLong();
+
+   public ApiExecutor() {
+      ThreadFactory threadFactory = new ThreadFactory() {
+         private final AtomicInteger mCount = new AtomicInteger();
+
+         @Override
+         public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, "Api #" + mCount.incrementAndGet());
+         }
+      };
+
+      mQueue = new PriorityBlockingQueue<Runnable>();
+      mExecutor = new ThreadPoolExecutor(THREADS - 1, THREADS - 1, KEEP_ALIVE_SECONDS,
+       TimeUnit.SECONDS, mQueue, threadFactory);
+      mExecutor.allowCoreThreadTimeOut(true);
+
+      mInteractiveQueue = new PriorityBlockingQueue<Runnable>();
+      mInteractiveExecutor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS,
+       TimeUnit.SECONDS, mInteractiveQueue, threadFactory);
+      mInteractiveExecutor.allowCoreThreadTimeOut(true);
+   }
+
+   public void execute(Task task) {
+      task.mSequence = mSequence.getAndIncrement();
+      task.mOwner = this;
+      mExecutor.execute(task);
+
+      if (task.mPriority == ApiCall.Priority.INTERACTIVE) {
+         mInteractiveExecutor.execute(task);
+      }
+
+      if (BuildConfig.DEBUG) {
+         Log.d(TAG, "Queued " + task.mApiCall.mEndpoint + " " + task.mPriority + ": " +
+          getQueueDepths() + ", active: " + getActiveCount());
+      }
+   }
+
+   /**
+    * Moves the task up to the given priority if it's still queued at a lower one.
+    */
+   public synchronized boolean promote(Task task, ApiCall.Priority priority) {
+      // Tasks below INTERACTIVE are only in mQueue so nobody took the Task if it
+      // could be removed.
+      if (priority.compareTo(task.mPriority) >= 0 || task.mClaimed ||
+       !mQueue.remove(task)) {
+         return false;
+      }
+
+      task.mPriority = priority;
+      execute(task);
+
+      return true;
+   }
+
+   /**
+    * Removes the Activity's queued calls that can be canceled and returns them.
+    * Calls that already started are left alone.
+    */
+   public List<Task> cancel(int activityid) {
+      List<Task> canceled = new ArrayList<Task>();
+
+      // The iterators work on copies of the queues so removing from them is fine.
+      for (Runnable runnable : getQueued()) {
+         Task task = (Task)runnable;
+
+         if (task.mApiCall.mActivityid == activityid && task.isCancelable() &&
+          remove(task)) {
+            canceled.add(task);
+         }
+      }
+
+      return canceled;
+   }
+
+   /**
+    * Removes the call from the queue if it can be canceled and returns its Task or
+    * null if it already started.
+    */
+   public Task cancel(ApiCall apiCall) {
+      for (Runnable runnable : getQueued()) {
+         Task task = (Task)runnable;
+
+         if (task.mApiCall == apiCall && task.isCancelable() && remove(task)) {
+            return task;
+         }
+      }
+
+      return null;
+   }
+
+   /**
+    * Claims the Task for the calling thread. Returns false if it already ran or was
+    * canceled.
+    */
+   private synchronized boolean claim(Task task) {
+      if (task.mClaimed) {
+         return false;
+      }
+
+      task.mClaimed = true;
+      mQueue.remove(task);
+      mInteractiveQueue.remove(task);
+
+      return true;
+   }
+
+   /**
+    * Removes the Task from the queues so it never runs. Returns false if a thread
+    * already took it.
+    */
+   private synchronized boolean remove(Task task) {
+      if (task.mClaimed) {
+         return false;
+      }
+
+      // A thread that took an INTERACTIVE Task from one queue finds it claimed.
+      boolean removed = mQueue.remove(task) | mInteractiveQueue.remove(task);
+      task.mClaimed = removed;
+
+      return removed;
+   }
+
+   private List<Runnable> getQueued() {
+      List<Runnable> queued = new ArrayList<Runnable>(mQueue);
+
+      for (Runnable runnable : mInteractiveQueue) {
+         if (!queued.contains(runnable)) {
+            queued.add(runnable);
+         }
+      }
+
+      return queued;
+   }
+
+   /**
+    * Returns the number of calls of the given priority waiting to run.
+    */
+   public int getQueueDepth(ApiCall.Priority priority) {
+      int depth = 0;
+
+      for (Runnable runnable : getQueued()) {
+         if (((Task)runnable).mPriority == priority) {
+            depth++;
+         }
+      }
+
+      return depth;
+   }
+
+   /**
+    * Returns the queue depth of every priority e.g. for logging.
+    */
+   public String getQueueDepths() {
+      StringBuilder depths = new StringBuilder();
+
+      for (ApiCall.Priority priority : ApiCall.Priority.values()) {
+         if (depths.length() > 0) {
+            depths.append(", ");
+         }
+
+         depths.append(priority).append(": ").append(getQueueDepth(priority));
+      }
+
+      return depths.toString();
+   }
+
+   /**
+    * Returns the number of calls that are currently running.
+    */
+   public int getActiveCount() {
+      return mExecutor.getActiveCount() + mInteractiveExecutor.getActiveCount();
+   }
+}
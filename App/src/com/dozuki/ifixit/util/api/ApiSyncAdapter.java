@@ -25,21 +25,16 @@ import com.dozuki.ifixit.model.guide.GuideInfo;
 import com.dozuki.ifixit.model.user.User;
 import com.dozuki.ifixit.ui.BaseActivity;
 import com.dozuki.ifixit.ui.guide.view.OfflineGuidesActivity;
+import com.dozuki.ifixit.util.Utils;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-import okio.BufferedSink;
-import okio.Okio;
-
 public class ApiSyncAdapter extends AbstractThreadedSyncAdapter {
    private static final String TAG = "ApiSyncAdapter";
    public static final String RESTART_SYNC = "RESTART_SYNC";
@@ -310,12 +305,27 @@ public class ApiSyncAdapter extends AbstractThreadedSyncAdapter {
       return sBaseAppDirectory;
    }
 
+   /**
+    * Returns the path that the medium is stored at for offline guides. Media are named
+    * by the SHA-1 of their URL so each is stored once no matter how many guides use it.
+    */
    public static String getOfflineMediaPath(String mediaUrl) {
-      String path = getBaseAppDirectory() + "/offline_guides/media/" + mediaUrl.hashCode();
+      String path = getOfflineMediaDirectory() + "/" + Utils.sha1(mediaUrl);
 
       return path;
    }
 
+   private static String getOfflineMediaDirectory() {
+      return getBaseAppDirectory() + "/offline_guides/media";
+   }
+
+   /**
+    * Path media were stored at before they were named by SHA-1.
+    */
+   private static String getLegacyOfflineMediaPath(String mediaUrl) {
+      return getOfflineMediaDirectory() + "/" + mediaUrl.hashCode();
+   }
+
    /**
     * Wrapper for Api.performAndParseApiCall() that throws an ApiSyncException on errors
     * and ensures type safety. Returns null if the content is no longer available.
@@ -344,42 +354,128 @@ public class ApiSyncAdapter extends AbstractThreadedSyncAdapter {
    }
 
    private class OfflineGuideSyncer {
-      // Update at most every 10 seconds so we don't spend all of our time updating
-      // values in the DB.
-      private static final int GUIDE_PROGRESS_INTERVAL_MS = 10000;
+      // Media downloads in flight at once, overall and against any one host.
+      private static final int MAX_CONCURRENT_DOWNLOADS = 6;
+      private static final int MAX_DOWNLOADS_PER_HOST = 4;
+
+      // How often to check whether the sync was canceled while waiting on downloads.
+      private static final long DOWNLOAD_POLL_INTERVAL_MS = 500;
 
       private final Site mSite;
       private final User mUser;
       private final ApiDatabase mDb;
-      private long mLastProgressUpdate;
+      private final OfflineGuideWriter mWriter;
       private boolean mNewGuide;
 
+      // True if guides were added, changed or removed so some media might be orphaned.
+      private boolean mMediaReferencesChanged;
+
       public OfflineGuideSyncer(Site site, User user) {
          mSite = site;
          mUser = user;
          mDb = ApiDatabase.get(App.get());
-         mLastProgressUpdate = 0;
+         mWriter = new OfflineGuideWriter(mDb, site, user);
       }
 
       /**
        * Does the heavy lifting for finding stale guides, updating their contents,
-       * and downloading media.
-       *
-       * TODO: It would be nice to delete media that are no longer referenced.
+       * downloading media, and deleting media that are no longer used.
        */
       protected boolean syncOfflineGuides() {
-         ArrayList<GuideMediaProgress> uncompletedGuides = getUncompletedGuides();
-         ArrayList<GuideInfo> staleGuides = getStaleGuides();
-         ArrayList<GuideMediaProgress> updatedGuides = updateGuides(staleGuides);
+         try {
+            recordLegacyGuideMedia();
+
+            ArrayList<GuideMediaProgress> uncompletedGuides = getUncompletedGuides();
+            ArrayList<GuideInfo> staleGuides = getStaleGuides();
+            ArrayList<GuideMediaProgress> updatedGuides = updateGuides(staleGuides);
+
+            // Merge updated guides with guides with missing media and fetch all of
+            // their media.
+            uncompletedGuides.addAll(updatedGuides);
+            downloadMissingMedia(uncompletedGuides);
+         } finally {
+            // Keep whatever progress was made even if the sync was canceled.
+            flushWrites();
+         }
 
-         // Merge updated guides with guides with missing media and fetch all of
-         // their media.
-         uncompletedGuides.addAll(updatedGuides);
-         downloadMissingMedia(uncompletedGuides);
+         if (mMediaReferencesChanged) {
+            deleteOrphanedMedia();
+         }
 
          return mNewGuide;
       }
 
+      /**
+       * Records the media used by guides that were stored before media references
+       * existed and moves their media over from the old hashCode() based paths.
+       */
+      private void recordLegacyGuideMedia() {
+         for (Guide guide : mDb.getGuidesWithoutMedia(mSite, mUser)) {
+            finishSyncIfCanceled();
+
+            if (guide == null) {
+               continue;
+            }
+
+            for (String mediaUrl : GuideMediaProgress.getMedia(guide)) {
+               File legacyFile = new File(getLegacyOfflineMediaPath(mediaUrl));
+
+               if (legacyFile.exists()) {
+                  legacyFile.renameTo(new File(getOfflineMediaPath(mediaUrl)));
+               }
+            }
+
+            GuideMediaProgress guideMedia = new GuideMediaProgress(guide);
+            mDb.setGuideMedia(mSite, mUser, guide.getGuideid(), guideMedia.mMedia);
+            updateGuideProgress(guideMedia);
+            mMediaReferencesChanged = true;
+         }
+      }
+
+      /**
+       * Mark and sweep pass over the media directory that deletes every medium (and
+       * partial download) that no offline guide of any user references anymore.
+       */
+      private void deleteOrphanedMedia() {
+         if (mDb.hasGuidesWithoutMedia()) {
+            // Another user's guides haven't been synced since media references were
+            // added so there is no way of knowing which media they use.
+            return;
+         }
+
+         Set<String> referencedFiles = new HashSet<String>();
+         for (String mediaUrl : mDb.getReferencedMedia()) {
+            referencedFiles.add(new File(getOfflineMediaPath(mediaUrl)).getName());
+         }
+
+         File[] files = new File(getOfflineMediaDirectory()).listFiles();
+         if (files == null) {
+            return;
+         }
+
+         int deleted = 0;
+         for (File file : files) {
+            String name = file.getName();
+
+            if (name.endsWith(MediaDownloader.VALIDATOR_SUFFIX)) {
+               name = name.substring(0,
+                name.length() - MediaDownloader.VALIDATOR_SUFFIX.length());
+            }
+
+            if (name.endsWith(MediaDownloader.PART_SUFFIX)) {
+               name = name.substring(0, name.length() - MediaDownloader.PART_SUFFIX.length());
+            }
+
+            if (!referencedFiles.contains(name) && file.isFile() && file.delete()) {
+               deleted++;
+            }
+         }
+
+         if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Deleted " + deleted + " orphaned media.");
+         }
+      }
+
       private ArrayList<GuideMediaProgress> getUncompletedGuides() {
          ArrayList<GuideMediaProgress> guideMedia = new ArrayList<GuideMediaProgress>();
 
@@ -401,6 +497,7 @@ public class ApiSyncAdapter extends AbstractThreadedSyncAdapter {
          ArrayList<GuideInfo> favorites = favoritesEvent.getResult();
 
          Map<Integer, Double> modifiedDates = mDb.getGuideModifiedDates(mSite, mUser);
+         Map<Integer, Integer> revisions = mDb.getGuideRevisions(mSite, mUser);
          ArrayList<GuideInfo> staleGuides = new ArrayList<GuideInfo>();
 
          for (GuideInfo guide : favorites) {
@@ -412,7 +509,8 @@ public class ApiSyncAdapter extends AbstractThreadedSyncAdapter {
                mNewGuide = true;
             }
 
-            if (hasNewerModifiedDate(modifiedDate, guide.getAbsoluteModifiedDate())) {
+            if (hasNewerModifiedDate(modifiedDate, guide.getAbsoluteModifiedDate()) ||
+             hasNewRevision(revisions.get(guide.mGuideid), guide.mRevisionid)) {
                staleGuides.add(guide);
             }
          }
@@ -420,6 +518,7 @@ public class ApiSyncAdapter extends AbstractThreadedSyncAdapter {
          // Delete any guides that are currently in the DB but are no longer favorited.
          if (!modifiedDates.isEmpty()) {
             mDb.deleteGuides(mSite, mUser, modifiedDates.keySet());
+            mMediaReferencesChanged = true;
             // Although not technically a "new guide", this triggers a UI refresh.
             sendNewGuideBroadcast();
          }
@@ -438,6 +537,11 @@ public class ApiSyncAdapter extends AbstractThreadedSyncAdapter {
          return (updated - existing) > MAX_DATE_DISCREPANCY;
       }
 
+      private boolean hasNewRevision(Integer existing, int updated) {
+         // Guides stored before revisions were recorded only go by the modified date.
+         return existing != null && updated != 0 && existing != updated;
+      }
+
       /**
        * Updates the provided guides by downloading the full guide and adding/updating
        * the value stored in the DB.
@@ -466,17 +570,31 @@ public class ApiSyncAdapter extends AbstractThreadedSyncAdapter {
                continue;
             }
 
-            GuideMediaProgress guideMedia = new GuideMediaProgress(fullGuide);
+            // The API only returns whole guides but media of steps that haven't been
+            // revised since the guide was completely downloaded are still there.
+            Set<Integer> unchangedSteps = mDb.getUnchangedSteps(mSite, mUser,
+             fullGuide.getResult());
+            GuideMediaProgress guideMedia = new GuideMediaProgress(fullGuide, unchangedSteps);
 
-            mDb.saveGuide(mSite, mUser, guideMedia.mGuideEvent, staleGuide,
-             guideMedia.mTotalMedia, guideMedia.mMediaProgress);
-            sendNewGuideBroadcast();
+            if (BuildConfig.DEBUG) {
+               Log.d(TAG, "Updating guide " + staleGuide.mGuideid + ": " +
+                (fullGuide.getResult().getSteps().size() - unchangedSteps.size()) +
+                " changed steps");
+            }
+
+            mWriter.saveGuide(guideMedia, staleGuide);
+            mMediaReferencesChanged = true;
+            flushWritesIfNeeded();
 
             guides.add(guideMedia);
          }
 
+         // Media progress is written against the saved guides.
+         flushWrites();
+
          if (guidesToDelete != null) {
             mDb.deleteGuides(mSite, mUser, guidesToDelete);
+            mMediaReferencesChanged = true;
             // Although not technically a new guide, this triggers an update of the UI.
             sendNewGuideBroadcast();
          }
@@ -494,105 +612,83 @@ public class ApiSyncAdapter extends AbstractThreadedSyncAdapter {
       }
 
       /**
-       * Downloads all new images contained in the guides.
+       * Downloads all new images contained in the guides. Media are downloaded in
+       * parallel but all progress is tracked on the sync thread.
        */
       private void downloadMissingMedia(List<GuideMediaProgress> missingGuideMedia) {
          int totalMissingMedia = getTotalMissingMedia(missingGuideMedia);
          int mediaDownloaded = 0;
 
+         // Guides waiting on each medium. Media shared between guides are only
+         // downloaded once.
+         Map<String, List<GuideMediaProgress>> pendingMedia =
+          new HashMap<String, List<GuideMediaProgress>>();
+
          createMediaDirectories();
 
-         for (GuideMediaProgress guideMedia : missingGuideMedia) {
-            for (String mediaUrl : guideMedia.mMissingMedia) {
-               finishSyncIfCanceled();
+         MediaDownloader downloader = new MediaDownloader(MAX_CONCURRENT_DOWNLOADS,
+          MAX_DOWNLOADS_PER_HOST);
 
-               if (downloadMedium(mediaUrl)) {
-                  mediaDownloaded++;
-                  guideMedia.mMediaProgress++;
-               } else if (mediaUrl.contains(".huge")) {
-                  // Download the original image instead because FullScreenImageView will
-                  // default to that one.
-                  String originalUrl = mediaUrl.replace(".huge", "");
-                  if (downloadMedium(originalUrl)) {
-                     mediaDownloaded++;
-                     guideMedia.mMediaProgress++;
-                  } else {
-                     // Continue on with the next medium. The progress won't be updated
-                     // because the medium wasn't successfully retrieved. Note that other
-                     // failures such as missing internet will throw an exception which
-                     // will cause the sync process to exit immediately.
-                     continue;
-                  }
+         try {
+            for (GuideMediaProgress guideMedia : missingGuideMedia) {
+               if (guideMedia.mMissingMedia.isEmpty()) {
+                  // Make sure the guide is marked as complete.
+                  updateGuideProgress(guideMedia);
+                  continue;
                }
 
-               updateTotalProgress(guideMedia, totalMissingMedia, mediaDownloaded);
-               updateNotificationProgress(totalMissingMedia, mediaDownloaded, false);
-               updateGuideProgress(guideMedia, true);
-            }
-
-            // Make sure the guide is marked as complete.
-            updateGuideProgress(guideMedia, false);
-         }
-
-         if (BuildConfig.DEBUG) {
-            Log.d(TAG, mediaDownloaded + "/" + totalMissingMedia + " media downloaded.");
-         }
-      }
+               for (String mediaUrl : guideMedia.mMissingMedia) {
+                  List<GuideMediaProgress> waitingGuides = pendingMedia.get(mediaUrl);
 
-      /**
-       * Downloads the medium to the persistent location. Returns true if the medium is
-       * persisted, false otherwise.
-       */
-      private boolean downloadMedium(String mediaUrl) {
-         File file = new File(getOfflineMediaPath(mediaUrl));
+                  if (waitingGuides == null) {
+                     waitingGuides = new ArrayList<GuideMediaProgress>();
+                     pendingMedia.put(mediaUrl, waitingGuides);
+                     downloader.submit(mediaUrl);
+                  }
 
-         if (!file.exists()) {
-            try {
-               if (BuildConfig.DEBUG) {
-                  Log.i(TAG, "Downloading: " + mediaUrl);
+                  waitingGuides.add(guideMedia);
                }
+            }
 
-               file.createNewFile();
-
-               Request request = new Request.Builder()
-                .url(mediaUrl)
-                .build();
+            while (!pendingMedia.isEmpty()) {
+               finishSyncIfCanceled();
+               flushWritesIfNeeded();
 
+               MediaDownloader.Result result = downloader.poll(DOWNLOAD_POLL_INTERVAL_MS);
+               if (result == null) {
+                  continue;
+               }
 
-               OkHttpClient client = new OkHttpClient();
+               if (result.mError != null) {
+                  // Failures such as missing internet cause the sync process to exit
+                  // immediately.
+                  throw new ApiSyncException(ApiSyncException.CONNECTION_EXCEPTION,
+                   result.mError);
+               }
 
-               Response response = client.newCall(request).execute();
+               for (GuideMediaProgress guideMedia : pendingMedia.remove(result.mUrl)) {
+                  // The progress isn't updated if the medium wasn't successfully
+                  // retrieved.
+                  if (result.mDownloaded) {
+                     mediaDownloaded++;
+                     guideMedia.mMediaProgress++;
 
-               if (!response.isSuccessful()) {
-                  // This happens occasionally when downloading the .huge size for
-                  // images that don't have that size. The original is retried in
-                  // its place.
-                  if (BuildConfig.DEBUG) {
-                     Log.w(TAG, "MEDIA FAIL! " + mediaUrl);
+                     updateTotalProgress(guideMedia, totalMissingMedia, mediaDownloaded);
+                     updateNotificationProgress(totalMissingMedia, mediaDownloaded, false);
+                     updateGuideProgress(guideMedia);
                   }
-                  throw new IOException("Unexpected code " + response);
-               }
 
-               BufferedSink sink = Okio.buffer(Okio.sink(file));
-               sink.writeAll(response.body().source());
-               sink.close();
-            } catch (IOException e) {
-               if (BuildConfig.DEBUG) {
-                  Log.e(TAG, "Failed to download medium", e);
-               }
-               throw new ApiSyncException(ApiSyncException.CONNECTION_EXCEPTION, e);
-            } catch (Exception e) {
-               if (BuildConfig.DEBUG) {
-                  Log.e(TAG, "Failed to download medium", e);
                }
-               throw new ApiSyncException(ApiSyncException.CONNECTION_EXCEPTION, e);
             }
-         } else if (BuildConfig.DEBUG) {
-            // Happens if guides share media.
-            Log.d(TAG, "Skipping: " + mediaUrl);
+         } catch (InterruptedException e) {
+            throw new ApiSyncException(ApiSyncException.CANCELED_EXCEPTION, e);
+         } finally {
+            downloader.shutdown();
          }
 
-         return true;
+         if (BuildConfig.DEBUG) {
+            Log.d(TAG, mediaDownloaded + "/" + totalMissingMedia + " media downloaded.");
+         }
       }
 
       /**
@@ -612,17 +708,23 @@ public class ApiSyncAdapter extends AbstractThreadedSyncAdapter {
          mContext.sendBroadcast(broadcast);
       }
 
-      private void updateGuideProgress(GuideMediaProgress guide, boolean rateLimit) {
-         if (!rateLimit || System.currentTimeMillis() > mLastProgressUpdate +
-          GUIDE_PROGRESS_INTERVAL_MS) {
-            if (BuildConfig.DEBUG) {
-               Log.d(TAG, "Updating progress: " + guide.mMediaProgress + "/" + guide.mTotalMedia);
-            }
+      /**
+       * Queues the guide's progress to be written with the next batch.
+       */
+      private void updateGuideProgress(GuideMediaProgress guide) {
+         mWriter.updateProgress(guide.mGuide.getGuideid(), guide.mTotalMedia,
+          guide.mMediaProgress);
+      }
 
-            mDb.updateGuideProgress(mSite, mUser, guide.mGuide.getGuideid(), guide.mTotalMedia,
-             guide.mMediaProgress);
+      private void flushWritesIfNeeded() {
+         if (mWriter.flushIfNeeded() > 0) {
+            sendNewGuideBroadcast();
+         }
+      }
 
-            mLastProgressUpdate = System.currentTimeMillis();
+      private void flushWrites() {
+         if (mWriter.flush() > 0) {
+            sendNewGuideBroadcast();
          }
       }
 
@@ -1,5 +1,9 @@
 package com.dozuki.ifixit.util.api;
 
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.dozuki.ifixit.App;
 import com.dozuki.ifixit.model.Image;
 import com.dozuki.ifixit.model.Video;
 import com.dozuki.ifixit.model.guide.Guide;
@@ -8,47 +12,71 @@ import com.dozuki.ifixit.model.guide.GuideStep;
 import com.dozuki.ifixit.util.ImageSizes;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
  * Stores progress information about syncing guide media.
  */
 public class GuideMediaProgress {
+   private static final String TAG = "GuideMediaProgress";
+   private static final byte[] JPEG_TRAILER = {(byte)0xFF, (byte)0xD9};
+   // The IEND chunk including its CRC.
+   private static final byte[] PNG_TRAILER =
+    {'I', 'E', 'N', 'D', (byte)0xAE, 0x42, 0x60, (byte)0x82};
+   // Some encoders pad images after their trailer and cameras append metadata or
+   // even a video to JPEGs.
+   private static final int TRAILER_SEARCH_LENGTH = 64 * 1024;
+   // Never changes once it is set.
+   private static volatile long sVerifiedMediaTime;
+
    public ApiEvent.ViewGuide mGuideEvent;
    public Guide mGuide;
    public GuideInfo mGuideInfo;
+   public Set<String> mMedia;
    public Set<String> mMissingMedia;
    public int mTotalMedia;
    public int mMediaProgress;
 
    public GuideMediaProgress(ApiEvent.ViewGuide guideEvent) {
-      this(guideEvent.getResult());
+      this(guideEvent, Collections.<Integer>emptySet());
+   }
+
+   /**
+    * Media of steps in unchangedStepids are assumed to be present without checking
+    * the file system. Only pass steps that haven't changed since the guide's media
+    * were completely downloaded.
+    */
+   public GuideMediaProgress(ApiEvent.ViewGuide guideEvent, Set<Integer> unchangedStepids) {
+      this(guideEvent.getResult(), unchangedStepids);
 
       mGuideEvent = guideEvent;
    }
 
    public GuideMediaProgress(Guide guide) {
+      this(guide, Collections.<Integer>emptySet());
+   }
+
+   private GuideMediaProgress(Guide guide, Set<Integer> unchangedStepids) {
       mGuide = guide;
+      mMedia = getMedia(guide);
       mMissingMedia = new HashSet<String>();
-      mTotalMedia = 0;
-
-      Image introImage = mGuide.getIntroImage();
-      if (introImage.isValid()) {
-         addMediaIfMissing(introImage.getPath(ImageSizes.guideList));
-      }
+      mTotalMedia = mMedia.size();
 
+      Set<String> presentMedia = new HashSet<String>();
       for (GuideStep step : mGuide.getSteps()) {
-         for (Image image : step.getImages()) {
-            addMediaIfMissing(image.getPath(ImageSizes.stepThumb));
-            addMediaIfMissing(image.getPath(ImageSizes.stepMain));
-            addMediaIfMissing(image.getPath(ImageSizes.stepFull));
+         if (unchangedStepids.contains(step.getStepid())) {
+            addStepMedia(step, presentMedia);
          }
+      }
 
-         if (step.hasVideo()) {
-            Video video = step.getVideo();
-            addMediaIfMissing(video.getThumbnail().getPath(ImageSizes.stepMain));
-            addMediaIfMissing(video.getVideoUrl());
+      for (String mediaUrl : mMedia) {
+         if (!presentMedia.contains(mediaUrl)) {
+            addMediaIfMissing(mediaUrl);
          }
       }
 
@@ -61,20 +89,154 @@ public class GuideMediaProgress {
       mMediaProgress = mediaProgress;
    }
 
-   private void addMediaIfMissing(String imageUrl) {
-      if (mMissingMedia.contains(imageUrl)) {
-         // Don't acknowledge duplicates in the total.
-         return;
+   /**
+    * Returns the URLs of all media that are stored for the guide to be viewed offline.
+    * Media used more than once are only included once.
+    */
+   public static Set<String> getMedia(Guide guide) {
+      Set<String> media = new LinkedHashSet<String>();
+
+      Image introImage = guide.getIntroImage();
+      if (introImage.isValid()) {
+         media.add(introImage.getPath(ImageSizes.guideList));
+      }
+
+      for (GuideStep step : guide.getSteps()) {
+         addStepMedia(step, media);
       }
 
-      mTotalMedia++;
+      return media;
+   }
+
+   private static void addStepMedia(GuideStep step, Set<String> media) {
+      for (Image image : step.getImages()) {
+         media.add(image.getPath(ImageSizes.stepThumb));
+         media.add(image.getPath(ImageSizes.stepMain));
+         media.add(image.getPath(ImageSizes.stepFull));
+      }
+
+      if (step.hasVideo()) {
+         Video video = step.getVideo();
+         media.add(video.getThumbnail().getPath(ImageSizes.stepMain));
+         media.add(video.getVideoUrl());
+      }
+   }
 
+   private void addMediaIfMissing(String imageUrl) {
       File file = new File(ApiSyncAdapter.getOfflineMediaPath(imageUrl));
-      if (!file.exists()) {
+      if (!isMediumPresent(imageUrl, file)) {
          mMissingMedia.add(imageUrl);
       }
    }
 
+   /**
+    * Returns true if the medium at the given path is completely downloaded.
+    *
+    * Media are only renamed into place once they are verified but older versions
+    * created the file before downloading into it, so images that were stored before
+    * must decode and end the way their format does. They are touched once they pass
+    * so they are only checked once. Videos can't be checked cheaply and only have to
+    * be non-empty.
+    */
+   public static boolean isMediumPresent(String mediaUrl, File file) {
+      // File.length() is 0 for files that don't exist.
+      if (file.length() == 0) {
+         return false;
+      }
+
+      if (!isImage(mediaUrl) || file.lastModified() >= getVerifiedMediaTime()) {
+         return true;
+      }
+
+      if (!isImageComplete(file)) {
+         return false;
+      }
+
+      if (!file.setLastModified(System.currentTimeMillis())) {
+         Log.w(TAG, "Cannot touch " + file);
+      }
+
+      return true;
+   }
+
+   private static boolean isImageComplete(File file) {
+      BitmapFactory.Options bounds = new BitmapFactory.Options();
+      bounds.inJustDecodeBounds = true;
+      BitmapFactory.decodeFile(file.getPath(), bounds);
+
+      if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+         return false;
+      }
+
+      if ("image/jpeg".equals(bounds.outMimeType)) {
+         return hasTrailer(file, JPEG_TRAILER);
+      } else if ("image/png".equals(bounds.outMimeType)) {
+         return hasTrailer(file, PNG_TRAILER);
+      }
+
+      return true;
+   }
+
+   private static long getVerifiedMediaTime() {
+      if (sVerifiedMediaTime == 0) {
+         sVerifiedMediaTime = App.get().getVerifiedMediaTime();
+      }
+
+      return sVerifiedMediaTime;
+   }
+
+   private static boolean isImage(String mediaUrl) {
+      return mediaUrl.endsWith(ImageSizes.stepThumb) ||
+       mediaUrl.endsWith(ImageSizes.stepMain) ||
+       mediaUrl.endsWith(ImageSizes.stepFull) ||
+       mediaUrl.endsWith(ImageSizes.guideList);
+   }
+
+   /**
+    * Returns true if the trailer is in the tail of the file. Truncated downloads are
+    * missing it.
+    */
+   private static boolean hasTrailer(File file, byte[] trailer) {
+      RandomAccessFile in = null;
+
+      try {
+         in = new RandomAccessFile(file, "r");
+
+         byte[] end = new byte[(int)Math.min(in.length(), TRAILER_SEARCH_LENGTH)];
+         in.seek(in.length() - end.length);
+         in.readFully(end);
+
+         for (int i = end.length - trailer.length; i >= 0; i--) {
+            if (startsWith(end, i, trailer)) {
+               return true;
+            }
+         }
+
+         return false;
+      } catch (IOException e) {
+         Log.w(TAG, "Cannot read " + file, e);
+         return false;
+      } finally {
+         if (in != null) {
+            try {
+               in.close();
+            } catch (IOException e) {
+               // Nothing left to do.
+            }
+         }
+      }
+   }
+
+   private static boolean startsWith(byte[] bytes, int offset, byte[] prefix) {
+      for (int i = 0; i < prefix.length; i++) {
+         if (bytes[offset + i] != prefix[i]) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
    public boolean isComplete() {
       return mTotalMedia == mMediaProgress;
    }
@@ -0,0 +1,213 @@
+package com.dozuki.ifixit.util.api;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.dozuki.ifixit.App;
+import com.dozuki.ifixit.BuildConfig;
+import com.dozuki.ifixit.model.Image;
+import com.dozuki.ifixit.model.guide.Guide;
+import com.dozuki.ifixit.model.guide.GuideInfo;
+import com.dozuki.ifixit.model.guide.GuideStep;
+import com.dozuki.ifixit.ui.BaseActivity;
+import com.dozuki.ifixit.util.ImageSizes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * Warms the response cache with the guides at the top of a list and the images of
+ * their first step so opening one of them doesn't wait on the network. The guide
+ * JSON goes through Api.prefetch() and the images through the OkHttp cache Picasso
+ * reads from.
+ *
+ * Nothing is prefetched on metered connections and at most sByteBudget bytes are
+ * downloaded every BUDGET_WINDOW_MS.
+ */
+public class GuidePrefetcher {
+   private static final String TAG = "GuidePrefetcher";
+
+   /**
+    * Number of guides at the top of a list that are prefetched.
+    */
+   public static final int MAX_GUIDES = 3;
+
+   private static final long DEFAULT_BYTE_BUDGET = 5 * 1024 * 1024;
+   private static final long BUDGET_WINDOW_MS = ApiEndpoint.Freshness.HOUR;
+   private static final int READ_SIZE = 8 * 1024;
+
+   private static long sByteBudget = DEFAULT_BYTE_BUDGET;
+   private static long sBudgetWindowStart;
+   private static long sBytesUsed;
+
+   /**
+    * Guides prefetched in the budget window that started at sPrefetchedWindowStart.
+    * Only accessed on the main thread.
+    */
+   private static final Set<Integer> sPrefetchedGuideids = new HashSet<Integer>();
+   private static long sPrefetchedWindowStart;
+
+   private static final ExecutorService sImageExecutor =
+    Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable runnable) {
+         return new Thread(new Runnable() {
+            @Override
+            public void run() {
+               Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+               runnable.run();
+            }
+         }, TAG);
+      }
+   });
+
+   /**
+    * Sets the number of bytes that may be prefetched every hour.
+    */
+   public static synchronized void setByteBudget(long bytes) {
+      sByteBudget = bytes;
+   }
+
+   /**
+    * Prefetches those of the first MAX_GUIDES guides that haven't been prefetched
+    * recently. Guides further down are never prefetched in their place. Must be
+    * called on the main thread.
+    */
+   public static void prefetch(BaseActivity activity, List<GuideInfo> guides) {
+      if (!canPrefetch()) {
+         return;
+      }
+
+      long windowStart = getBudgetWindowStart();
+      if (windowStart != sPrefetchedWindowStart) {
+         sPrefetchedGuideids.clear();
+         sPrefetchedWindowStart = windowStart;
+      }
+
+      for (GuideInfo guide : guides.subList(0, Math.min(MAX_GUIDES, guides.size()))) {
+         if (!sPrefetchedGuideids.add(guide.mGuideid)) {
+            continue;
+         }
+
+         Api.prefetch(activity, ApiCall.guide(guide.mGuideid), new Api.PrefetchListener() {
+            @Override
+            public void onPrefetched(ApiEvent<?> result) {
+               if (!result.mCachedResponse && result.getResponse() != null) {
+                  useBytes(result.getResponse().length());
+               }
+
+               if (!result.hasError()) {
+                  prefetchImages(((ApiEvent.ViewGuide)result).getResult());
+               }
+            }
+         });
+      }
+   }
+
+   private static void prefetchImages(Guide guide) {
+      if (guide.getNumSteps() == 0) {
+         return;
+      }
+
+      GuideStep firstStep = guide.getStep(0);
+      final List<String> urls = new ArrayList<String>();
+
+      for (Image image : firstStep.getImages()) {
+         // The first image is the one displayed large. Same URLs as ThumbnailView.
+         if (urls.isEmpty()) {
+            urls.add(image.getPath() + ImageSizes.stepMain);
+         }
+
+         urls.add(image.getPath(ImageSizes.stepThumb));
+      }
+
+      sImageExecutor.execute(new Runnable() {
+         @Override
+         public void run() {
+            for (String url : urls) {
+               if (!canPrefetch()) {
+                  return;
+               }
+
+               prefetchImage(url);
+            }
+         }
+      });
+   }
+
+   private static void prefetchImage(String url) {
+      Request request = new Request.Builder().url(url).build();
+      Response response = null;
+
+      try {
+         response = App.getClient().newCall(request).execute();
+
+         if (!response.isSuccessful() || response.networkResponse() == null) {
+            // Either failed or it's already cached.
+            return;
+         }
+
+         // The response is only cached once it has been read completely.
+         ResponseBody body = response.body();
+         BufferedSource source = body.source();
+         Buffer buffer = new Buffer();
+         long bytes = 0;
+         long read;
+
+         while ((read = source.read(buffer, READ_SIZE)) != -1) {
+            bytes += read;
+            buffer.clear();
+         }
+
+         useBytes(bytes);
+      } catch (IOException e) {
+         Log.w(TAG, "Failed to prefetch " + url, e);
+      } finally {
+         if (response != null) {
+            response.close();
+         }
+      }
+   }
+
+   private static boolean canPrefetch() {
+      App app = App.get();
+
+      return app.isConnected() && !app.isConnectionMetered() && hasBudget();
+   }
+
+   private static synchronized boolean hasBudget() {
+      long now = System.currentTimeMillis();
+
+      if (now - sBudgetWindowStart >= BUDGET_WINDOW_MS) {
+         sBudgetWindowStart = now;
+         sBytesUsed = 0;
+      }
+
+      return sBytesUsed < sByteBudget;
+   }
+
+   private static synchronized long getBudgetWindowStart() {
+      return sBudgetWindowStart;
+   }
+
+   private static synchronized void useBytes(long bytes) {
+      sBytesUsed += bytes;
+
+      if (BuildConfig.DEBUG) {
+         Log.d(TAG, "Prefetched " + bytes + " bytes, " + sBytesUsed + " of " +
+          sByteBudget + " used");
+      }
+   }
+}
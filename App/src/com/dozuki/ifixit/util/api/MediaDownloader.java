@@ -0,0 +1,435 @@
+package com.dozuki.ifixit.util.api;
+
+import android.util.Log;
+
+import com.dozuki.ifixit.App;
+import com.dozuki.ifixit.BuildConfig;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+/**
+ * Downloads offline guide media on a fixed number of worker threads. Transfers reuse
+ * the app's OkHttpClient connection pool and are limited per host so a single media
+ * server isn't flooded with connections.
+ *
+ * Media are submitted from the sync thread and results are collected on it with
+ * poll() so all progress bookkeeping stays on one thread.
+ */
+class MediaDownloader {
+   private static final String TAG = "MediaDownloader";
+   public static final String PART_SUFFIX = ".part";
+   // Appended to the .part file's name for the file holding the ETag or Last-Modified
+   // date of the response being resumed.
+   public static final String VALIDATOR_SUFFIX = ".validator";
+   private static final int PARTIAL_CONTENT_CODE = 206;
+   private static final int RANGE_NOT_SATISFIABLE_CODE = 416;
+   private static final long INVALID_CONTENT_RANGE = -2;
+
+   /**
+    * Outcome of downloading a single medium.
+    */
+   public static class Result {
+      public final String mUrl;
+      public final boolean mDownloaded;
+      public final IOException mError;
+
+      public Result(String url, boolean downloaded, IOException error) {
+         mUrl = url;
+         mDownloaded = downloaded;
+         mError = error;
+      }
+   }
+
+   private final OkHttpClient mClient;
+   private final ExecutorService mExecutor;
+   private final int mMaxDownloadsPerHost;
+   private final BlockingQueue<Result> mResults = new LinkedBlockingQueue<Result>();
+   private final Map<String, Semaphore> mHostPermits = new HashMap<String, Semaphore>();
+   private final Set<Call> mCalls = new HashSet<Call>();
+   private volatile boolean mShutdown;
+
+   public MediaDownloader(int maxDownloads, int maxDownloadsPerHost) {
+      // Share the app's connection pool but not its HTTP cache. Media are persisted
+      // on their own so caching them would only use the space twice.
+      mClient = App.getClient().newBuilder()
+       .cache(null)
+       .build();
+      mExecutor = Executors.newFixedThreadPool(maxDownloads);
+      mMaxDownloadsPerHost = maxDownloadsPerHost;
+   }
+
+   /**
+    * Queues the medium for download. Its Result is available through poll() once
+    * it is done.
+    */
+   public void submit(final String mediaUrl) {
+      mExecutor.execute(new Runnable() {
+         @Override
+         public void run() {
+            Result result;
+
+            try {
+               File file = new File(ApiSyncAdapter.getOfflineMediaPath(mediaUrl));
+               boolean downloaded = downloadMedium(mediaUrl, file);
+
+               if (!downloaded && mediaUrl.contains(".huge")) {
+                  // Download the original image instead because FullScreenImageView will
+                  // default to that one. It is stored as the .huge size so it is found
+                  // offline and isn't deleted as an orphan of the guide.
+                  downloaded = downloadMedium(mediaUrl.replace(".huge", ""), file);
+               }
+
+               result = new Result(mediaUrl, downloaded, null);
+            } catch (IOException e) {
+               result = new Result(mediaUrl, false, e);
+            }
+
+            mResults.add(result);
+         }
+      });
+   }
+
+   /**
+    * Returns the next finished download, waiting up to timeoutMs for one. Returns null
+    * if none finished in that time.
+    */
+   public Result poll(long timeoutMs) throws InterruptedException {
+      return mResults.poll(timeoutMs, TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Cancels all transfers in flight and stops the workers.
+    */
+   public void shutdown() {
+      mShutdown = true;
+      mExecutor.shutdownNow();
+
+      synchronized (mCalls) {
+         for (Call call : mCalls) {
+            call.cancel();
+         }
+      }
+   }
+
+   /**
+    * Downloads the medium to the file. Returns true if the medium is persisted, false
+    * if the server doesn't have it.
+    *
+    * Data is written to a ".part" file next to the final location which is only
+    * renamed into place once the transfer is complete and verified. A ".part" file
+    * left behind by a canceled or failed sync is resumed with a Range request if the
+    * server still has the same version of the medium.
+    */
+   private boolean downloadMedium(String mediaUrl, File file) throws IOException {
+      if (GuideMediaProgress.isMediumPresent(mediaUrl, file)) {
+         if (BuildConfig.DEBUG) {
+            // Happens if guides share media.
+            Log.d(TAG, "Skipping: " + mediaUrl);
+         }
+
+         return true;
+      }
+
+      HttpUrl url = HttpUrl.parse(mediaUrl);
+      if (url == null) {
+         throw new IOException("Invalid media URL: " + mediaUrl);
+      }
+
+      Semaphore permits = getHostPermits(url.host());
+      try {
+         permits.acquire();
+      } catch (InterruptedException e) {
+         throw new InterruptedIOException("Interrupted waiting for " + url.host());
+      }
+
+      try {
+         if (BuildConfig.DEBUG) {
+            Log.i(TAG, "Downloading: " + mediaUrl);
+         }
+
+         return download(url, file, true);
+      } catch (IOException e) {
+         // The .part file is kept so the next attempt can pick up where this one
+         // left off.
+         if (BuildConfig.DEBUG) {
+            Log.e(TAG, "Failed to download medium", e);
+         }
+         throw e;
+      } finally {
+         permits.release();
+      }
+   }
+
+   private boolean download(HttpUrl url, File file, boolean allowResume)
+    throws IOException {
+      File partFile = new File(file.getPath() + PART_SUFFIX);
+      File validatorFile = new File(partFile.getPath() + VALIDATOR_SUFFIX);
+      String validator = allowResume ? readValidator(validatorFile) : null;
+      // Without a validator the server could send the rest of a different version.
+      long resumeFrom = validator != null ? partFile.length() : 0;
+
+      Request.Builder requestBuilder = new Request.Builder()
+       .url(url);
+
+      if (resumeFrom > 0) {
+         // The server answers with the whole medium if it changed.
+         requestBuilder.header("Range", "bytes=" + resumeFrom + "-");
+         requestBuilder.header("If-Range", validator);
+      }
+
+      Call call = mClient.newCall(requestBuilder.build());
+
+      synchronized (mCalls) {
+         if (mShutdown) {
+            throw new InterruptedIOException("Downloader shut down");
+         }
+
+         mCalls.add(call);
+      }
+
+      try {
+         Response response = call.execute();
+
+         try {
+            int code = response.code();
+
+            if (resumeFrom > 0 && code == RANGE_NOT_SATISFIABLE_CODE) {
+               // The .part file doesn't match what the server has. Start over.
+               partFile.delete();
+               validatorFile.delete();
+               response.body().close();
+               return download(url, file, false);
+            }
+
+            if (!response.isSuccessful()) {
+               // This happens occasionally when downloading the .huge size for
+               // images that don't have that size. The original is retried in
+               // its place.
+               if (BuildConfig.DEBUG) {
+                  Log.w(TAG, "MEDIA FAIL! " + url + " " + code);
+               }
+
+               return false;
+            }
+
+            long expectedLength;
+            boolean resumed = resumeFrom > 0 && code == PARTIAL_CONTENT_CODE;
+
+            if (resumed) {
+               expectedLength = getContentRangeLength(response, resumeFrom);
+
+               if (expectedLength == INVALID_CONTENT_RANGE) {
+                  partFile.delete();
+                  validatorFile.delete();
+                  response.body().close();
+                  return download(url, file, false);
+               }
+
+               if (BuildConfig.DEBUG) {
+                  Log.i(TAG, "Resuming " + url + " at " + resumeFrom + " bytes");
+               }
+            } else {
+               // Either this is a fresh download or the server ignored the Range
+               // header or the medium changed and it sent everything.
+               expectedLength = response.body().contentLength();
+               writeValidator(validatorFile, response);
+            }
+
+            BufferedSink sink = Okio.buffer(resumed ? Okio.appendingSink(partFile) :
+             Okio.sink(partFile));
+            try {
+               sink.writeAll(response.body().source());
+            } finally {
+               sink.close();
+            }
+
+            try {
+               verify(partFile, expectedLength,
+                resumed ? null : response.header("Content-MD5"));
+            } catch (IOException e) {
+               validatorFile.delete();
+               throw e;
+            }
+
+            if (!partFile.renameTo(file)) {
+               throw new IOException("Failed to rename " + partFile + " to " + file);
+            }
+
+            validatorFile.delete();
+
+            return true;
+         } finally {
+            response.body().close();
+         }
+      } finally {
+         synchronized (mCalls) {
+            mCalls.remove(call);
+         }
+      }
+   }
+
+   /**
+    * Returns the validator saved for the .part file or null if there is none.
+    */
+   private static String readValidator(File validatorFile) {
+      if (!validatorFile.isFile()) {
+         return null;
+      }
+
+      try {
+         BufferedSource source = Okio.buffer(Okio.source(validatorFile));
+         try {
+            String validator = source.readUtf8().trim();
+            return validator.length() > 0 ? validator : null;
+         } finally {
+            source.close();
+         }
+      } catch (IOException e) {
+         Log.w(TAG, "Cannot read " + validatorFile, e);
+         return null;
+      }
+   }
+
+   /**
+    * Saves the response's strong ETag or else its Last-Modified date to resume the
+    * download with. Weak ETags can't be used in If-Range.
+    */
+   private static void writeValidator(File validatorFile, Response response)
+    throws IOException {
+      String validator = response.header("ETag");
+
+      if (validator == null || validator.startsWith("W/")) {
+         validator = response.header("Last-Modified");
+      }
+
+      if (validator == null) {
+         validatorFile.delete();
+         return;
+      }
+
+      BufferedSink sink = Okio.buffer(Okio.sink(validatorFile));
+      try {
+         sink.writeUtf8(validator);
+      } finally {
+         sink.close();
+      }
+   }
+
+   /**
+    * Makes sure the downloaded file has the length the server announced and, if
+    * provided, the same MD5. Deletes the file and throws if it doesn't.
+    */
+   private static void verify(File partFile, long expectedLength, String contentMd5)
+    throws IOException {
+      if (expectedLength != -1 && partFile.length() != expectedLength) {
+         partFile.delete();
+         throw new IOException("Expected " + expectedLength + " bytes but got " +
+          partFile.length() + " for " + partFile);
+      }
+
+      if (contentMd5 == null) {
+         return;
+      }
+
+      String md5 = getMd5(partFile);
+      if (!contentMd5.trim().equals(md5)) {
+         partFile.delete();
+         throw new IOException("MD5 mismatch for " + partFile + ": expected " + contentMd5 +
+          " but got " + md5);
+      }
+   }
+
+   /**
+    * Returns the base64 encoded MD5 of the file in the format used by Content-MD5.
+    */
+   private static String getMd5(File file) throws IOException {
+      MessageDigest digest;
+      try {
+         digest = MessageDigest.getInstance("MD5");
+      } catch (NoSuchAlgorithmException e) {
+         throw new IOException(e.getMessage());
+      }
+
+      InputStream in = new FileInputStream(file);
+      try {
+         byte[] buffer = new byte[8192];
+         int read;
+         while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+         }
+      } finally {
+         in.close();
+      }
+
+      return ByteString.of(digest.digest()).base64();
+   }
+
+   /**
+    * Returns the full length of the medium from the Content-Range header of a 206
+    * response e.g. "bytes 100-999/1000". Returns -1 if the total is unknown and
+    * INVALID_CONTENT_RANGE if the range doesn't start where the .part file ends.
+    */
+   private static long getContentRangeLength(Response response, long resumeFrom) {
+      String contentRange = response.header("Content-Range");
+      if (contentRange == null || !contentRange.startsWith("bytes ")) {
+         return INVALID_CONTENT_RANGE;
+      }
+
+      int dash = contentRange.indexOf('-');
+      int slash = contentRange.indexOf('/');
+      if (dash == -1 || slash == -1 || slash < dash) {
+         return INVALID_CONTENT_RANGE;
+      }
+
+      try {
+         long start = Long.parseLong(contentRange.substring("bytes ".length(), dash).trim());
+         if (start != resumeFrom) {
+            return INVALID_CONTENT_RANGE;
+         }
+
+         String total = contentRange.substring(slash + 1).trim();
+         return total.equals("*") ? -1 : Long.parseLong(total);
+      } catch (NumberFormatException e) {
+         return INVALID_CONTENT_RANGE;
+      }
+   }
+
+   private Semaphore getHostPermits(String host) {
+      synchronized (mHostPermits) {
+         Semaphore permits = mHostPermits.get(host);
+
+         if (permits == null) {
+            permits = new Semaphore(mMaxDownloadsPerHost);
+            mHostPermits.put(host, permits);
+         }
+
+         return permits;
+      }
+   }
+}
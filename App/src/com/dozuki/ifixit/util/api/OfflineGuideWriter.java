@@ -0,0 +1,161 @@
+package com.dozuki.ifixit.util.api;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.dozuki.ifixit.BuildConfig;
+import com.dozuki.ifixit.model.dozuki.Site;
+import com.dozuki.ifixit.model.guide.GuideInfo;
+import com.dozuki.ifixit.model.user.User;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects guide saves and progress updates made during a sync and writes them to
+ * ApiDatabase in a single transaction once enough of them piled up or enough time
+ * passed. Writing each one on its own costs a journal sync per row which adds up
+ * quickly when every downloaded medium updates a guide's progress.
+ *
+ * Only used from the sync thread.
+ */
+class OfflineGuideWriter {
+   private static final String TAG = "OfflineGuideWriter";
+
+   // Write at most this many changes or wait at most this long before writing.
+   private static final int MAX_PENDING_WRITES = 100;
+   private static final long MAX_PENDING_MS = 5000;
+
+   private static class GuideSave {
+      public final GuideMediaProgress mGuideMedia;
+      public final GuideInfo mGuideInfo;
+
+      public GuideSave(GuideMediaProgress guideMedia, GuideInfo guideInfo) {
+         mGuideMedia = guideMedia;
+         mGuideInfo = guideInfo;
+      }
+   }
+
+   private final ApiDatabase mDb;
+   private final Site mSite;
+   private final User mUser;
+   private final List<GuideSave> mSaves = new ArrayList<GuideSave>();
+   // guideid to {total media, downloaded media}. Only the latest progress is written.
+   private final Map<Integer, int[]> mProgress = new LinkedHashMap<Integer, int[]>();
+   private long mFirstPendingWrite;
+
+   public OfflineGuideWriter(ApiDatabase db, Site site, User user) {
+      mDb = db;
+      mSite = site;
+      mUser = user;
+   }
+
+   public void saveGuide(GuideMediaProgress guideMedia, GuideInfo guideInfo) {
+      // The save includes the current progress.
+      mProgress.remove(guideMedia.mGuide.getGuideid());
+      mSaves.add(new GuideSave(guideMedia, guideInfo));
+      onWriteAdded();
+   }
+
+   public void updateProgress(int guideid, int totalMedia, int mediaProgress) {
+      mProgress.put(guideid, new int[] {totalMedia, mediaProgress});
+      onWriteAdded();
+   }
+
+   private void onWriteAdded() {
+      if (getPendingWrites() == 1) {
+         mFirstPendingWrite = System.currentTimeMillis();
+      }
+   }
+
+   private int getPendingWrites() {
+      return mSaves.size() + mProgress.size();
+   }
+
+   /**
+    * Writes pending changes if there are enough of them or they have waited long
+    * enough. Returns the number of guides saved.
+    */
+   public int flushIfNeeded() {
+      if (getPendingWrites() >= MAX_PENDING_WRITES || (getPendingWrites() > 0 &&
+       System.currentTimeMillis() - mFirstPendingWrite >= MAX_PENDING_MS)) {
+         return flush();
+      }
+
+      return 0;
+   }
+
+   /**
+    * Writes all pending changes in one transaction. Returns the number of guides saved.
+    * Guides that can't be saved are dropped and picked up again by the next sync.
+    */
+   public int flush() {
+      if (getPendingWrites() == 0) {
+         return 0;
+      }
+
+      if (BuildConfig.DEBUG) {
+         Log.d(TAG, "Writing " + mSaves.size() + " guides and " + mProgress.size() +
+          " progress updates");
+      }
+
+      List<GuideSave> saves = new ArrayList<GuideSave>(mSaves);
+
+      try {
+         while (!write(saves)) {
+            // A failed save rolls back the transaction it is part of so the others
+            // are written again without it.
+         }
+
+         return saves.size();
+      } finally {
+         mSaves.clear();
+         mProgress.clear();
+      }
+   }
+
+   /**
+    * Writes the saves and pending progress in one transaction. Removes the saves that
+    * fail and returns false without writing anything if there were any.
+    */
+   private boolean write(List<GuideSave> saves) {
+      SQLiteDatabase db = mDb.getWritableDatabase();
+      boolean failed = false;
+
+      db.beginTransaction();
+      try {
+         Iterator<GuideSave> it = saves.iterator();
+
+         while (it.hasNext()) {
+            GuideSave save = it.next();
+            GuideMediaProgress guideMedia = save.mGuideMedia;
+
+            try {
+               mDb.saveGuide(mSite, mUser, guideMedia.mGuideEvent, save.mGuideInfo,
+                guideMedia.mMedia, guideMedia.mTotalMedia, guideMedia.mMediaProgress);
+            } catch (RuntimeException e) {
+               Log.e(TAG, "Cannot save guide " + guideMedia.mGuide.getGuideid(), e);
+               it.remove();
+               failed = true;
+            }
+         }
+
+         if (failed) {
+            return false;
+         }
+
+         for (Map.Entry<Integer, int[]> progress : mProgress.entrySet()) {
+            mDb.updateGuideProgress(mSite, mUser, progress.getKey(), progress.getValue()[0],
+             progress.getValue()[1]);
+         }
+
+         db.setTransactionSuccessful();
+         return true;
+      } finally {
+         db.endTransaction();
+      }
+   }
+}
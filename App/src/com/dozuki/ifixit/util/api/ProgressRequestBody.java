@@ -0,0 +1,77 @@
+package com.dozuki.ifixit.util.api;
+
+import java.io.File;
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Streams a file as the request body and reports how much of it was sent. The file
+ * is read and written a segment at a time so uploads of any size use a few KB.
+ */
+public class ProgressRequestBody extends RequestBody {
+   private static final long SEGMENT_SIZE = 8192;
+
+   public interface Listener {
+      /**
+       * Called on the thread sending the request whenever the percentage changes.
+       * Starts over if the request is retried.
+       */
+      public void onProgress(int percent);
+   }
+
+   private final MediaType mContentType;
+   private final File mFile;
+   private final Listener mListener;
+
+   public ProgressRequestBody(MediaType contentType, File file, Listener listener) {
+      mContentType = contentType;
+      mFile = file;
+      mListener = listener;
+   }
+
+   public File getFile() {
+      return mFile;
+   }
+
+   @Override
+   public MediaType contentType() {
+      return mContentType;
+   }
+
+   @Override
+   public long contentLength() {
+      return mFile.length();
+   }
+
+   @Override
+   public void writeTo(BufferedSink sink) throws IOException {
+      long total = contentLength();
+      long written = 0;
+      int lastPercent = -1;
+      Source source = Okio.source(mFile);
+
+      try {
+         long read;
+
+         while ((read = source.read(sink.buffer(), SEGMENT_SIZE)) != -1) {
+            // Push the segment to the connection so progress follows the network.
+            sink.flush();
+            written += read;
+
+            int percent = total == 0 ? 100 : (int)(written * 100 / total);
+
+            if (mListener != null && percent != lastPercent) {
+               lastPercent = percent;
+               mListener.onProgress(percent);
+            }
+         }
+      } finally {
+         source.close();
+      }
+   }
+}
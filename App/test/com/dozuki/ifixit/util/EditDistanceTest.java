@@ -0,0 +1,51 @@
+package com.dozuki.ifixit.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the bounded bit-parallel edit distance against the full distance matrix.
+ */
+public class EditDistanceTest {
+   private static final int ITERATIONS = 100000;
+
+   @Test
+   public void boundedDistance() {
+      Random random = new Random(7);
+
+      for (int i = 0; i < ITERATIONS; i++) {
+         // Up to 70 chars so patterns too long for the bit-parallel path are covered.
+         String s = randomString(random, random.nextInt(70));
+         String t = randomString(random, random.nextInt(70));
+         int max = random.nextInt(40);
+         int distance = EditDistance.editDistance(s, t);
+
+         assertEquals(s + " / " + t + " / " + max, Math.min(distance, max + 1),
+          EditDistance.editDistance(s, t, max));
+      }
+   }
+
+   @Test
+   public void emptyStrings() {
+      assertEquals(0, EditDistance.editDistance("", "", 0));
+      assertEquals(3, EditDistance.editDistance("", "abc", 3));
+      assertEquals(2, EditDistance.editDistance("abc", "", 1));
+   }
+
+   /**
+    * Few distinct chars so there are many partial matches, and some that aren't
+    * ASCII.
+    */
+   static String randomString(Random random, int length) {
+      StringBuilder string = new StringBuilder(length);
+
+      for (int i = 0; i < length; i++) {
+         string.append(random.nextInt(10) == 0 ? 'é' : (char)('a' + random.nextInt(5)));
+      }
+
+      return string.toString();
+   }
+}
@@ -0,0 +1,129 @@
+package com.dozuki.ifixit.util;
+
+import com.dozuki.ifixit.model.guide.Guide;
+import com.dozuki.ifixit.model.search.SearchResults;
+import com.dozuki.ifixit.model.topic.TopicLeaf;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.dozuki.ifixit.util.ModelAssert.assertModelEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the streaming parsers build the same models the org.json parsers in
+ * LegacyJSONHelper built from recorded API responses.
+ */
+public class JSONHelperTest {
+   @Test
+   public void parseGuide() throws Exception {
+      String json = readResponse("guide.json");
+      Guide guide = JSONHelper.parseGuide(json);
+
+      assertModelEquals(LegacyJSONHelper.parseGuide(json), guide);
+      // Make sure the comparison isn't vacuous.
+      assertEquals(3, guide.getNumSteps());
+      assertEquals(1, guide.getStep(0).getComments().get(0).mReplies.size());
+      assertNotNull(guide.getStep(1).getVideo());
+   }
+
+   @Test
+   public void parseGuideWithUnusualValues() throws Exception {
+      String json = readResponse("guide_unusual.json");
+
+      assertModelEquals(LegacyJSONHelper.parseGuide(json), JSONHelper.parseGuide(json));
+   }
+
+   @Test
+   public void parseTopicLeaf() throws Exception {
+      String json = readResponse("topic.json");
+      TopicLeaf topic = JSONHelper.parseTopicLeaf(json);
+
+      assertModelEquals(LegacyJSONHelper.parseTopicLeaf(json), topic);
+      assertEquals(3, topic.getGuides().size());
+      assertEquals(1, topic.getRelatedWikis().size());
+   }
+
+   @Test
+   public void parseSearchResults() throws Exception {
+      String json = readResponse("search.json");
+      SearchResults search = JSONHelper.parseSearchResults(json);
+
+      assertModelEquals(LegacyJSONHelper.parseSearchResults(json), search);
+      // The item result is skipped.
+      assertEquals(4, search.mResults.size());
+   }
+
+   @Test
+   public void parseErrorsAreJSONExceptions() throws Exception {
+      String truncated = readResponse("guide.json").substring(0, 2000);
+
+      try {
+         JSONHelper.parseGuide(truncated);
+         fail("Parsed a truncated guide");
+      } catch (JSONException e) {
+         // Expected, same as the org.json parser.
+      }
+   }
+
+   @Test
+   public void missingFieldsAreJSONExceptions() throws Exception {
+      String topic = withoutField(readResponse("topic.json"), "contents_rendered");
+      String guide = withoutField(readResponse("guide.json"), "title");
+      String search = withoutField(readResponse("search.json"), "search");
+
+      try {
+         JSONHelper.parseTopicLeaf(topic);
+         fail("Parsed a topic without contents");
+      } catch (JSONException e) {
+         assertEquals("No value for contents_rendered", e.getMessage());
+      }
+
+      try {
+         JSONHelper.parseGuide(guide);
+         fail("Parsed a guide without a title");
+      } catch (JSONException e) {
+         assertEquals("No value for title", e.getMessage());
+      }
+
+      try {
+         JSONHelper.parseSearchResults(search);
+         fail("Parsed search results without a query");
+      } catch (JSONException e) {
+         assertEquals("No value for search", e.getMessage());
+      }
+   }
+
+   private static String withoutField(String json, String name) throws JSONException {
+      JSONObject object = new JSONObject(json);
+
+      assertNotNull(object.remove(name));
+
+      return object.toString();
+   }
+
+   private static String readResponse(String name) throws IOException {
+      InputStream in = JSONHelperTest.class.getResourceAsStream("responses/" + name);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+      try {
+         byte[] buffer = new byte[8192];
+         int read;
+
+         while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+         }
+      } finally {
+         in.close();
+      }
+
+      return out.toString("UTF-8");
+   }
+}
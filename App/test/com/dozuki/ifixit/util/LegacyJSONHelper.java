@@ -0,0 +1,169 @@
+package com.dozuki.ifixit.util;
+
+import com.dozuki.ifixit.model.Document;
+import com.dozuki.ifixit.model.Image;
+import com.dozuki.ifixit.model.Item;
+import com.dozuki.ifixit.model.Wiki;
+import com.dozuki.ifixit.model.guide.Guide;
+import com.dozuki.ifixit.model.guide.GuideInfo;
+import com.dozuki.ifixit.model.search.GuideSearchResult;
+import com.dozuki.ifixit.model.search.SearchResults;
+import com.dozuki.ifixit.model.search.TopicSearchResult;
+import com.dozuki.ifixit.model.topic.TopicLeaf;
+import com.google.gson.Gson;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+
+/**
+ * The org.json based parsers JSONHelper used before guides, topics and search
+ * results were streamed. Models are bound with a plain reflective Gson like they
+ * were back then. Only kept to check that the streaming parsers build the same
+ * models.
+ */
+class LegacyJSONHelper {
+   public static SearchResults parseSearchResults(String json) throws JSONException {
+      SearchResults search = new SearchResults();
+      JSONObject response = new JSONObject(json);
+
+      search.mLimit = response.getInt("limit");
+      search.mOffset = response.getInt("offset");
+      search.mTotalResults = response.getInt("totalResults");
+      search.mHasMoreResults = response.getBoolean("moreResults");
+      search.mQuery = response.getString("search");
+
+      if (response.has("results")) {
+         JSONArray resultsArr = response.getJSONArray("results");
+
+         for (int i = 0; i < resultsArr.length(); i++) {
+            JSONObject result = resultsArr.getJSONObject(i);
+            String resultType = result.getString("dataType");
+
+            if (resultType.equals("guide")) {
+               GuideInfo gi = new Gson().fromJson(result.toString(), GuideInfo.class);
+               search.mResults.add(new GuideSearchResult(gi));
+            } else if (resultType.equals("wiki")) {
+               TopicSearchResult tsr = new TopicSearchResult();
+               tsr.mDisplayTitle = result.getString("display_title");
+               tsr.mTitle = result.getString("title");
+               tsr.mText = result.getString("text");
+               tsr.mNamespace = result.getString("namespace");
+               tsr.mSummary = result.getString("summary");
+               tsr.mUrl = result.getString("url");
+               if (!result.isNull("image")) {
+                  tsr.mImage = JSONHelper.parseImage(result, "image");
+               }
+
+               search.mResults.add(tsr);
+            }
+         }
+      }
+
+      return search;
+   }
+
+   public static Guide parseGuide(String json) throws JSONException {
+      JSONObject jGuide = new JSONObject(json);
+      JSONArray jSteps = jGuide.getJSONArray("steps");
+      JSONArray jTools = jGuide.getJSONArray("tools");
+      JSONArray jParts = jGuide.getJSONArray("parts");
+      JSONObject jAuthor = jGuide.getJSONObject("author");
+      JSONArray jDocuments = jGuide.getJSONArray("documents");
+      Guide guide = new Guide(jGuide.getInt("guideid"));
+
+      guide.setFeaturedDocument(!jGuide.isNull("featured_documentid") ?
+       jGuide.getInt("featured_documentid") : 0);
+      guide.setTitle(jGuide.getString("title"));
+      guide.setTopic(jGuide.getString("category"));
+      guide.setSubject(jGuide.getString("subject"));
+      guide.setAuthor(jAuthor.getString("username"));
+      guide.setTimeRequired(jGuide.getString("time_required"));
+      guide.setDifficulty(jGuide.getString("difficulty"));
+      guide.setIntroductionRaw(jGuide.getString("introduction_raw"));
+      guide.setIntroductionRendered(jGuide.getString("introduction_rendered"));
+      if (!jGuide.isNull("image")) {
+         guide.setIntroImage(JSONHelper.parseImage(jGuide, "image"));
+      }
+      guide.setSummary(jGuide.isNull("summary") ? "" : jGuide.getString("summary"));
+      guide.setRevisionid(jGuide.getInt("revisionid"));
+      guide.setPublic(jGuide.getBoolean("public"));
+      guide.setType(jGuide.getString("type"));
+      guide.setPatrolThreshold(jGuide.getInt("patrol_threshold"));
+      guide.setConclusion(jGuide.getString("conclusion_rendered"));
+      guide.setCompleted(jGuide.getBoolean("completed"));
+      guide.setComments(JSONHelper.parseComments(jGuide.getJSONArray("comments")));
+      guide.setFavorited(jGuide.getBoolean("favorited"));
+      guide.setModifiedDate(jGuide.getDouble("modified_date"));
+      guide.setPrereqModifiedDate(jGuide.getDouble("prereq_modified_date"));
+
+      if (jGuide.has("can_edit")) {
+         guide.setCanEdit(jGuide.getBoolean("can_edit"));
+      }
+
+      ArrayList<Document> documents = new ArrayList<Document>();
+      for (int i = 0; i < jDocuments.length(); i++) {
+         documents.add(new Gson().fromJson(jDocuments.getJSONObject(i).toString(),
+          Document.class));
+      }
+      guide.setDocuments(documents);
+
+      for (int i = 0; i < jSteps.length(); i++) {
+         guide.addStep(JSONHelper.parseStep(jSteps.getJSONObject(i), i + 1));
+      }
+
+      for (Item tool : JSONHelper.parseTools(jTools)) {
+         guide.addTool(tool);
+      }
+
+      for (Item part : JSONHelper.parseParts(jParts)) {
+         guide.addPart(part);
+      }
+
+      return guide;
+   }
+
+   public static TopicLeaf parseTopicLeaf(String json) throws JSONException {
+      JSONObject jTopic = new JSONObject(json);
+      JSONArray jGuides = jTopic.getJSONArray("guides");
+      JSONArray jWikis = jTopic.getJSONArray("related_wikis");
+      TopicLeaf topicLeaf = new TopicLeaf(jTopic.getString("title"));
+      JSONArray jFeaturedGuides = jTopic.getJSONArray("featured_guides");
+
+      for (int i = 0; i < jFeaturedGuides.length(); i++) {
+         String guideJson = jFeaturedGuides.getJSONObject(i).toString();
+         topicLeaf.addFeaturedGuide(new Gson().fromJson(guideJson, GuideInfo.class));
+      }
+
+      for (int i = 0; i < jGuides.length(); i++) {
+         String guideJson = jGuides.getJSONObject(i).toString();
+         topicLeaf.addGuide(new Gson().fromJson(guideJson, GuideInfo.class));
+      }
+
+      for (int i = 0; i < jWikis.length(); i++) {
+         String wikiJson = jWikis.getJSONObject(i).toString();
+         topicLeaf.addWiki(new Gson().fromJson(wikiJson, Wiki.class));
+      }
+
+      topicLeaf.setSolutionsUrl(jTopic.getString("solutions_url"));
+
+      if (!jTopic.isNull("description")) {
+         topicLeaf.setDescription(jTopic.getString("description"));
+      }
+
+      if (jTopic.isNull("image")) {
+         topicLeaf.setImage(new Image());
+      } else {
+         topicLeaf.setImage(JSONHelper.parseImage(jTopic.getJSONObject("image"), null));
+      }
+
+      topicLeaf.setLocale(jTopic.getString("langid"));
+      topicLeaf.setContentsRaw(jTopic.getString("contents_raw"));
+      topicLeaf.setContentsRendered(jTopic.getString("contents_rendered"));
+      topicLeaf.setTitle(jTopic.getString("display_title"));
+
+      return topicLeaf;
+   }
+}
@@ -0,0 +1,87 @@
+package com.dozuki.ifixit.util;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Compares models field by field because few of them implement equals(). Failures
+ * name the path of the field that differs e.g. "mSteps[2].mLines[0].mLineid".
+ */
+class ModelAssert {
+   public static void assertModelEquals(Object expected, Object actual) {
+      assertModelEquals("", expected, actual, new IdentityHashMap<Object, Object>());
+   }
+
+   private static void assertModelEquals(String path, Object expected, Object actual,
+    Map<Object, Object> compared) {
+      if (expected == null || actual == null) {
+         assertSame(path, expected, actual);
+         return;
+      }
+
+      Class<?> type = expected.getClass();
+      assertEquals(path, type, actual.getClass());
+
+      if (isValue(type)) {
+         assertEquals(path, expected, actual);
+         return;
+      }
+
+      if (compared.put(expected, actual) != null) {
+         // Already compared or being compared further up.
+         return;
+      }
+
+      if (type.isArray()) {
+         assertEquals(path + ".length", Array.getLength(expected), Array.getLength(actual));
+
+         for (int i = 0; i < Array.getLength(expected); i++) {
+            assertModelEquals(path + "[" + i + "]", Array.get(expected, i),
+             Array.get(actual, i), compared);
+         }
+      } else if (expected instanceof List) {
+         List<?> expectedList = (List<?>)expected;
+         List<?> actualList = (List<?>)actual;
+         assertEquals(path + ".size()", expectedList.size(), actualList.size());
+
+         Iterator<?> actualItems = actualList.iterator();
+         int i = 0;
+         for (Object expectedItem : expectedList) {
+            assertModelEquals(path + "[" + i++ + "]", expectedItem, actualItems.next(),
+             compared);
+         }
+      } else {
+         for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+               if (Modifier.isStatic(field.getModifiers())) {
+                  continue;
+               }
+
+               field.setAccessible(true);
+
+               try {
+                  assertModelEquals(path + "." + field.getName(), field.get(expected),
+                   field.get(actual), compared);
+               } catch (IllegalAccessException e) {
+                  throw new AssertionError(e);
+               }
+            }
+         }
+      }
+   }
+
+   private static boolean isValue(Class<?> type) {
+      return type.isEnum() || type == String.class || type == Boolean.class ||
+       type == Character.class || type == Date.class ||
+       Number.class.isAssignableFrom(type);
+   }
+}
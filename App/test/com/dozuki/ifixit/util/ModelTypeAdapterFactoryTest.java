@@ -0,0 +1,71 @@
+package com.dozuki.ifixit.util;
+
+import com.dozuki.ifixit.model.Image;
+import com.dozuki.ifixit.model.Wiki;
+import com.dozuki.ifixit.model.guide.GuideInfo;
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import static com.dozuki.ifixit.util.ModelAssert.assertModelEquals;
+
+/**
+ * Checks that the hand written adapters bind the same models as Gson's reflective
+ * adapters, including the defaults of fields that are missing or null.
+ */
+public class ModelTypeAdapterFactoryTest {
+   private static final Gson REFLECTIVE_GSON = new Gson();
+
+   private static final String IMAGE =
+    "{\"id\": 175421, \"guid\": \"JbOLWCDXvUWQ1bhp\"," +
+    " \"original\": \"https://guide-images.ifixit.net/igi/JbOLWCDXvUWQ1bhp\"}";
+
+   @Test
+   public void image() {
+      assertSameBinding(Image.class, IMAGE);
+      assertSameBinding(Image.class, "{}");
+      assertSameBinding(Image.class, "{\"id\": null, \"original\": null}");
+      assertSameBinding(Image.class, "{\"id\": \"12\", \"original\": 34}");
+   }
+
+   @Test
+   public void guideInfo() {
+      assertSameBinding(GuideInfo.class, "{" +
+       "\"dataType\": \"guide\", \"guideid\": 3029, \"locale\": \"en\"," +
+       " \"revisionid\": 1245680, \"modified_date\": 1498847542," +
+       " \"prereq_modified_date\": 1498847599.5, \"url\": \"https://www.ifixit.com/Guide/3029\"," +
+       " \"type\": \"replacement\", \"category\": \"iPhone 4\", \"subject\": \"Battery\"," +
+       " \"title\": \"iPhone 4 Battery Replacement\", \"public\": true, \"userid\": 1," +
+       " \"username\": \"Kyle Wiens\", \"flags\": [\"GUIDE_STARRED\", null]," +
+       " \"image\": " + IMAGE + "}");
+      assertSameBinding(GuideInfo.class, "{}");
+      assertSameBinding(GuideInfo.class, "{\"guideid\": null, \"title\": null," +
+       " \"public\": null, \"flags\": null, \"image\": null}");
+      assertSameBinding(GuideInfo.class, "{\"guideid\": \"3029\", \"public\": \"true\"," +
+       " \"subject\": false, \"modified_date\": \"1498847542\"}");
+   }
+
+   @Test
+   public void wiki() {
+      assertSameBinding(Wiki.class, "{" +
+       "\"wikiid\": 9012, \"revisionid\": 331904, \"langid\": \"de\"," +
+       " \"source_revisionid\": 331900, \"title\": \"iPhone\", \"display_title\": \"iPhone\"," +
+       " \"namespace\": \"CATEGORY\", \"summary\": \"All iPhones.\"," +
+       " \"url\": \"https://www.ifixit.com/Device/iPhone\", \"contents_raw\": \"== A ==\"," +
+       " \"contents_rendered\": \"<h2>A</h2>\", \"documents\": [{\"documentid\": 1021," +
+       " \"text\": \"Sheet\", \"url\": \"/Document/1\", \"download_url\": \"https://d/1.pdf\"}]," +
+       " \"can_edit\": true, \"table_of_contents\": \"true\", \"text\": \"A\"," +
+       " \"image\": " + IMAGE + "}");
+      // Related wikis of topics only have a few of the fields.
+      assertSameBinding(Wiki.class, "{\"wikiid\": 9012, \"title\": \"iPhone\"," +
+       " \"display_title\": \"iPhone\", \"url\": \"https://www.ifixit.com/Device/iPhone\"}");
+      assertSameBinding(Wiki.class, "{}");
+      assertSameBinding(Wiki.class, "{\"langid\": null, \"flags\": null, \"can_edit\": null," +
+       " \"image\": null}");
+   }
+
+   private static void assertSameBinding(Class<?> type, String json) {
+      assertModelEquals(REFLECTIVE_GSON.fromJson(json, type),
+       JSONHelper.getGson().fromJson(json, type));
+   }
+}
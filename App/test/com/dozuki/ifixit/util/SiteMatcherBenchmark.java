@@ -0,0 +1,90 @@
+package com.dozuki.ifixit.util;
+
+import com.dozuki.ifixit.model.dozuki.Site;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Times matching every keystroke of a query against a site list with SiteMatcher and
+ * with the full EditDistance matrix that the site picker used before. Not run as a
+ * test; run main() on the unit test classpath, e.g. from the IDE.
+ */
+public class SiteMatcherBenchmark {
+   private static final int SITES = 1000;
+   private static final int ROUNDS = 5;
+   private static final int REPETITIONS = 50;
+   private static final String QUERY = "Appliance Repair";
+
+   public static void main(String[] args) {
+      List<Site> sites = createSites(new Random(7));
+      long matches = 0;
+
+      for (int round = 0; round < ROUNDS; round++) {
+         long start = System.nanoTime();
+
+         for (int i = 0; i < REPETITIONS; i++) {
+            for (int length = 1; length <= QUERY.length(); length++) {
+               matches += matchWithMatrix(sites, QUERY.substring(0, length)).size();
+            }
+         }
+
+         long matrixNanos = System.nanoTime() - start;
+         start = System.nanoTime();
+
+         for (int i = 0; i < REPETITIONS; i++) {
+            // Built once for all keystrokes of a query.
+            SiteMatcher matcher = new SiteMatcher(sites);
+
+            for (int length = 1; length <= QUERY.length(); length++) {
+               matches += matcher.match(QUERY.substring(0, length)).size();
+            }
+         }
+
+         long matcherNanos = System.nanoTime() - start;
+         int keystrokes = REPETITIONS * QUERY.length();
+
+         System.out.println(String.format(Locale.US,
+          "Round %d: matrix %.1f us/keystroke, SiteMatcher %.1f us/keystroke", round + 1,
+          matrixNanos / 1000.0 / keystrokes, matcherNanos / 1000.0 / keystrokes));
+      }
+
+      // Keeps the JIT from dropping the matching.
+      System.out.println(matches + " matches");
+   }
+
+   /**
+    * Site.search() before names were matched with a bounded distance.
+    */
+   private static List<Site> matchWithMatrix(List<Site> sites, String query) {
+      String lowerQuery = query.toLowerCase();
+      List<Site> matched = new ArrayList<Site>();
+
+      for (Site site : sites) {
+         if (site.mTitle.toLowerCase().contains(lowerQuery) ||
+          EditDistance.editDistance(site.mName, lowerQuery) <= site.mName.length() / 2) {
+            matched.add(site);
+         }
+      }
+
+      return matched;
+   }
+
+   private static List<Site> createSites(Random random) {
+      List<Site> sites = new ArrayList<Site>(SITES);
+
+      for (int i = 0; i < SITES; i++) {
+         Site site = new Site(i);
+         String name = EditDistanceTest.randomString(random, 4 + random.nextInt(12));
+
+         site.mName = name;
+         site.mTitle = Character.toUpperCase(name.charAt(0)) + name.substring(1) +
+          " Repair Manuals";
+         sites.add(site);
+      }
+
+      return sites;
+   }
+}
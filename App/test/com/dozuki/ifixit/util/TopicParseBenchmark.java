@@ -0,0 +1,102 @@
+package com.dozuki.ifixit.util;
+
+import com.dozuki.ifixit.model.Wiki;
+import com.dozuki.ifixit.model.guide.GuideInfo;
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Times binding the guides and wikis of a topic with 500 guides with Gson's
+ * reflective adapters and with the hand written adapters of JSONHelper's Gson. Not
+ * run as a test; run main() on the unit test classpath, e.g. from the IDE.
+ */
+public class TopicParseBenchmark {
+   private static final int GUIDES = 500;
+   private static final int WIKIS = 20;
+   private static final int ROUNDS = 5;
+   private static final int REPETITIONS = 50;
+
+   /**
+    * The lists of a topic response that are bound in bulk.
+    */
+   private static class Topic {
+      @SerializedName("guides") ArrayList<GuideInfo> mGuides;
+      @SerializedName("related_wikis") ArrayList<Wiki> mWikis;
+   }
+
+   public static void main(String[] args) {
+      String json = createTopic();
+      Gson reflectiveGson = new Gson();
+      Gson gson = JSONHelper.getGson();
+      long guides = 0;
+
+      for (int round = 0; round < ROUNDS; round++) {
+         long start = System.nanoTime();
+
+         for (int i = 0; i < REPETITIONS; i++) {
+            guides += reflectiveGson.fromJson(json, Topic.class).mGuides.size();
+         }
+
+         long reflectiveNanos = System.nanoTime() - start;
+         start = System.nanoTime();
+
+         for (int i = 0; i < REPETITIONS; i++) {
+            guides += gson.fromJson(json, Topic.class).mGuides.size();
+         }
+
+         long adapterNanos = System.nanoTime() - start;
+
+         System.out.println(String.format(Locale.US,
+          "Round %d: new Gson() %.2f ms/topic, JSONHelper.getGson() %.2f ms/topic",
+          round + 1, reflectiveNanos / 1e6 / REPETITIONS, adapterNanos / 1e6 / REPETITIONS));
+      }
+
+      // Keeps the JIT from dropping the parsing.
+      System.out.println(guides + " guides");
+   }
+
+   private static String createTopic() {
+      StringBuilder json = new StringBuilder("{\"title\": \"iPhone 4\", \"guides\": [");
+
+      for (int i = 0; i < GUIDES; i++) {
+         if (i > 0) {
+            json.append(", ");
+         }
+
+         json.append("{\"dataType\": \"guide\", \"guideid\": ").append(1000 + i)
+          .append(", \"locale\": \"en\", \"revisionid\": ").append(200000 + i)
+          .append(", \"modified_date\": 1498847542, \"prereq_modified_date\": 0,")
+          .append(" \"url\": \"https://www.ifixit.com/Guide/").append(1000 + i)
+          .append("\", \"type\": \"replacement\", \"category\": \"iPhone 4\",")
+          .append(" \"subject\": \"Part ").append(i)
+          .append("\", \"title\": \"iPhone 4 Part ").append(i)
+          .append(" Replacement\", \"public\": true, \"userid\": 1,")
+          .append(" \"username\": \"Kyle Wiens\", \"flags\": [\"GUIDE_STARRED\"],")
+          .append(" \"image\": ").append(createImage(i)).append("}");
+      }
+
+      json.append("], \"related_wikis\": [");
+
+      for (int i = 0; i < WIKIS; i++) {
+         if (i > 0) {
+            json.append(", ");
+         }
+
+         json.append("{\"wikiid\": ").append(9000 + i)
+          .append(", \"title\": \"Wiki ").append(i)
+          .append("\", \"display_title\": \"Wiki ").append(i)
+          .append("\", \"url\": \"https://www.ifixit.com/Wiki/").append(i)
+          .append("\", \"image\": ").append(createImage(GUIDES + i)).append("}");
+      }
+
+      return json.append("]}").toString();
+   }
+
+   private static String createImage(int i) {
+      return "{\"id\": " + (175000 + i) + ", \"guid\": \"guid" + i + "\"," +
+       " \"original\": \"https://guide-images.ifixit.net/igi/guid" + i + "\"}";
+   }
+}